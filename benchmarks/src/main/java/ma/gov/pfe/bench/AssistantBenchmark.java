@@ -0,0 +1,115 @@
+package ma.gov.pfe.bench;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.gov.pfe.assistant.Assistant;
+import ma.gov.pfe.embedding.EmbeddingModelProvider;
+import ma.gov.pfe.ingestion.IngestionPipeline;
+import ma.gov.pfe.routage.ExemplarQueryRouter;
+import ma.gov.pfe.server.StubChatModel;
+import ma.gov.pfe.store.FlatVectorStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Bout en bout sans réseau : Assistant.chat -> DefaultRetrievalAugmentor -> MiniLM + store -> modèle simulé
+// (latence nulle, donc seul le coût local est mesuré), avec et sans routage par exemples
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class AssistantBenchmark {
+
+    private Assistant naif;
+    private Assistant routage;
+    private QueryRouter router;
+    private int next;
+
+    @Setup
+    public void setup() {
+        EmbeddingModel embeddingModel = EmbeddingModelProvider.get();
+        IngestionPipeline pipeline = IngestionPipeline.defaults(embeddingModel);
+        EmbeddingStore<TextSegment> storeIA = new FlatVectorStore();
+        pipeline.ingest(List.of(BenchResources.copyToTemp("rag.pdf")), storeIA);
+        EmbeddingStore<TextSegment> storeAutre = new FlatVectorStore();
+        pipeline.ingest(List.of(BenchResources.copyToTemp("langchain4jj.pdf")), storeAutre);
+
+        ContentRetriever retrieverIA = retriever(storeIA, embeddingModel);
+        ContentRetriever retrieverAutre = retriever(storeAutre, embeddingModel);
+        ChatModel model = new StubChatModel(Duration.ZERO);
+
+        naif = AiServices.builder(Assistant.class)
+                .chatModel(model)
+                .retrievalAugmentor(DefaultRetrievalAugmentor.builder()
+                        .contentRetriever(retrieverIA)
+                        .build())
+                .build();
+
+        router = ExemplarQueryRouter.builder()
+                .embeddingModel(embeddingModel)
+                .route(retrieverIA, "Document sur le RAG, IA, embeddings, retrieval.",
+                        "Qu'est-ce que le RAG ?",
+                        "Comment fonctionnent les embeddings et la recherche vectorielle ?")
+                .route(retrieverAutre, "Document sur un sujet non-IA (général).",
+                        "Comment utiliser la bibliothèque LangChain4j ?",
+                        "Comment configurer un projet Java avec Maven ?")
+                .build();
+        routage = AiServices.builder(Assistant.class)
+                .chatModel(model)
+                .retrievalAugmentor(DefaultRetrievalAugmentor.builder()
+                        .queryRouter(router)
+                        .build())
+                .build();
+    }
+
+    @Benchmark
+    public String chatNaif() {
+        return naif.chat(nextQuestion());
+    }
+
+    @Benchmark
+    public String chatRoutage() {
+        return routage.chat(nextQuestion());
+    }
+
+    @Benchmark
+    public Collection<ContentRetriever> route() {
+        return router.route(Query.from(nextQuestion()));
+    }
+
+    private String nextQuestion() {
+        List<String> questions = BenchResources.QUESTIONS;
+        return questions.get(Math.floorMod(next++, questions.size()));
+    }
+
+    private static ContentRetriever retriever(EmbeddingStore<TextSegment> store, EmbeddingModel embeddingModel) {
+        return EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(store)
+                .embeddingModel(embeddingModel)
+                .maxResults(2)
+                .minScore(0.5)
+                .build();
+    }
+}
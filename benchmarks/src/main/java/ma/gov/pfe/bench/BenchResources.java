@@ -0,0 +1,87 @@
+package ma.gov.pfe.bench;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Données des benchmarks : les deux PDF du projet (lus depuis le classpath) et des vecteurs synthétiques
+final class BenchResources {
+
+    static final List<String> QUESTIONS = List.of(
+            "Qu'est-ce que le RAG ?",
+            "Comment fonctionnent les embeddings et la recherche vectorielle ?",
+            "Quel est le rôle du retriever dans un assistant IA ?",
+            "Comment utiliser la bibliothèque LangChain4j ?",
+            "Comment configurer un projet Java avec Maven ?",
+            "Quelle est la différence entre un LLM et un moteur de recherche ?");
+
+    private BenchResources() {
+    }
+
+    static byte[] bytes(String name) {
+        try (InputStream in = BenchResources.class.getResourceAsStream("/" + name)) {
+            if (in == null) {
+                throw new IllegalStateException("Ressource introuvable : " + name);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Le pipeline d'ingestion lit des fichiers : dans le jar les PDF ne sont pas des Path
+    static Path copyToTemp(String name) {
+        try {
+            Path file = Files.createTempDirectory("rag-bench").resolve(name);
+            Files.write(file, bytes(name));
+            file.toFile().deleteOnExit();
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Document parse(String name) {
+        return new ApacheTikaDocumentParser().parse(new ByteArrayInputStream(bytes(name)));
+    }
+
+    static List<TextSegment> segments(String... names) {
+        List<TextSegment> segments = new ArrayList<>();
+        for (String name : names) {
+            segments.addAll(DocumentSplitters.recursive(500, 50).split(parse(name)));
+        }
+        return segments;
+    }
+
+    // Vecteurs unitaires aléatoires, reproductibles (graine fixe)
+    static List<Embedding> randomEmbeddings(int count, int dimension, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Embedding> embeddings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float[] vector = new float[dimension];
+            double norm = 0;
+            for (int d = 0; d < dimension; d++) {
+                vector[d] = (float) (random.nextDouble() * 2 - 1);
+                norm += vector[d] * vector[d];
+            }
+            float inverse = (float) (1 / Math.sqrt(norm));
+            for (int d = 0; d < dimension; d++) {
+                vector[d] *= inverse;
+            }
+            embeddings.add(Embedding.from(vector));
+        }
+        return embeddings;
+    }
+}
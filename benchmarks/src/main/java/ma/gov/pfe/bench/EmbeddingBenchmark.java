@@ -0,0 +1,52 @@
+package ma.gov.pfe.bench;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// embedAll MiniLM selon la taille du lot ; temps par appel (diviser par batchSize pour le coût par segment)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class EmbeddingBenchmark {
+
+    @Param({"1", "8", "32", "128"})
+    public int batchSize;
+
+    private EmbeddingModel model;
+    private List<TextSegment> batch;
+
+    @Setup
+    public void setup() {
+        model = new AllMiniLmL6V2EmbeddingModel();
+        List<TextSegment> segments = BenchResources.segments("rag.pdf", "langchain4jj.pdf");
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(segments.get(i % segments.size()));
+        }
+    }
+
+    @Benchmark
+    public List<Embedding> embedAll() {
+        return model.embedAll(batch).content();
+    }
+}
@@ -0,0 +1,55 @@
+package ma.gov.pfe.bench;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentParser;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Parsing Tika et découpage recursive(500, 50) de chaque PDF
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class IngestionBenchmark {
+
+    @Param({"rag.pdf", "langchain4jj.pdf"})
+    public String file;
+
+    private final DocumentParser parser = new ApacheTikaDocumentParser();
+    private byte[] pdf;
+    private Document document;
+
+    @Setup
+    public void setup() {
+        pdf = BenchResources.bytes(file);
+        document = parser.parse(new ByteArrayInputStream(pdf));
+    }
+
+    @Benchmark
+    public Document parse() {
+        return parser.parse(new ByteArrayInputStream(pdf));
+    }
+
+    @Benchmark
+    public List<TextSegment> split() {
+        return DocumentSplitters.recursive(500, 50).split(document);
+    }
+}
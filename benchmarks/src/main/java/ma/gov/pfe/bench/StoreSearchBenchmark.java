@@ -0,0 +1,68 @@
+package ma.gov.pfe.bench;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.gov.pfe.store.FlatVectorStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Recherche top-5 exacte sur N vecteurs synthétiques (dimension MiniLM) :
+// InMemoryEmbeddingStore de LangChain4j face au FlatVectorStore du projet
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules=jdk.incubator.vector", "-Xmx6g"})
+public class StoreSearchBenchmark {
+
+    private static final int DIMENSION = FlatVectorStore.MINILM_DIMENSION;
+    private static final int CHUNK = 10_000;
+    private static final int QUERIES = 256;
+
+    @Param({"10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"memory", "flat"})
+    public String store;
+
+    private EmbeddingStore<TextSegment> embeddingStore;
+    private List<Embedding> queries;
+    private int next;
+
+    @Setup
+    public void setup() {
+        embeddingStore = "memory".equals(store) ? new InMemoryEmbeddingStore<>() : new FlatVectorStore(DIMENSION);
+        // Par paquets pour ne pas garder 1M objets Embedding en plus du store
+        for (int from = 0; from < size; from += CHUNK) {
+            int count = Math.min(CHUNK, size - from);
+            embeddingStore.addAll(BenchResources.randomEmbeddings(count, DIMENSION, from));
+        }
+        queries = BenchResources.randomEmbeddings(QUERIES, DIMENSION, -1);
+    }
+
+    @Benchmark
+    public EmbeddingSearchResult<TextSegment> search() {
+        Embedding query = queries.get(next++ & (QUERIES - 1));
+        return embeddingStore.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(query)
+                .maxResults(5)
+                .build());
+    }
+}
@@ -0,0 +1,47 @@
+package ma.gov.pfe.assistant;
+
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiStreamingChatModel;
+import dev.langchain4j.service.AiServices;
+import ma.gov.pfe.metrics.MetricsChatModelListener;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+// Assistant d'une conversation, bloquant ou en streaming (streamingModel non null : réponse affichée
+// token par token, cf. TokenStreamPrinter.printing). configure complète le builder (mémoire, RAG...),
+// identique dans les deux cas.
+public final class Assistants {
+
+    private Assistants() {
+    }
+
+    // -Drag.streaming=true : Gemini en streaming (mesuré par MetricsChatModelListener), null sinon.
+    // Le streaming n'est ni enregistré ni rejoué : GEMINI_KEY est alors obligatoire.
+    public static StreamingChatModel streamingModel(String apiKey, double temperature) {
+        if (!Boolean.getBoolean("rag.streaming")) {
+            return null;
+        }
+        if (apiKey == null) {
+            throw new IllegalStateException("Le mode streaming n'est pas rejouable : définis GEMINI_KEY !");
+        }
+        return GoogleAiGeminiStreamingChatModel.builder()
+                .apiKey(apiKey)
+                .modelName("gemini-2.5-flash")
+                .temperature(temperature)
+                .listeners(List.of(new MetricsChatModelListener()))
+                .build();
+    }
+
+    public static Assistant build(ChatModel model, StreamingChatModel streamingModel, Consumer<AiServices<?>> configure) {
+        if (streamingModel == null) {
+            AiServices<Assistant> services = AiServices.builder(Assistant.class).chatModel(model);
+            configure.accept(services);
+            return services.build();
+        }
+        AiServices<StreamingAssistant> services = AiServices.builder(StreamingAssistant.class).streamingChatModel(streamingModel);
+        configure.accept(services);
+        return TokenStreamPrinter.printing(services.build());
+    }
+}
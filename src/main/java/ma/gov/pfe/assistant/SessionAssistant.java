@@ -0,0 +1,12 @@
+package ma.gov.pfe.assistant;
+
+import dev.langchain4j.service.MemoryId;
+import dev.langchain4j.service.UserMessage;
+import dev.langchain4j.service.memory.ChatMemoryAccess;
+
+// Assistant multi-utilisateurs : une mémoire de conversation par session ;
+// evictChatMemory(sessionId) libère celle d'une session terminée (AiServices les garde sinon indéfiniment)
+public interface SessionAssistant extends ChatMemoryAccess {
+
+    String chat(@MemoryId String sessionId, @UserMessage String userMessage);
+}
@@ -0,0 +1,11 @@
+package ma.gov.pfe.assistant;
+
+import dev.langchain4j.service.TokenStream;
+import dev.langchain4j.service.UserMessage;
+
+// Variante en streaming : la réponse arrive token par token (RAG toujours appliqué par AiServices)
+public interface StreamingAssistant {
+
+    @UserMessage("{{it}}")
+    TokenStream chat(String userMessage);
+}
@@ -0,0 +1,13 @@
+package ma.gov.pfe.assistant;
+
+import dev.langchain4j.service.MemoryId;
+import dev.langchain4j.service.TokenStream;
+import dev.langchain4j.service.UserMessage;
+import dev.langchain4j.service.memory.ChatMemoryAccess;
+
+// Variante en streaming de SessionAssistant (cf. RagServer, POST /chat/{nom}?stream=true) ; construite sur
+// le même ChatMemoryProvider que l'assistant bloquant, une session garde sa mémoire d'un mode à l'autre
+public interface StreamingSessionAssistant extends ChatMemoryAccess {
+
+    TokenStream chat(@MemoryId String sessionId, @UserMessage String userMessage);
+}
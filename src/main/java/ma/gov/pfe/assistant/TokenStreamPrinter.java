@@ -0,0 +1,75 @@
+package ma.gov.pfe.assistant;
+
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.service.TokenStream;
+import ma.gov.pfe.metrics.RagMetrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Affiche les tokens au fil de l'eau et mesure le temps jusqu'au premier token séparément du total
+// (aussi enregistré dans RagMetrics.TIME_TO_FIRST_TOKEN)
+public final class TokenStreamPrinter {
+
+    private TokenStreamPrinter() {
+    }
+
+    public static Timings print(TokenStream stream) {
+        try {
+            return collect(stream, token -> {
+                System.out.print(token);
+                System.out.flush();
+            });
+        } finally {
+            System.out.println();
+        }
+    }
+
+    // Assistant console : la réponse s'affiche token par token, suivie des temps ; la réponse complète est
+    // renvoyée (un cache sémantique placé devant la mémorise comme une réponse ordinaire)
+    public static Assistant printing(StreamingAssistant assistant) {
+        return question -> {
+            System.out.print(" ");
+            Timings timings = print(assistant.chat(question));
+            System.out.println(" (" + timings + ")");
+            return timings.text();
+        };
+    }
+
+    // Passe chaque token à onToken et attend la fin du flux
+    public static Timings collect(TokenStream stream, Consumer<String> onToken) {
+        long start = System.nanoTime();
+        AtomicLong firstToken = new AtomicLong(-1);
+        CompletableFuture<ChatResponse> done = new CompletableFuture<>();
+
+        stream.onPartialResponse(token -> {
+                    if (firstToken.compareAndSet(-1, System.nanoTime())) {
+                        RagMetrics.TIME_TO_FIRST_TOKEN.recordSince(start);
+                    }
+                    onToken.accept(token);
+                })
+                .onCompleteResponse(done::complete)
+                .onError(done::completeExceptionally)
+                .start();
+
+        ChatResponse response;
+        try {
+            response = done.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+        long end = System.nanoTime();
+        long first = firstToken.get() < 0 ? end : firstToken.get();
+        return new Timings(response.aiMessage().text(), (first - start) / 1_000_000, (end - start) / 1_000_000);
+    }
+
+    public record Timings(String text, long timeToFirstTokenMillis, long totalMillis) {
+
+        @Override
+        public String toString() {
+            return "premier token en " + timeToFirstTokenMillis + " ms, réponse complète en " + totalMillis + " ms";
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package ma.gov.pfe.cache;
+
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+import ma.gov.pfe.index.SegmentCodec;
+import ma.gov.pfe.metrics.RagMetrics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Cache des recherches web (décorateur de WebSearchEngine) : clé = texte de la requête normalisé,
+// TTL + taille bornée (LRU), une seule requête réseau pour des appels simultanés identiques,
+// et sauvegarde optionnelle sur disque entre deux exécutions : save() ou close(), que le programme
+// appelle à l'arrêt (un seul hook d'arrêt, enregistré par le point d'entrée, cf. TestWebSearch).
+// La requête réseau partagée tourne dans sa propre tâche : un appelant interrompu (échéance de
+// DeadlineContentRetriever) cesse seulement d'attendre, la recherche finit et remplit le cache pour les autres.
+public class CachingWebSearchEngine implements WebSearchEngine, AutoCloseable {
+
+    private static final ExecutorService VIRTUAL_THREADS = Executors.newVirtualThreadPerTaskExecutor();
+
+    private static final int MAGIC = 0x57454243; // "WEBC"
+    private static final int VERSION = 2; // 2 : clés normalisées en gardant + # / etc.
+
+    private final WebSearchEngine delegate;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Path file;
+    private final Clock clock;
+
+    // Les deux maps sont protégées par le verrou de cache : un appel voit soit l'entrée, soit la requête en cours
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, CompletableFuture<WebSearchResults>> inFlight = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+
+    public CachingWebSearchEngine(WebSearchEngine delegate, Duration ttl, int maxEntries) {
+        this(delegate, ttl, maxEntries, null);
+    }
+
+    // file : fichier de persistance, relu ici et réécrit par save() / close() (null = cache en mémoire seulement)
+    public CachingWebSearchEngine(WebSearchEngine delegate, Duration ttl, int maxEntries, Path file) {
+        this(delegate, ttl, maxEntries, file, Clock.systemUTC());
+    }
+
+    public CachingWebSearchEngine(WebSearchEngine delegate, Duration ttl, int maxEntries, Path file, Clock clock) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries doit être >= 1 : " + maxEntries);
+        }
+        this.delegate = delegate;
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+        this.file = file;
+        this.clock = clock;
+        if (file != null && Files.exists(file)) {
+            try {
+                load(file);
+            } catch (IOException | IllegalStateException e) {
+                System.out.println(" Cache web illisible, ignoré : " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public WebSearchResults search(WebSearchRequest request) {
+        String key = key(request);
+        CompletableFuture<WebSearchResults> mine = new CompletableFuture<>();
+        CompletableFuture<WebSearchResults> running;
+        synchronized (cache) {
+            Entry entry = cache.get(key);
+            if (entry != null && !expired(entry)) {
+                hits.incrementAndGet();
+                RagMetrics.WEB_CACHE_HITS.increment();
+                return entry.results();
+            }
+            running = inFlight.putIfAbsent(key, mine);
+        }
+        if (running != null) {
+            deduplicated.incrementAndGet();
+            return await(running);
+        }
+
+        misses.incrementAndGet();
+        RagMetrics.WEB_CACHE_MISSES.increment();
+        VIRTUAL_THREADS.execute(() -> fetch(key, request, mine));
+        return await(mine);
+    }
+
+    private void fetch(String key, WebSearchRequest request, CompletableFuture<WebSearchResults> mine) {
+        WebSearchResults results;
+        try {
+            results = delegate.search(request);
+        } catch (RuntimeException | Error e) {
+            synchronized (cache) {
+                inFlight.remove(key, mine);
+            }
+            mine.completeExceptionally(e);
+            return;
+        }
+        // Entrée publiée et requête retirée d'un seul coup : pas de fenêtre pour un second appel réseau
+        synchronized (cache) {
+            put(key, new Entry(results, clock.millis()));
+            inFlight.remove(key, mine);
+        }
+        mine.complete(results);
+    }
+
+    // Attente interruptible : l'interruption n'atteint pas la requête réseau partagée
+    private static WebSearchResults await(CompletableFuture<WebSearchResults> running) {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Recherche web interrompue", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new IllegalStateException(e.getCause());
+        }
+    }
+
+    public String stats() {
+        return String.format(Locale.ROOT, "Cache web : %d hits, %d appels réseau, %d requêtes dédupliquées",
+                hits.get(), misses.get(), deduplicated.get());
+    }
+
+    public synchronized void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        List<Map.Entry<String, Entry>> snapshot;
+        synchronized (cache) {
+            snapshot = new ArrayList<>(cache.entrySet());
+        }
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> item : snapshot) {
+                SegmentCodec.writeString(out, item.getKey());
+                out.writeLong(item.getValue().storedAt());
+                writeResults(out, item.getValue().results());
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Minuscules, ponctuation de phrase et espaces multiples retirés : "Qu'est-ce que le RAG ?" == "qu est ce que le rag".
+    // Les symboles qui font partie d'un terme restent ("c++", "c#", "node.js", "tcp/ip") ; un point n'est retiré
+    // qu'en fin de mot.
+    public static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT)
+                .replaceAll("[?!,;:'’\"«»()\\[\\]{}-]", " ")
+                .replaceAll("\\.+(?=\\s|$)", " ")
+                .replaceAll("\\s+", " ")
+                .trim();
+    }
+
+    private static String key(WebSearchRequest request) {
+        return normalize(request.searchTerms()) + "|" + request.maxResults();
+    }
+
+    // Sauvegarde finale ; une erreur est signalée sans être levée (utilisable depuis un hook d'arrêt)
+    @Override
+    public void close() {
+        try {
+            save();
+        } catch (IOException e) {
+            System.out.println(" Sauvegarde du cache web impossible : " + e.getMessage());
+        }
+    }
+
+    private boolean expired(Entry entry) {
+        return clock.millis() - entry.storedAt() > ttlMillis;
+    }
+
+    private void put(String key, Entry entry) {
+        synchronized (cache) {
+            cache.put(key, entry);
+            cache.values().removeIf(this::expired);
+            while (cache.size() > maxEntries) {
+                cache.remove(cache.keySet().iterator().next());
+            }
+        }
+    }
+
+    private void load(Path source) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalStateException("en-tête invalide " + source.getFileName());
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = SegmentCodec.readString(in);
+                long storedAt = in.readLong();
+                Entry entry = new Entry(readResults(in), storedAt);
+                if (!expired(entry)) {
+                    put(key, entry);
+                }
+            }
+        }
+    }
+
+    // Format des résultats partagé avec le journal d'enregistrement (replay)
+    public static void writeResults(DataOutputStream out, WebSearchResults results) throws IOException {
+        WebSearchInformationResult information = results.searchInformation();
+        Long total = information == null ? null : information.totalResults();
+        out.writeLong(total == null ? -1 : total);
+        out.writeInt(results.results().size());
+        for (WebSearchOrganicResult result : results.results()) {
+            SegmentCodec.writeString(out, result.title());
+            SegmentCodec.writeString(out, result.url().toString());
+            writeNullable(out, result.snippet());
+            writeNullable(out, result.content());
+        }
+    }
+
+    public static WebSearchResults readResults(DataInputStream in) throws IOException {
+        long total = in.readLong();
+        int count = in.readInt();
+        List<WebSearchOrganicResult> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String title = SegmentCodec.readString(in);
+            URI url = URI.create(SegmentCodec.readString(in));
+            String snippet = readNullable(in);
+            String content = readNullable(in);
+            results.add(WebSearchOrganicResult.from(title, url, snippet, content));
+        }
+        return WebSearchResults.from(WebSearchInformationResult.from(total < 0 ? (long) count : total), results);
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            SegmentCodec.writeString(out, value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? SegmentCodec.readString(in) : null;
+    }
+
+    private record Entry(WebSearchResults results, long storedAt) {
+    }
+}
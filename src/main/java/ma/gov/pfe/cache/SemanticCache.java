@@ -0,0 +1,183 @@
+package ma.gov.pfe.cache;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.gov.pfe.metrics.RagMetrics;
+import ma.gov.pfe.store.EmbeddingStores;
+import ma.gov.pfe.store.VectorMath;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Cache sémantique des réponses, partagé par toutes les conversations d'un même assistant : la question
+// est encodée avec MiniLM (local) et si une question assez proche (cosinus >= seuil) a déjà été posée dans
+// le même contexte, sa réponse est renvoyée sans appeler Gemini. Le contexte est borné et normalisé : la
+// seule question précédente de la conversation (minuscules, espaces réduits), pas la mémoire complète,
+// qui diffère d'une session à l'autre. Éviction LRU + TTL ; le cache est vidé quand l'un des index dont
+// dépendent les réponses change (cf. dependsOn).
+public class SemanticCache {
+
+    private final EmbeddingModel embeddingModel;
+    private final double threshold;
+    private final int maxEntries;
+    private final Duration ttl;
+    private final Clock clock;
+    private final List<LongSupplier> indexVersions = new CopyOnWriteArrayList<>();
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedVersion;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong missNanos = new AtomicLong();
+    private final AtomicLong lookupNanos = new AtomicLong();
+
+    public SemanticCache(EmbeddingModel embeddingModel) {
+        this(embeddingModel, 0.92, 1_000, Duration.ofHours(1), Clock.systemUTC());
+    }
+
+    public SemanticCache(EmbeddingModel embeddingModel, double threshold, int maxEntries, Duration ttl, Clock clock) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries doit être >= 1 : " + maxEntries);
+        }
+        this.embeddingModel = embeddingModel;
+        this.threshold = threshold;
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    // Index interrogé par l'assistant : toute écriture dans ce store vide le cache
+    public SemanticCache dependsOn(EmbeddingStore<TextSegment> store) {
+        return dependsOn(EmbeddingStores.version(store));
+    }
+
+    public SemanticCache dependsOn(LongSupplier indexVersion) {
+        indexVersions.add(indexVersion);
+        return this;
+    }
+
+    // Réponse à question, previousQuestion étant la question précédente de la même conversation (null au
+    // premier tour) : servie depuis le cache (onHit la reçoit, pour l'ajouter à la mémoire de la conversation)
+    // ou calculée par call puis mise en cache
+    public String answer(String previousQuestion, String question, Supplier<String> call, Consumer<String> onHit) {
+        long start = System.nanoTime();
+        Key key = new Key(previousQuestion == null ? "" : normalize(previousQuestion), normalize(question));
+        float[] vector = VectorMath.normalized(embeddingModel.embed(question).content().vector());
+
+        String cached = lookup(key, vector);
+        long lookupTime = System.nanoTime() - start;
+        lookupNanos.addAndGet(lookupTime);
+        if (cached != null) {
+            hits.incrementAndGet();
+            RagMetrics.SEMANTIC_CACHE_HITS.increment();
+            onHit.accept(cached);
+            return cached;
+        }
+
+        String answer = call.get();
+        misses.incrementAndGet();
+        RagMetrics.SEMANTIC_CACHE_MISSES.increment();
+        missNanos.addAndGet(System.nanoTime() - start - lookupTime);
+        put(key, vector, answer);
+        return answer;
+    }
+
+    // À appeler quand une source non suivie par dependsOn change
+    public synchronized void invalidate() {
+        entries.clear();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public double hitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0 : (double) hits.get() / total;
+    }
+
+    // Temps économisé estimé : nombre de hits x latence moyenne d'un appel au modèle
+    public Duration latencySaved() {
+        long missCount = misses.get();
+        return missCount == 0 ? Duration.ZERO : Duration.ofNanos(hits.get() * (missNanos.get() / missCount));
+    }
+
+    public String stats() {
+        long total = hits.get() + misses.get();
+        return String.format(Locale.ROOT, "Cache sémantique : %d hits / %d requêtes (%.1f%%), ~%d ms économisées, recherche moyenne %.2f ms",
+                hits.get(), total, 100 * hitRate(), latencySaved().toMillis(),
+                total == 0 ? 0 : lookupNanos.get() / 1e6 / total);
+    }
+
+    static String normalize(String text) {
+        return text.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    private synchronized String lookup(Key key, float[] vector) {
+        evictStale();
+        Entry exact = entries.get(key);
+        if (exact != null) {
+            return exact.answer();
+        }
+        Entry best = null;
+        double bestScore = threshold;
+        for (Entry entry : entries.values()) {
+            if (!entry.key().context().equals(key.context())) {
+                continue;
+            }
+            double score = VectorMath.dot(vector, entry.vector());
+            if (score >= bestScore) {
+                bestScore = score;
+                best = entry;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        entries.get(best.key()); // rafraîchit l'ordre LRU
+        return best.answer();
+    }
+
+    private synchronized void put(Key key, float[] vector, String answer) {
+        evictStale();
+        entries.put(key, new Entry(key, vector, answer, clock.millis()));
+        while (entries.size() > maxEntries) {
+            Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private void evictStale() {
+        long version = 0;
+        for (LongSupplier indexVersion : indexVersions) {
+            version += indexVersion.getAsLong();
+        }
+        if (version != cachedVersion) {
+            entries.clear();
+            cachedVersion = version;
+            return;
+        }
+        long oldest = clock.millis() - ttl.toMillis();
+        entries.values().removeIf(entry -> entry.createdAt() < oldest);
+    }
+
+    // Question (normalisée) posée après la question précédente context (normalisée, "" au premier tour)
+    private record Key(String context, String question) {
+    }
+
+    private record Entry(Key key, float[] vector, String answer, long createdAt) {
+    }
+}
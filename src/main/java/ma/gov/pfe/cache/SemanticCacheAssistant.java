@@ -0,0 +1,38 @@
+package ma.gov.pfe.cache;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import ma.gov.pfe.assistant.Assistant;
+
+// Une conversation devant un SemanticCache partagé : un hit est ajouté à la mémoire du délégué comme
+// s'il avait répondu, et la question devient le contexte de la suivante
+public class SemanticCacheAssistant implements Assistant {
+
+    private final Assistant delegate;
+    private final ChatMemory memory;
+    private final SemanticCache cache;
+    private String previousQuestion;
+
+    // memory : mémoire de conversation du délégué
+    public SemanticCacheAssistant(Assistant delegate, ChatMemory memory, SemanticCache cache) {
+        this.delegate = delegate;
+        this.memory = memory;
+        this.cache = cache;
+    }
+
+    // Sans cache (null), l'assistant est renvoyé tel quel
+    public static Assistant with(SemanticCache cache, Assistant delegate, ChatMemory memory) {
+        return cache == null ? delegate : new SemanticCacheAssistant(delegate, memory, cache);
+    }
+
+    @Override
+    public String chat(String userMessage) {
+        String answer = cache.answer(previousQuestion, userMessage, () -> delegate.chat(userMessage), cached -> {
+            memory.add(UserMessage.from(userMessage));
+            memory.add(AiMessage.from(cached));
+        });
+        previousQuestion = userMessage;
+        return answer;
+    }
+}
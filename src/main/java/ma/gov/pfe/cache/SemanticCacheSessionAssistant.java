@@ -0,0 +1,58 @@
+package ma.gov.pfe.cache;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import ma.gov.pfe.assistant.SessionAssistant;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+// SessionAssistant multi-sessions devant un SemanticCache partagé. memories doit être le fournisseur
+// donné à AiServices et ses mémoires doivent partager un ChatMemoryStore : un hit est écrit dans la
+// mémoire de la session même si AiServices ne l'a pas encore ouverte.
+public class SemanticCacheSessionAssistant implements SessionAssistant {
+
+    private final SessionAssistant delegate;
+    private final ChatMemoryProvider memories;
+    private final SemanticCache cache;
+    private final Map<Object, String> previousQuestions = new ConcurrentHashMap<>();
+
+    public SemanticCacheSessionAssistant(SessionAssistant delegate, ChatMemoryProvider memories, SemanticCache cache) {
+        this.delegate = delegate;
+        this.memories = memories;
+        this.cache = cache;
+    }
+
+    @Override
+    public String chat(String sessionId, String userMessage) {
+        return chat(sessionId, userMessage, () -> delegate.chat(sessionId, userMessage));
+    }
+
+    // Même cache pour une réponse produite autrement (streaming) : call n'est appelé qu'en cas de miss et
+    // doit écrire dans la même mémoire de session ; sinon la réponse en cache est renvoyée
+    public String chat(String sessionId, String userMessage, Supplier<String> call) {
+        String answer = cache.answer(previousQuestions.get(sessionId), userMessage, call, cached -> {
+            ChatMemory memory = memories.get(sessionId);
+            memory.add(UserMessage.from(userMessage));
+            memory.add(AiMessage.from(cached));
+        });
+        previousQuestions.put(sessionId, userMessage);
+        return answer;
+    }
+
+    @Override
+    public ChatMemory getChatMemory(Object memoryId) {
+        return delegate.getChatMemory(memoryId);
+    }
+
+    // Vide aussi les messages du store partagé, que l'éviction d'AiServices laisse en place
+    @Override
+    public boolean evictChatMemory(Object memoryId) {
+        previousQuestions.remove(memoryId);
+        memories.get(memoryId).clear();
+        return delegate.evictChatMemory(memoryId);
+    }
+}
@@ -0,0 +1,182 @@
+package ma.gov.pfe.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Regroupe les requêtes d'embedding concurrentes (typiquement une question chacune) :
+// tout ce qui arrive dans une fenêtre de maxWait (ou jusqu'à maxBatchSize) part en un seul embedAll.
+public class BatchingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private final EmbeddingModel delegate;
+    private final long maxWaitNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService workers;
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong items = new AtomicLong();
+    private final AtomicLong queueNanos = new AtomicLong();
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+
+    public BatchingEmbeddingModel(EmbeddingModel delegate) {
+        this(delegate, Duration.ofMillis(2), 32, 2);
+    }
+
+    // concurrency : nombre de lots exécutés en parallèle pendant que le suivant se remplit
+    public BatchingEmbeddingModel(EmbeddingModel delegate, Duration maxWait, int maxBatchSize, int concurrency) {
+        if (maxBatchSize < 1 || concurrency < 1) {
+            throw new IllegalArgumentException("maxBatchSize et concurrency doivent être >= 1");
+        }
+        this.delegate = delegate;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.workers = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "embedding-batch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dispatcher = new Thread(this::dispatch, "embedding-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        // Un lot déjà gros (ingestion) n'a rien à gagner à attendre
+        if (segments.size() >= maxBatchSize || !running) {
+            return delegate.embedAll(segments);
+        }
+        List<Pending> mine = new ArrayList<>(segments.size());
+        List<CompletableFuture<Embedding>> futures = new ArrayList<>(segments.size());
+        for (TextSegment segment : segments) {
+            Pending pending = new Pending(segment, System.nanoTime(), new CompletableFuture<>());
+            queue.add(pending);
+            mine.add(pending);
+            futures.add(pending.result());
+        }
+        // close() pendant l'ajout : le dispatcher a pu vider la file avant nos requêtes, personne ne les
+        // prendrait plus. Celles encore en file sont échouées ici ; les autres sont dans un lot ou déjà échouées.
+        if (!running) {
+            for (Pending pending : mine) {
+                if (queue.remove(pending)) {
+                    pending.result().completeExceptionally(new IllegalStateException("BatchingEmbeddingModel fermé"));
+                }
+            }
+        }
+        List<Embedding> embeddings = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<Embedding> future : futures) {
+                embeddings.add(future.join());
+            }
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+        return Response.from(embeddings);
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+
+    public double averageBatchSize() {
+        long count = batches.get();
+        return count == 0 ? 0 : (double) items.get() / count;
+    }
+
+    public Duration averageQueueDelay() {
+        long count = items.get();
+        return count == 0 ? Duration.ZERO : Duration.ofNanos(queueNanos.get() / count);
+    }
+
+    public String stats() {
+        return String.format(Locale.ROOT, "Embeddings groupés : %d lots, %.1f requêtes / lot, attente moyenne %.2f ms (max %.2f ms)",
+                batches.get(), averageBatchSize(), averageQueueDelay().toNanos() / 1e6, maxQueueNanos.get() / 1e6);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        dispatcher.interrupt();
+        workers.shutdown();
+    }
+
+    private void dispatch() {
+        while (running) {
+            List<Pending> batch = new ArrayList<>(maxBatchSize);
+            try {
+                Pending first = queue.take();
+                batch.add(first);
+                long deadline = first.enqueuedAt() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Pending next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                fail(batch, new IllegalStateException("BatchingEmbeddingModel fermé", e));
+                break;
+            }
+            try {
+                workers.execute(() -> run(batch));
+            } catch (RejectedExecutionException e) {
+                // close() a arrêté les workers entre-temps
+                fail(batch, new IllegalStateException("BatchingEmbeddingModel fermé", e));
+            }
+        }
+        List<Pending> left = new ArrayList<>();
+        queue.drainTo(left);
+        fail(left, new IllegalStateException("BatchingEmbeddingModel fermé"));
+    }
+
+    private void run(List<Pending> batch) {
+        long start = System.nanoTime();
+        List<TextSegment> segments = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            long waited = start - pending.enqueuedAt();
+            queueNanos.addAndGet(waited);
+            maxQueueNanos.accumulateAndGet(waited, Math::max);
+            segments.add(pending.segment());
+        }
+        batches.incrementAndGet();
+        items.addAndGet(batch.size());
+        try {
+            List<Embedding> embeddings = delegate.embedAll(segments).content();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result().complete(embeddings.get(i));
+            }
+        } catch (RuntimeException | Error e) {
+            fail(batch, e);
+        }
+    }
+
+    private static void fail(List<Pending> batch, Throwable error) {
+        for (Pending pending : batch) {
+            pending.result().completeExceptionally(error);
+        }
+    }
+
+    private record Pending(TextSegment segment, long enqueuedAt, CompletableFuture<Embedding> result) {
+    }
+}
@@ -0,0 +1,61 @@
+package ma.gov.pfe.embedding;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import ma.gov.pfe.metrics.MeteredEmbeddingModel;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Une seule instance MiniLM (session ONNX + tokenizer) partagée par tous les tests.
+// Réglages : -Drag.embedding.threads=N (threads d'inférence), -Drag.embedding.warmup=true|false
+public final class EmbeddingModelProvider {
+
+    private static final int WARMUP_ROUNDS = 3;
+
+    private EmbeddingModelProvider() {
+    }
+
+    public static EmbeddingModel get() {
+        return Holder.INSTANCE;
+    }
+
+    // Quelques inférences au démarrage pour payer le coût JIT / ONNX avant la première question
+    private static void warmUp(EmbeddingModel model) {
+        long start = System.nanoTime();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            model.embed("Qu'est-ce que le RAG (retrieval augmented generation) ?");
+        }
+        System.out.println(" Modèle d'embeddings préchauffé en " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    private static final class Holder {
+
+        private static final EmbeddingModel INSTANCE = create();
+
+        private static EmbeddingModel create() {
+            int threads = Integer.getInteger("rag.embedding.threads", Runtime.getRuntime().availableProcessors());
+            if (threads < 1) {
+                throw new IllegalArgumentException("rag.embedding.threads doit être >= 1 : " + threads);
+            }
+            EmbeddingModel model = new AllMiniLmL6V2EmbeddingModel(newExecutor(threads));
+            if (Boolean.parseBoolean(System.getProperty("rag.embedding.warmup", "true"))) {
+                warmUp(model);
+            }
+            return new MeteredEmbeddingModel(model);
+        }
+
+        // L'exécuteur borne le parallélisme de embedAll ; threads démons pour ne pas bloquer la sortie
+        private static ExecutorService newExecutor(int threads) {
+            AtomicInteger counter = new AtomicInteger();
+            ThreadFactory factory = runnable -> {
+                Thread thread = new Thread(runnable, "embedding-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            return Executors.newFixedThreadPool(threads, factory);
+        }
+    }
+}
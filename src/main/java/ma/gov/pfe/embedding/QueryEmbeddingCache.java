@@ -0,0 +1,79 @@
+package ma.gov.pfe.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+// Embedding de la requête calculé une seule fois : le routeur (ExemplarQueryRouter, AiTopicClassifier),
+// le retriever (EmbeddingStoreContentRetriever) et le cache sémantique encodent tous query.text().
+// embed(String) est mémorisé par texte (LRU borné) ; un appel concurrent sur le même texte, comme la
+// recherche spéculative pendant la classification, attend le calcul en cours au lieu de le refaire.
+// embedAll (ingestion) passe tel quel ; l'index doit être construit avec le modèle d'origine, dont la
+// classe entre dans l'empreinte du cache d'index (cf. IngestionPipeline).
+public class QueryEmbeddingCache implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+    private final Map<String, CompletableFuture<Response<Embedding>>> recent;
+
+    public QueryEmbeddingCache(EmbeddingModel delegate) {
+        this(delegate, 1_024);
+    }
+
+    public QueryEmbeddingCache(EmbeddingModel delegate, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries doit être >= 1 : " + maxEntries);
+        }
+        this.delegate = delegate;
+        this.recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<Response<Embedding>>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public Response<Embedding> embed(String text) {
+        CompletableFuture<Response<Embedding>> mine = new CompletableFuture<>();
+        CompletableFuture<Response<Embedding>> existing;
+        synchronized (recent) {
+            existing = recent.putIfAbsent(text, mine);
+        }
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+        try {
+            Response<Embedding> response = delegate.embed(text);
+            mine.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            // Un échec n'est pas mémorisé : le prochain appel réessaie
+            synchronized (recent) {
+                recent.remove(text, mine);
+            }
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        return delegate.embedAll(segments);
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+}
@@ -0,0 +1,559 @@
+package ma.gov.pfe.index;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.gov.pfe.embedding.EmbeddingModelProvider;
+import ma.gov.pfe.ingestion.IngestionPipeline;
+import ma.gov.pfe.store.EmbeddingStores;
+import ma.gov.pfe.store.SwappableEmbeddingStore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+// Indexation incrémentale d'un dossier de documents surveillé par WatchService.
+// Chaque segment est identifié par (fichier, hash SHA-256 du texte, occurrence) : à chaque changement
+// seuls les segments nouveaux ou modifiés passent dans le modèle d'embeddings, les disparus sont retirés par id.
+// Deux stores identiques (double tampon) : le diff est appliqué au store inactif, qui devient actif
+// d'un coup (SwappableEmbeddingStore), puis rejoué sur l'ancien. Les requêtes ne voient jamais d'état partiel.
+// Si le rejeu échoue, le store inactif est reconstruit depuis l'état indexé avant le diff suivant.
+// Les vecteurs (id -> embedding) sont sauvegardés après chaque passe dans cacheFile : au redémarrage,
+// indexAll ne réencode que les segments modifiés pendant l'arrêt.
+public class IncrementalIndexer implements AutoCloseable {
+
+    private static final int MAGIC = 0x52414749; // "RAGI"
+    private static final int VERSION = 1;
+    private static final long MAX_RETRY_MILLIS = 60_000;
+
+    private final Path root;
+    private final IngestionPipeline pipeline;
+    private final Supplier<EmbeddingStore<TextSegment>> storeFactory;
+    private final long quietPeriodMillis;
+    private final Path cacheFile;
+    private final SwappableEmbeddingStore view;
+    private EmbeddingStore<TextSegment> standby;
+    private boolean standbyStale;
+
+    // Vecteurs relus de cacheFile, consultés avant d'appeler le modèle ; vidé après la première passe complète
+    private final Map<String, Embedding> cached;
+
+    // fichier -> (id -> segment indexé)
+    private final Map<Path, Map<String, Indexed>> files = new HashMap<>();
+
+    private volatile WatchService watchService;
+    private Thread watcher;
+
+    // quietPeriod : délai sans nouvel événement avant de réindexer (un éditeur écrit souvent en plusieurs fois)
+    public IncrementalIndexer(Path root, IngestionPipeline pipeline, Supplier<EmbeddingStore<TextSegment>> storeFactory,
+                              Duration quietPeriod) {
+        this(root, pipeline, storeFactory, quietPeriod, null);
+    }
+
+    // cacheFile : null pour ne rien persister
+    public IncrementalIndexer(Path root, IngestionPipeline pipeline, Supplier<EmbeddingStore<TextSegment>> storeFactory,
+                              Duration quietPeriod, Path cacheFile) {
+        this.root = root.toAbsolutePath().normalize();
+        this.pipeline = pipeline;
+        this.storeFactory = storeFactory;
+        this.quietPeriodMillis = quietPeriod.toMillis();
+        this.cacheFile = cacheFile;
+        this.view = new SwappableEmbeddingStore(storeFactory.get());
+        this.standby = storeFactory.get();
+        this.cached = cacheFile == null ? new HashMap<>() : readCache(cacheFile, pipeline.settings());
+    }
+
+    // Cache des vecteurs dans -Drag.index.dir (.rag-index par défaut), un fichier par dossier surveillé
+    public static IncrementalIndexer defaults(Path root, EmbeddingModel embeddingModel) {
+        Path indexDir = Path.of(System.getProperty("rag.index.dir", ".rag-index"));
+        Path cacheFile = indexDir.resolve("incremental-" + hash(root.toAbsolutePath().normalize().toString()) + ".bin");
+        return new IncrementalIndexer(root, IngestionPipeline.defaults(embeddingModel), EmbeddingStores::create,
+                Duration.ofMillis(500), cacheFile);
+    }
+
+    // Store à donner aux retrievers : toujours le même objet, son contenu change par échange atomique
+    public EmbeddingStore<TextSegment> store() {
+        return view;
+    }
+
+    // Passe complète : fichiers présents + fichiers connus (pour détecter les suppressions)
+    public synchronized ReindexStats indexAll() {
+        Set<Path> paths = new HashSet<>(files.keySet());
+        paths.addAll(listFiles(root));
+        ReindexStats stats = sync(paths);
+        // Tout ce qui existe encore est maintenant dans files : le reste du cache ne servira plus
+        cached.clear();
+        return stats;
+    }
+
+    public synchronized ReindexStats sync(Collection<Path> paths) {
+        long start = System.nanoTime();
+        List<Path> normalized = paths.stream().map(path -> path.toAbsolutePath().normalize()).distinct().toList();
+        Diff diff = new Diff(cached);
+        // Un fichier déplacé (suppression + création dans la même passe) garde ses vecteurs
+        for (Path path : normalized) {
+            diff.rememberTexts(files.getOrDefault(path, Map.of()));
+        }
+        Map<Path, Map<String, Indexed>> updated = new HashMap<>();
+        int changedFiles = 0;
+
+        for (Path path : normalized) {
+            Map<String, Indexed> previous = files.getOrDefault(path, Map.of());
+            Map<String, TextSegment> current;
+            try {
+                current = indexable(path) ? segments(path) : Map.of();
+            } catch (RuntimeException e) {
+                System.out.println(" Fichier ignoré (" + path.getFileName() + ") : " + e.getMessage());
+                continue;
+            }
+            if (diff.add(path, previous, current, updated)) {
+                changedFiles++;
+            }
+        }
+        if (changedFiles == 0) {
+            return ReindexStats.NONE;
+        }
+
+        diff.embedMissing(pipeline.embeddingModel(), pipeline.batchSize());
+        if (standbyStale) {
+            rebuildStandby();
+        }
+        try {
+            diff.applyTo(standby);
+        } catch (RuntimeException e) {
+            // Diff appliqué en partie : le store inactif ne correspond plus à files. Les vecteurs calculés
+            // sont gardés pour le nouvel essai.
+            standbyStale = true;
+            diff.rememberEmbeddings(cached);
+            throw e;
+        }
+        standby = view.swap(standby);
+
+        for (Map.Entry<Path, Map<String, Indexed>> entry : updated.entrySet()) {
+            if (entry.getValue().isEmpty()) {
+                files.remove(entry.getKey());
+            } else {
+                files.put(entry.getKey(), entry.getValue());
+            }
+        }
+        try {
+            diff.applyTo(standby);
+        } catch (RuntimeException e) {
+            // Le store actif est à jour : l'ancien sera reconstruit avant le prochain diff
+            standbyStale = true;
+            System.out.println(" Store inactif à reconstruire : " + e.getMessage());
+        }
+        cached.keySet().removeAll(diff.addIds);
+        writeCache();
+
+        ReindexStats stats = new ReindexStats(changedFiles, diff.embedded, diff.reused, diff.removeIds.size() - diff.replaced,
+                System.nanoTime() - start);
+        System.out.println(" " + stats);
+        return stats;
+    }
+
+    // Surveillance en tâche de fond (thread démon) ; les événements sont regroupés par quietPeriod
+    public synchronized void watch() throws IOException {
+        if (watcher != null) {
+            return;
+        }
+        watchService = root.getFileSystem().newWatchService();
+        registerAll(root);
+        watcher = new Thread(this::watchLoop, "index-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        WatchService service = watchService;
+        if (service != null) {
+            service.close();
+        }
+    }
+
+    // Une passe qui échoue (modèle indisponible, store en erreur...) garde ses fichiers en attente :
+    // nouvel essai avec une attente doublée à chaque échec, jusqu'à MAX_RETRY_MILLIS
+    private void watchLoop() {
+        Set<Path> pending = new HashSet<>();
+        long wait = quietPeriodMillis;
+        try {
+            while (true) {
+                WatchKey key = pending.isEmpty()
+                        ? watchService.take()
+                        : watchService.poll(wait, TimeUnit.MILLISECONDS);
+                if (key == null) {
+                    try {
+                        sync(pending);
+                        pending.clear();
+                        wait = quietPeriodMillis;
+                    } catch (RuntimeException e) {
+                        wait = Math.min(Math.max(wait * 2, 1), MAX_RETRY_MILLIS);
+                        System.out.println(" Réindexation échouée, nouvel essai dans " + wait + " ms : " + e.getMessage());
+                    }
+                    continue;
+                }
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Événements perdus : on compare tout, seuls les segments changés seront encodés
+                        pending.addAll(listFiles(root));
+                        pending.addAll(knownFiles());
+                        continue;
+                    }
+                    Path path = dir.resolve((Path) event.context());
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                        registerAll(path);
+                        pending.addAll(listFiles(path));
+                    } else {
+                        pending.add(path);
+                    }
+                }
+                if (!key.reset()) {
+                    // Dossier supprimé : ses fichiers connus disparaissent de l'index
+                    for (Path known : knownFiles()) {
+                        if (known.startsWith(dir)) {
+                            pending.add(known);
+                        }
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // close()
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println(" Surveillance arrêtée : " + e.getMessage());
+        }
+    }
+
+    // Store neuf rempli depuis files, l'état que le store actif expose
+    private void rebuildStandby() {
+        EmbeddingStore<TextSegment> rebuilt = storeFactory.get();
+        List<String> ids = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (Map<String, Indexed> indexed : files.values()) {
+            for (Map.Entry<String, Indexed> entry : indexed.entrySet()) {
+                ids.add(entry.getKey());
+                embeddings.add(entry.getValue().embedding());
+                segments.add(entry.getValue().segment());
+            }
+        }
+        if (!ids.isEmpty()) {
+            rebuilt.addAll(ids, embeddings, segments);
+        }
+        standby = rebuilt;
+        standbyStale = false;
+        System.out.println(" Store inactif reconstruit (" + ids.size() + " segments)");
+    }
+
+    // Le cache est une optimisation : une écriture ratée est signalée, l'indexation continue
+    private void writeCache() {
+        if (cacheFile == null) {
+            return;
+        }
+        int count = 0;
+        int dimension = 0;
+        for (Map<String, Indexed> indexed : files.values()) {
+            for (Indexed segment : indexed.values()) {
+                count++;
+                dimension = segment.embedding().dimension();
+            }
+        }
+        try {
+            Files.createDirectories(cacheFile.toAbsolutePath().getParent());
+            Path tmp = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                SegmentCodec.writeString(out, pipeline.settings());
+                out.writeInt(count);
+                out.writeInt(dimension);
+                for (Map<String, Indexed> indexed : files.values()) {
+                    for (Map.Entry<String, Indexed> entry : indexed.entrySet()) {
+                        SegmentCodec.writeString(out, entry.getKey());
+                        for (float v : entry.getValue().embedding().vector()) {
+                            out.writeFloat(v);
+                        }
+                    }
+                }
+            }
+            Files.move(tmp, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.out.println(" Impossible d'écrire le cache d'index : " + e.getMessage());
+        }
+    }
+
+    // Cache absent, illisible ou produit avec d'autres réglages (modèle, splitter) : on repart de zéro
+    private static Map<String, Embedding> readCache(Path file, String settings) {
+        Map<String, Embedding> embeddings = new HashMap<>();
+        if (!Files.exists(file)) {
+            return embeddings;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalStateException("en-tête invalide " + file.getFileName());
+            }
+            if (!settings.equals(SegmentCodec.readString(in))) {
+                return embeddings;
+            }
+            int count = in.readInt();
+            int dimension = in.readInt();
+            if (count < 0 || dimension < 0) {
+                throw new IllegalStateException("taille incohérente " + count + " x " + dimension);
+            }
+            for (int i = 0; i < count; i++) {
+                String id = SegmentCodec.readString(in);
+                float[] vector = new float[dimension];
+                for (int j = 0; j < dimension; j++) {
+                    vector[j] = in.readFloat();
+                }
+                embeddings.put(id, Embedding.from(vector));
+            }
+            System.out.println(" Cache d'index chargé : " + embeddings.size() + " vecteurs");
+            return embeddings;
+        } catch (IOException | RuntimeException e) {
+            System.out.println(" Cache d'index illisible, ignoré : " + e);
+            return new HashMap<>();
+        }
+    }
+
+    private synchronized List<Path> knownFiles() {
+        return new ArrayList<>(files.keySet());
+    }
+
+    private void registerAll(Path dir) throws IOException {
+        try (Stream<Path> dirs = Files.walk(dir)) {
+            for (Path d : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+                d.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            }
+        }
+    }
+
+    private static List<Path> listFiles(Path dir) {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> walk = Files.walk(dir)) {
+            return walk.filter(IncrementalIndexer::indexable)
+                    .map(p -> p.toAbsolutePath().normalize())
+                    .toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Fichiers cachés et temporaires d'éditeurs ignorés
+    private static boolean indexable(Path path) {
+        String name = path.getFileName().toString();
+        return Files.isRegularFile(path) && !name.startsWith(".") && !name.endsWith("~")
+                && !name.endsWith(".tmp") && !name.endsWith(".swp");
+    }
+
+    // Segments du fichier par id stable ; deux segments au texte identique se distinguent par leur occurrence
+    private Map<String, TextSegment> segments(Path path) {
+        Map<String, TextSegment> segments = new LinkedHashMap<>();
+        Map<String, Integer> occurrences = new HashMap<>();
+        for (TextSegment segment : pipeline.segments(path)) {
+            String hash = hash(segment.text());
+            int occurrence = occurrences.merge(hash, 1, Integer::sum);
+            segments.put(id(path, hash, occurrence), segment);
+        }
+        return segments;
+    }
+
+    private static String id(Path path, String hash, int occurrence) {
+        return UUID.nameUUIDFromBytes((path + "|" + hash + "|" + occurrence).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private static String hash(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)), 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Démo : java ... IncrementalIndexer [dossier] puis modifier / ajouter / supprimer des fichiers
+    public static void main(String[] args) throws Exception {
+        Path dir = Path.of(args.length > 0 ? args[0] : "documents");
+        Files.createDirectories(dir);
+        EmbeddingModel embeddingModel = EmbeddingModelProvider.get();
+        try (IncrementalIndexer indexer = IncrementalIndexer.defaults(dir, embeddingModel)) {
+            indexer.indexAll();
+            indexer.watch();
+
+            ContentRetriever retriever = EmbeddingStoreContentRetriever.builder()
+                    .embeddingStore(indexer.store())
+                    .embeddingModel(embeddingModel)
+                    .maxResults(3)
+                    .build();
+
+            System.out.println(" Surveillance de " + dir.toAbsolutePath() + " — recherche ('exit' pour quitter)");
+            Scanner sc = new Scanner(System.in);
+            while (true) {
+                System.out.print(" Requête : ");
+                String q = sc.nextLine();
+                if (q.equalsIgnoreCase("exit")) break;
+                for (Content content : retriever.retrieve(Query.from(q))) {
+                    TextSegment segment = content.textSegment();
+                    String text = segment.text().replace('\n', ' ');
+                    System.out.println("   [" + segment.metadata().getString("file_name") + "] "
+                            + text.substring(0, Math.min(text.length(), 100)));
+                }
+            }
+        }
+    }
+
+    private record Indexed(TextSegment segment, Embedding embedding) {
+    }
+
+    // Différence entre l'état indexé et les fichiers relus, appliquée à l'identique aux deux stores
+    private static final class Diff {
+
+        // Vecteurs connus hors de l'état indexé (cache disque, essai précédent échoué)
+        private final Map<String, Embedding> known;
+        // Vecteurs des fichiers de la passe, par texte : segment réécrit, déplacé ou changé de fichier
+        private final Map<String, Embedding> previousByText = new HashMap<>();
+        private final List<String> removeIds = new ArrayList<>();
+        private final List<String> addIds = new ArrayList<>();
+        private final List<TextSegment> addSegments = new ArrayList<>();
+        private final List<Embedding> addEmbeddings = new ArrayList<>();
+        // État mémorisé de chaque fichier ajouté, complété une fois les vecteurs calculés
+        private final List<Map<String, Indexed>> addOwners = new ArrayList<>();
+        private int embedded;
+        private int reused;
+        private int replaced;
+
+        Diff(Map<String, Embedding> known) {
+            this.known = known;
+        }
+
+        void rememberTexts(Map<String, Indexed> previous) {
+            for (Indexed indexed : previous.values()) {
+                previousByText.putIfAbsent(indexed.segment().text(), indexed.embedding());
+            }
+        }
+
+        // false si le fichier n'a pas changé (mêmes ids, mêmes métadonnées)
+        boolean add(Path path, Map<String, Indexed> previous, Map<String, TextSegment> current,
+                    Map<Path, Map<String, Indexed>> updated) {
+            boolean changed = false;
+            Map<String, Indexed> next = new LinkedHashMap<>();
+            for (Map.Entry<String, TextSegment> entry : current.entrySet()) {
+                String id = entry.getKey();
+                TextSegment segment = entry.getValue();
+                Indexed old = previous.get(id);
+                if (old != null && old.segment().metadata().equals(segment.metadata())) {
+                    next.put(id, old);
+                    continue;
+                }
+                changed = true;
+                if (old != null) {
+                    // Même texte, position changée (index) : on réécrit le segment sans le réencoder
+                    removeIds.add(id);
+                    replaced++;
+                }
+                Embedding embedding = old != null ? old.embedding() : previousByText.get(segment.text());
+                if (embedding == null) {
+                    embedding = known.get(id);
+                }
+                if (embedding != null) {
+                    reused++;
+                }
+                addIds.add(id);
+                addSegments.add(segment);
+                addEmbeddings.add(embedding);
+                addOwners.add(next);
+                next.put(id, new Indexed(segment, embedding));
+            }
+            for (String id : previous.keySet()) {
+                if (!current.containsKey(id)) {
+                    removeIds.add(id);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                updated.put(path, next);
+            }
+            return changed;
+        }
+
+        void embedMissing(EmbeddingModel model, int batchSize) {
+            List<Integer> positions = new ArrayList<>();
+            for (int i = 0; i < addEmbeddings.size(); i++) {
+                if (addEmbeddings.get(i) == null) {
+                    positions.add(i);
+                }
+            }
+            for (int from = 0; from < positions.size(); from += batchSize) {
+                List<Integer> batch = positions.subList(from, Math.min(from + batchSize, positions.size()));
+                List<TextSegment> segments = new ArrayList<>(batch.size());
+                for (int position : batch) {
+                    segments.add(addSegments.get(position));
+                }
+                List<Embedding> embeddings = model.embedAll(segments).content();
+                for (int i = 0; i < batch.size(); i++) {
+                    addEmbeddings.set(batch.get(i), embeddings.get(i));
+                }
+            }
+            embedded = positions.size();
+            for (int position : positions) {
+                addOwners.get(position).put(addIds.get(position),
+                        new Indexed(addSegments.get(position), addEmbeddings.get(position)));
+            }
+        }
+
+        void rememberEmbeddings(Map<String, Embedding> target) {
+            for (int i = 0; i < addIds.size(); i++) {
+                target.put(addIds.get(i), addEmbeddings.get(i));
+            }
+        }
+
+        void applyTo(EmbeddingStore<TextSegment> store) {
+            if (!removeIds.isEmpty()) {
+                store.removeAll(removeIds);
+            }
+            if (!addIds.isEmpty()) {
+                store.addAll(addIds, addEmbeddings, addSegments);
+            }
+        }
+    }
+}
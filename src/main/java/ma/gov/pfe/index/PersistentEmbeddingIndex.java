@@ -0,0 +1,256 @@
+package ma.gov.pfe.index;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.gov.pfe.ingestion.IngestedDocument;
+import ma.gov.pfe.ingestion.IngestionPipeline;
+import ma.gov.pfe.ingestion.IngestionStats;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+// Index persistant : vecteurs dans un fichier float plat (.vec) lu et écrit par blocs,
+// texte + métadonnées des segments à côté (.seg). La clé combine le hash du PDF
+// et les réglages du pipeline (splitter / modèle) : si rien ne change, pas de re-parsing ni re-embedding.
+public class PersistentEmbeddingIndex {
+
+    private static final int MAGIC = 0x52414731; // "RAG1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+    private static final int IO_BUFFER_BYTES = 1 << 16;
+
+    private final Path indexDir;
+    private final IngestionPipeline pipeline;
+
+    public PersistentEmbeddingIndex(Path indexDir, IngestionPipeline pipeline) {
+        this.indexDir = indexDir;
+        this.pipeline = pipeline;
+    }
+
+    // Pipeline par défaut (recursive(500, 50)), dossier surchargeable par -Drag.index.dir
+    public static PersistentEmbeddingIndex defaults(EmbeddingModel embeddingModel) {
+        return new PersistentEmbeddingIndex(Path.of(System.getProperty("rag.index.dir", ".rag-index")),
+                IngestionPipeline.defaults(embeddingModel));
+    }
+
+    public void load(Path source, EmbeddingStore<TextSegment> store) {
+        load(List.of(source), store);
+    }
+
+    // Charge les documents dans le store : depuis le cache quand la clé correspond,
+    // les autres passent ensemble dans le pipeline d'ingestion puis sont écrits sur disque
+    public void load(List<Path> sources, EmbeddingStore<TextSegment> store) {
+        List<Path> missing = new ArrayList<>();
+        Map<Path, String> keys = new HashMap<>();
+
+        for (Path source : sources) {
+            String key = key(source);
+            keys.put(source, key);
+            Path vecFile = indexDir.resolve(key + ".vec");
+            Path segFile = indexDir.resolve(key + ".seg");
+
+            if (Files.exists(vecFile) && Files.exists(segFile)) {
+                IngestedDocument cached = readCached(source, vecFile, segFile);
+                if (cached != null) {
+                    cached.addTo(store);
+                    System.out.println(" Index chargé depuis le cache : " + source.getFileName() + " (" + cached.segments().size() + " segments)");
+                    continue;
+                }
+            }
+            missing.add(source);
+        }
+
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<IngestedDocument> documents = pipeline.process(missing);
+        int segmentCount = 0;
+        for (IngestedDocument doc : documents) {
+            String key = keys.get(doc.source());
+            try {
+                Files.createDirectories(indexDir);
+                writeVectors(indexDir.resolve(key + ".vec"), doc.embeddings());
+                writeSegments(indexDir.resolve(key + ".seg"), doc.segments());
+            } catch (IOException e) {
+                // Le cache est une optimisation : on continue sans lui
+                System.out.println(" Impossible d'écrire l'index : " + e.getMessage());
+            }
+            doc.addTo(store);
+            segmentCount += doc.segments().size();
+        }
+        System.out.println(" Index construit — " + new IngestionStats(documents.size(), segmentCount, System.nanoTime() - start));
+    }
+
+    // null si le cache est illisible (fichier tronqué, longueur négative, en-tête faux...) : il sera reconstruit
+    private static IngestedDocument readCached(Path source, Path vecFile, Path segFile) {
+        try {
+            List<TextSegment> segments = readSegments(segFile);
+            return new IngestedDocument(source, segments, readVectors(vecFile, segments.size()));
+        } catch (IOException | RuntimeException e) {
+            System.out.println(" Index illisible, reconstruction : " + e);
+            return null;
+        }
+    }
+
+    String key(Path source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(source))) {
+                byte[] buffer = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    digest.update(buffer, 0, n);
+                }
+            }
+            digest.update((pipeline.settings() + "|v" + VERSION).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest(), 0, 16);
+        } catch (IOException e) {
+            throw new UncheckedIOException(" Lecture impossible : " + source, e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Écrit par blocs de IO_BUFFER_BYTES : la taille du fichier (long) n'est jamais allouée d'un coup
+    private static void writeVectors(Path file, List<Embedding> embeddings) throws IOException {
+        int dimension = embeddings.isEmpty() ? 0 : embeddings.get(0).dimension();
+        int vectorBytes = dimension * Float.BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(IO_BUFFER_BYTES, vectorBytes)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(embeddings.size()).putInt(dimension);
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Embedding embedding : embeddings) {
+                if (embedding.dimension() != dimension) {
+                    throw new IllegalArgumentException("dimension " + embedding.dimension() + " au lieu de " + dimension);
+                }
+                if (buffer.remaining() < vectorBytes) {
+                    flush(channel, buffer);
+                }
+                for (float v : embedding.vector()) {
+                    buffer.putFloat(v);
+                }
+            }
+            flush(channel, buffer);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Lecture séquentielle par blocs, directement dans les float[] des embeddings (pas de mapping à recopier)
+    private static List<Embedding> readVectors(Path file, int expectedCount) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                throw new IllegalStateException("fichier tronqué " + file.getFileName());
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IllegalStateException("en-tête invalide " + file.getFileName());
+            }
+            int count = header.getInt();
+            int dimension = header.getInt();
+            if (count != expectedCount) {
+                throw new IllegalStateException("nombre de vecteurs incohérent " + count + " != " + expectedCount);
+            }
+            if (dimension < 0 || size != HEADER_BYTES + (long) count * dimension * Float.BYTES) {
+                throw new IllegalStateException("taille incohérente " + file.getFileName() + " : " + size + " octets pour "
+                        + count + " x " + dimension);
+            }
+
+            List<Embedding> embeddings = new ArrayList<>(count);
+            if (count == 0) {
+                return embeddings;
+            }
+            int vectorBytes = Math.toIntExact((long) dimension * Float.BYTES);
+            int perRead = Math.max(1, IO_BUFFER_BYTES / Math.max(1, vectorBytes));
+            ByteBuffer buffer = ByteBuffer.allocate(perRead * vectorBytes).order(ByteOrder.LITTLE_ENDIAN);
+            for (int read = 0; read < count; read += perRead) {
+                int n = Math.min(perRead, count - read);
+                buffer.clear().limit(n * vectorBytes);
+                readFully(channel, buffer);
+                FloatBuffer floats = buffer.asFloatBuffer();
+                for (int i = 0; i < n; i++) {
+                    float[] vector = new float[dimension];
+                    floats.get(vector);
+                    embeddings.add(Embedding.from(vector));
+                }
+            }
+            return embeddings;
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Remplit buffer jusqu'à sa limite puis le prépare à la lecture
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IllegalStateException("fin de fichier inattendue");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static void writeSegments(Path file, List<TextSegment> segments) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(segments.size());
+            for (TextSegment segment : segments) {
+                SegmentCodec.write(out, segment);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static List<TextSegment> readSegments(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalStateException("en-tête invalide " + file.getFileName());
+            }
+            int count = in.readInt();
+            if (count < 0) {
+                throw new IllegalStateException("nombre de segments négatif " + count);
+            }
+            List<TextSegment> segments = new ArrayList<>(Math.min(count, 4_096));
+            for (int i = 0; i < count; i++) {
+                segments.add(SegmentCodec.read(in));
+            }
+            return segments;
+        }
+    }
+}
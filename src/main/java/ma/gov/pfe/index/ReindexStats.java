@@ -0,0 +1,15 @@
+package ma.gov.pfe.index;
+
+import java.util.Locale;
+
+// Bilan d'une passe incrémentale : seuls "embedded" segments ont coûté un passage dans le modèle
+public record ReindexStats(int files, int embedded, int reused, int removed, long elapsedNanos) {
+
+    public static final ReindexStats NONE = new ReindexStats(0, 0, 0, 0, 0);
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "Réindexation : %d fichiers, %d segments encodés, %d réutilisés, %d supprimés en %d ms",
+                files, embedded, reused, removed, elapsedNanos / 1_000_000);
+    }
+}
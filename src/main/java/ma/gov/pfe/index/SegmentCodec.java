@@ -0,0 +1,100 @@
+package ma.gov.pfe.index;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+
+// Sérialisation binaire d'un TextSegment (texte + métadonnées typées), partagée par les index sur disque
+public final class SegmentCodec {
+
+    private static final byte TYPE_STRING = 0;
+    private static final byte TYPE_UUID = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_FLOAT = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final int MAX_STRING_BYTES = 64 * 1024 * 1024;
+
+    private SegmentCodec() {
+    }
+
+    public static void write(DataOutputStream out, TextSegment segment) throws IOException {
+        writeString(out, segment.text());
+        Map<String, Object> metadata = segment.metadata().toMap();
+        out.writeInt(metadata.size());
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    public static TextSegment read(DataInputStream in) throws IOException {
+        String text = readString(in);
+        Metadata metadata = new Metadata();
+        int entries = in.readInt();
+        for (int j = 0; j < entries; j++) {
+            readValue(in, readString(in), metadata);
+        }
+        return TextSegment.from(text, metadata);
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value instanceof UUID uuid) {
+            out.writeByte(TYPE_UUID);
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        } else if (value instanceof Integer i) {
+            out.writeByte(TYPE_INT);
+            out.writeInt(i);
+        } else if (value instanceof Long l) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong(l);
+        } else if (value instanceof Float f) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat(f);
+        } else if (value instanceof Double d) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(d);
+        } else {
+            out.writeByte(TYPE_STRING);
+            writeString(out, String.valueOf(value));
+        }
+    }
+
+    private static void readValue(DataInputStream in, String key, Metadata metadata) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_UUID -> metadata.put(key, new UUID(in.readLong(), in.readLong()));
+            case TYPE_INT -> metadata.put(key, in.readInt());
+            case TYPE_LONG -> metadata.put(key, in.readLong());
+            case TYPE_FLOAT -> metadata.put(key, in.readFloat());
+            case TYPE_DOUBLE -> metadata.put(key, in.readDouble());
+            case TYPE_STRING -> metadata.put(key, readString(in));
+            default -> throw new IllegalStateException("type de métadonnée inconnu " + type);
+        }
+    }
+
+    // writeUTF est limité à 64 Ko : on écrit longueur + octets UTF-8
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Longueur lue validée : un fichier corrompu donne une IOException, pas une allocation géante
+    public static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_STRING_BYTES) {
+            throw new IOException("longueur de chaîne invalide " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,18 @@
+package ma.gov.pfe.ingestion;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.nio.file.Path;
+import java.util.List;
+
+// Résultat de l'ingestion d'un document : segments et vecteurs dans le même ordre
+public record IngestedDocument(Path source, List<TextSegment> segments, List<Embedding> embeddings) {
+
+    public void addTo(EmbeddingStore<TextSegment> store) {
+        if (!segments.isEmpty()) {
+            store.addAll(embeddings, segments);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package ma.gov.pfe.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
+import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.gov.pfe.metrics.MeteredEmbeddingModel;
+import ma.gov.pfe.metrics.RagMetrics;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Ingestion partagée par tous les tests : parse -> split -> embed en étapes chaînées
+// sur un pool borné, embeddings par micro-lots, plusieurs documents en parallèle.
+public class IngestionPipeline {
+
+    private final EmbeddingModel embeddingModel;
+    private final int maxSegmentSize;
+    private final int maxOverlap;
+    private final int batchSize;
+    private final int threads;
+    private final int maxDocumentsInFlight;
+
+    public IngestionPipeline(EmbeddingModel embeddingModel, int maxSegmentSize, int maxOverlap,
+                             int batchSize, int threads, int maxDocumentsInFlight) {
+        if (batchSize < 1 || threads < 1 || maxDocumentsInFlight < 1) {
+            throw new IllegalArgumentException("batchSize, threads et maxDocumentsInFlight doivent être >= 1");
+        }
+        this.embeddingModel = embeddingModel;
+        this.maxSegmentSize = maxSegmentSize;
+        this.maxOverlap = maxOverlap;
+        this.batchSize = batchSize;
+        this.threads = threads;
+        this.maxDocumentsInFlight = maxDocumentsInFlight;
+    }
+
+    // recursive(500, 50) comme les tests, lots de 32, un thread par cœur
+    public static IngestionPipeline defaults(EmbeddingModel embeddingModel) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return new IngestionPipeline(embeddingModel, 500, 50, 32, cores, 2 * cores);
+    }
+
+    public EmbeddingModel embeddingModel() {
+        return embeddingModel;
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    // Parse + découpe d'un seul fichier, sans embeddings (indexation incrémentale)
+    public List<TextSegment> segments(Path source) {
+        return split(parse(source));
+    }
+
+    // Décrit tout ce qui influence les segments / vecteurs produits (sert de clé de cache)
+    public String settings() {
+        // Le décorateur de métriques ne change pas les vecteurs : c'est le modèle réel qui compte
+        EmbeddingModel model = embeddingModel instanceof MeteredEmbeddingModel metered ? metered.delegate() : embeddingModel;
+        return "recursive(" + maxSegmentSize + "," + maxOverlap + ")|"
+                + model.getClass().getName() + "|" + model.dimension();
+    }
+
+    // Parse, découpe et calcule les embeddings ; les résultats gardent l'ordre des sources
+    public List<IngestedDocument> process(List<Path> sources) {
+        if (sources.isEmpty()) {
+            return List.of();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // Limite le nombre de documents en cours pour ne pas charger des milliers de PDF d'un coup
+        Semaphore inFlight = new Semaphore(maxDocumentsInFlight);
+        try {
+            List<CompletableFuture<IngestedDocument>> futures = new ArrayList<>(sources.size());
+            for (Path source : sources) {
+                inFlight.acquireUninterruptibly();
+                CompletableFuture<IngestedDocument> future = CompletableFuture
+                        .supplyAsync(() -> parse(source), executor)
+                        .thenApplyAsync(this::split, executor)
+                        .thenCompose(segments -> embed(source, segments, executor));
+                future.whenComplete((doc, error) -> inFlight.release());
+                futures.add(future);
+            }
+
+            List<IngestedDocument> documents = new ArrayList<>(futures.size());
+            for (CompletableFuture<IngestedDocument> future : futures) {
+                documents.add(future.join());
+            }
+            return documents;
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Ingère les sources dans le store et mesure le débit
+    public IngestionStats ingest(List<Path> sources, EmbeddingStore<TextSegment> store) {
+        long start = System.nanoTime();
+        List<IngestedDocument> documents = process(sources);
+        int segments = 0;
+        for (IngestedDocument doc : documents) {
+            doc.addTo(store);
+            segments += doc.segments().size();
+        }
+        IngestionStats stats = new IngestionStats(documents.size(), segments, System.nanoTime() - start);
+        System.out.println(" " + stats);
+        return stats;
+    }
+
+    private Document parse(Path source) {
+        return RagMetrics.PARSE.time(() -> FileSystemDocumentLoader.loadDocument(source, new ApacheTikaDocumentParser()));
+    }
+
+    private List<TextSegment> split(Document doc) {
+        return RagMetrics.SPLIT.time(() -> DocumentSplitters.recursive(maxSegmentSize, maxOverlap).split(doc));
+    }
+
+    // Un micro-lot = une tâche : les lots de tous les documents se partagent les cœurs
+    private CompletableFuture<IngestedDocument> embed(Path source, List<TextSegment> segments, ExecutorService executor) {
+        if (segments.isEmpty()) {
+            return CompletableFuture.completedFuture(new IngestedDocument(source, segments, List.of()));
+        }
+        int batches = (segments.size() + batchSize - 1) / batchSize;
+        Embedding[] embeddings = new Embedding[segments.size()];
+        AtomicInteger done = new AtomicInteger();
+        CompletableFuture<IngestedDocument> result = new CompletableFuture<>();
+
+        for (int b = 0; b < batches; b++) {
+            int from = b * batchSize;
+            int to = Math.min(from + batchSize, segments.size());
+            CompletableFuture
+                    .runAsync(() -> {
+                        List<Embedding> batch = embeddingModel.embedAll(segments.subList(from, to)).content();
+                        for (int i = 0; i < batch.size(); i++) {
+                            embeddings[from + i] = batch.get(i);
+                        }
+                    }, executor)
+                    .whenComplete((ignored, error) -> {
+                        if (error != null) {
+                            result.completeExceptionally(error);
+                        } else if (done.incrementAndGet() == batches) {
+                            result.complete(new IngestedDocument(source, segments, List.of(embeddings)));
+                        }
+                    });
+        }
+        return result;
+    }
+}
@@ -0,0 +1,24 @@
+package ma.gov.pfe.ingestion;
+
+import java.util.Locale;
+
+public record IngestionStats(int documents, int segments, long elapsedNanos) {
+
+    public double segmentsPerSecond() {
+        return perSecond(segments);
+    }
+
+    public double documentsPerSecond() {
+        return perSecond(documents);
+    }
+
+    private double perSecond(int count) {
+        return elapsedNanos == 0 ? 0 : count * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "Ingestion : %d documents, %d segments en %d ms (%.1f segments/s, %.2f docs/s)",
+                documents, segments, elapsedNanos / 1_000_000, segmentsPerSecond(), documentsPerSecond());
+    }
+}
@@ -0,0 +1,206 @@
+package ma.gov.pfe.ingestion;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.gov.pfe.embedding.EmbeddingModelProvider;
+import ma.gov.pfe.metrics.RagMetrics;
+import ma.gov.pfe.store.EmbeddingStores;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Ingestion en flux pour les gros documents : Tika pousse le texte page par page (événements SAX),
+// le découpage recursive(500, 50) se fait sur une fenêtre glissante et les segments sont encodés
+// puis stockés par paquets. Mémoire bornée par la fenêtre + un paquet, quelle que soit la taille du PDF.
+public class StreamingIngestion {
+
+    // La fenêtre est découpée dès qu'elle dépasse WINDOW_SEGMENTS segments de texte
+    private static final int WINDOW_SEGMENTS = 8;
+
+    private final EmbeddingModel embeddingModel;
+    private final int maxSegmentSize;
+    private final int maxOverlap;
+    private final int chunkSize;
+
+    public StreamingIngestion(EmbeddingModel embeddingModel, int maxSegmentSize, int maxOverlap, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize doit être >= 1 : " + chunkSize);
+        }
+        this.embeddingModel = embeddingModel;
+        this.maxSegmentSize = maxSegmentSize;
+        this.maxOverlap = maxOverlap;
+        this.chunkSize = chunkSize;
+    }
+
+    // Mêmes réglages de découpe que IngestionPipeline.defaults, paquets de 64 segments
+    public static StreamingIngestion defaults(EmbeddingModel embeddingModel) {
+        return new StreamingIngestion(embeddingModel, 500, 50, 64);
+    }
+
+    public IngestionStats ingest(Path source, EmbeddingStore<TextSegment> store) {
+        long start = System.nanoTime();
+        Metadata metadata = new Metadata()
+                .put("file_name", source.getFileName().toString())
+                .put("absolute_directory_path", source.toAbsolutePath().getParent().toString());
+        Sink sink = new Sink(store, metadata);
+        PageHandler handler = new PageHandler(sink);
+
+        // Pas de mesure "parse" séparée ici : découpe et embeddings ont lieu pendant la lecture
+        try (TikaInputStream in = TikaInputStream.get(source)) {
+            new AutoDetectParser().parse(in, handler, new org.apache.tika.metadata.Metadata(), new ParseContext());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SAXException | TikaException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException("Lecture impossible : " + source.getFileName(), e);
+        }
+        sink.finish();
+
+        IngestionStats stats = new IngestionStats(1, sink.segments, System.nanoTime() - start);
+        System.out.println(" " + stats + " — " + handler.pages + " pages, fenêtre max " + sink.maxWindow + " caractères");
+        return stats;
+    }
+
+    // Reçoit le texte au fil de l'eau, découpe la fenêtre et envoie les segments complets par paquets
+    private final class Sink {
+
+        private final EmbeddingStore<TextSegment> store;
+        private final Metadata metadata;
+        private final StringBuilder window = new StringBuilder();
+        private final List<TextSegment> chunk = new ArrayList<>(chunkSize);
+        private int segments;
+        private int maxWindow;
+
+        Sink(EmbeddingStore<TextSegment> store, Metadata metadata) {
+            this.store = store;
+            this.metadata = metadata;
+        }
+
+        void append(char[] chars, int start, int length) {
+            window.append(chars, start, length);
+            maxWindow = Math.max(maxWindow, window.length());
+            if (window.length() >= WINDOW_SEGMENTS * maxSegmentSize) {
+                split(false);
+            }
+        }
+
+        void append(String text) {
+            append(text.toCharArray(), 0, text.length());
+        }
+
+        void finish() {
+            split(true);
+            flush();
+        }
+
+        // Le dernier segment de la fenêtre peut être coupé au milieu d'une phrase : il reste dans la
+        // fenêtre et sera redécoupé avec la suite. Il commence déjà par le recouvrement du précédent.
+        // Le splitter rend des segments sans espaces de bord : ceux de fin de fenêtre sont remis, sinon
+        // un mot coupé à la frontière serait collé au suivant.
+        private void split(boolean last) {
+            String text = window.toString();
+            if (text.isBlank()) {
+                // Espaces seuls (page vide, fin de fichier) : Document.from refuse un texte vide
+                window.setLength(0);
+                return;
+            }
+            long splitStart = System.nanoTime();
+            List<TextSegment> parts = DocumentSplitters.recursive(maxSegmentSize, maxOverlap)
+                    .split(Document.from(text));
+            RagMetrics.SPLIT.recordSince(splitStart);
+            int complete = last ? parts.size() : parts.size() - 1;
+            for (int i = 0; i < complete; i++) {
+                emit(parts.get(i).text());
+            }
+            window.setLength(0);
+            if (!last && !parts.isEmpty()) {
+                window.append(parts.get(parts.size() - 1).text()).append(text, text.stripTrailing().length(), text.length());
+            }
+        }
+
+        private void emit(String text) {
+            Metadata segmentMetadata = metadata.copy().put("index", String.valueOf(segments++));
+            chunk.add(TextSegment.from(text, segmentMetadata));
+            if (chunk.size() == chunkSize) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            List<Embedding> embeddings = embeddingModel.embedAll(chunk).content();
+            store.addAll(embeddings, new ArrayList<>(chunk));
+            chunk.clear();
+        }
+    }
+
+    // Handler SAX : le texte des paragraphes part directement dans le Sink, rien n'est accumulé ici.
+    // Tika entoure chaque page PDF d'un <div class="page"> : saut de paragraphe entre deux pages.
+    private static final class PageHandler extends DefaultHandler {
+
+        private final Sink sink;
+        private int pages;
+
+        PageHandler(Sink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if ("div".equals(localName) && "page".equals(attributes.getValue("class"))) {
+                pages++;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "p", "li", "h1", "h2", "h3", "h4", "h5", "h6" -> sink.append("\n");
+                case "div", "table" -> sink.append("\n\n");
+                default -> {
+                }
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            sink.append(ch, start, length);
+        }
+
+        @Override
+        public void ignorableWhitespace(char[] ch, int start, int length) {
+            sink.append(ch, start, length);
+        }
+    }
+
+    // Démo : java ... StreamingIngestion fichier.pdf
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println(" Usage : StreamingIngestion <fichier>");
+            return;
+        }
+        EmbeddingStore<TextSegment> store = EmbeddingStores.create();
+        Runtime runtime = Runtime.getRuntime();
+        StreamingIngestion.defaults(EmbeddingModelProvider.get()).ingest(Path.of(args[0]), store);
+        System.out.println(" Tas utilisé après ingestion : " + (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024) + " Mo");
+    }
+}
@@ -0,0 +1,26 @@
+package ma.gov.pfe.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Compteur monotone ; LongAdder : pas de contention entre threads qui incrémentent en même temps
+public final class Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    Counter() {
+    }
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        if (amount > 0) {
+            value.add(amount);
+        }
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,34 @@
+package ma.gov.pfe.metrics;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+import java.util.List;
+
+// Mesure chaque appel embedAll (étape "embed") et compte les segments encodés
+public class MeteredEmbeddingModel implements EmbeddingModel {
+
+    private final EmbeddingModel delegate;
+
+    public MeteredEmbeddingModel(EmbeddingModel delegate) {
+        this.delegate = delegate;
+    }
+
+    public EmbeddingModel delegate() {
+        return delegate;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+        Response<List<Embedding>> response = RagMetrics.EMBED.time(() -> delegate.embedAll(segments));
+        RagMetrics.EMBEDDED_SEGMENTS.add(segments.size());
+        return response;
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+}
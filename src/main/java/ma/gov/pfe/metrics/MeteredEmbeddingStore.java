@@ -0,0 +1,104 @@
+package ma.gov.pfe.metrics;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Mesure les recherches (étape "store_search") et compte les segments renvoyés et les écritures
+// (ajouts / suppressions) ; version() compte les écritures de ce store seul (cf. EmbeddingStores.version).
+// Le reste est délégué tel quel.
+public class MeteredEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private final EmbeddingStore<TextSegment> delegate;
+    private final AtomicLong version = new AtomicLong();
+
+    public MeteredEmbeddingStore(EmbeddingStore<TextSegment> delegate) {
+        this.delegate = delegate;
+    }
+
+    public EmbeddingStore<TextSegment> delegate() {
+        return delegate;
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        EmbeddingSearchResult<TextSegment> result = RagMetrics.STORE_SEARCH.time(() -> delegate.search(request));
+        RagMetrics.RETRIEVED_SEGMENTS.add(result.matches().size());
+        return result;
+    }
+
+    public long version() {
+        return version.get();
+    }
+
+    // Compté après l'écriture : une version lue ensuite correspond toujours à l'index déjà modifié
+    private void written() {
+        version.incrementAndGet();
+        RagMetrics.STORE_WRITES.increment();
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = delegate.add(embedding);
+        written();
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        delegate.add(id, embedding);
+        written();
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = delegate.add(embedding, segment);
+        written();
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = delegate.addAll(embeddings);
+        written();
+        return ids;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+        List<String> ids = delegate.addAll(embeddings, embedded);
+        written();
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+        delegate.addAll(ids, embeddings, embedded);
+        written();
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        delegate.removeAll(ids);
+        written();
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        delegate.removeAll(filter);
+        written();
+    }
+
+    @Override
+    public void removeAll() {
+        delegate.removeAll();
+        written();
+    }
+}
@@ -0,0 +1,22 @@
+package ma.gov.pfe.metrics;
+
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+
+import java.util.Collection;
+
+// Mesure la décision de routage (étape "routing"), quel que soit le routeur (LLM, exemples, spéculatif)
+public class MeteredQueryRouter implements QueryRouter {
+
+    private final QueryRouter delegate;
+
+    public MeteredQueryRouter(QueryRouter delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        return RagMetrics.ROUTING.time(() -> delegate.route(query));
+    }
+}
@@ -0,0 +1,21 @@
+package ma.gov.pfe.metrics;
+
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+
+// Mesure les appels au moteur de recherche web (étape "web_search") ; à placer sous le cache pour ne
+// mesurer que les vrais appels réseau
+public class MeteredWebSearchEngine implements WebSearchEngine {
+
+    private final WebSearchEngine delegate;
+
+    public MeteredWebSearchEngine(WebSearchEngine delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public WebSearchResults search(WebSearchRequest request) {
+        return RagMetrics.WEB_SEARCH.time(() -> delegate.search(request));
+    }
+}
@@ -0,0 +1,39 @@
+package ma.gov.pfe.metrics;
+
+import dev.langchain4j.model.chat.listener.ChatModelErrorContext;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.listener.ChatModelRequestContext;
+import dev.langchain4j.model.chat.listener.ChatModelResponseContext;
+import dev.langchain4j.model.output.TokenUsage;
+
+// Listener du modèle de chat : durée de l'appel (étape "llm_call") et tokens consommés.
+// Remplace logRequestsAndResponses(true) en production : rien n'est sérialisé ni écrit.
+public class MetricsChatModelListener implements ChatModelListener {
+
+    private static final String START = "rag.metrics.start";
+
+    @Override
+    public void onRequest(ChatModelRequestContext context) {
+        context.attributes().put(START, System.nanoTime());
+    }
+
+    @Override
+    public void onResponse(ChatModelResponseContext context) {
+        if (context.attributes().get(START) instanceof Long start) {
+            RagMetrics.LLM_CALL.recordSince(start);
+        }
+        TokenUsage usage = context.chatResponse().tokenUsage();
+        if (usage != null) {
+            RagMetrics.INPUT_TOKENS.add(usage.inputTokenCount() == null ? 0 : usage.inputTokenCount());
+            RagMetrics.OUTPUT_TOKENS.add(usage.outputTokenCount() == null ? 0 : usage.outputTokenCount());
+        }
+    }
+
+    @Override
+    public void onError(ChatModelErrorContext context) {
+        if (context.attributes().get(START) instanceof Long start) {
+            RagMetrics.LLM_CALL.recordSince(start);
+        }
+        RagMetrics.LLM_ERRORS.increment();
+    }
+}
@@ -0,0 +1,77 @@
+package ma.gov.pfe.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Registre de métriques exporté au format texte Prometheus (version 0.0.4).
+// Une famille = un nom + un type ; chaque série est identifiée par une étiquette optionnelle (clé=valeur).
+public final class MetricsRegistry {
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    public synchronized Counter counter(String name, String help, String label, String value) {
+        Family family = family(name, help, "counter");
+        return (Counter) family.series().computeIfAbsent(labels(label, value), l -> new Counter());
+    }
+
+    public synchronized Histogram histogram(String name, String help, String label, String value) {
+        Family family = family(name, help, "histogram");
+        return (Histogram) family.series().computeIfAbsent(labels(label, value), l -> new Histogram());
+    }
+
+    public synchronized String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help()).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type()).append('\n');
+            for (Map.Entry<String, Object> series : family.series().entrySet()) {
+                String labels = series.getKey();
+                if (series.getValue() instanceof Counter counter) {
+                    out.append(name).append(braces(labels)).append(' ').append(counter.get()).append('\n');
+                } else if (series.getValue() instanceof Histogram histogram) {
+                    writeHistogram(out, name, labels, histogram);
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, Histogram histogram) {
+        long[] cumulative = histogram.cumulativeCounts();
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        for (int i = 0; i < cumulative.length; i++) {
+            String bound = i < Histogram.BUCKETS_SECONDS.length ? Double.toString(Histogram.BUCKETS_SECONDS[i]) : "+Inf";
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append(bound).append("\"} ")
+                    .append(cumulative[i]).append('\n');
+        }
+        out.append(name).append("_sum").append(braces(labels)).append(' ')
+                .append(String.format(Locale.ROOT, "%.6f", histogram.sumSeconds())).append('\n');
+        out.append(name).append("_count").append(braces(labels)).append(' ')
+                .append(cumulative[cumulative.length - 1]).append('\n');
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(help, type, new LinkedHashMap<>()));
+        if (!family.type().equals(type)) {
+            throw new IllegalArgumentException("Métrique " + name + " déjà déclarée comme " + family.type());
+        }
+        return family;
+    }
+
+    private static String labels(String label, String value) {
+        if (label == null) {
+            return "";
+        }
+        return label + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String braces(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private record Family(String help, String type, Map<String, Object> series) {
+    }
+}
@@ -0,0 +1,53 @@
+package ma.gov.pfe.metrics;
+
+// Métriques du pipeline RAG, partagées par toute l'application (exportées par RagServer sur /metrics)
+public final class RagMetrics {
+
+    public static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+    public static final Histogram PARSE = stage("parse");
+    public static final Histogram SPLIT = stage("split");
+    public static final Histogram EMBED = stage("embed");
+    public static final Histogram STORE_SEARCH = stage("store_search");
+    public static final Histogram ROUTING = stage("routing");
+    public static final Histogram WEB_SEARCH = stage("web_search");
+    public static final Histogram LLM_CALL = stage("llm_call");
+    // Réponses en streaming : délai entre l'envoi de la question et le premier token reçu
+    public static final Histogram TIME_TO_FIRST_TOKEN = REGISTRY.histogram("rag_time_to_first_token_seconds",
+            "Délai avant le premier token d'une réponse en streaming", null, null);
+
+    public static final Counter LLM_ERRORS = REGISTRY.counter("rag_llm_errors_total",
+            "Appels au modèle de chat en erreur", null, null);
+    public static final Counter INPUT_TOKENS = tokens("input");
+    public static final Counter OUTPUT_TOKENS = tokens("output");
+    public static final Counter CONTEXT_TOKENS_SAVED = tokens("context_saved");
+    public static final Counter EMBEDDED_SEGMENTS = REGISTRY.counter("rag_embedded_segments_total",
+            "Segments encodés par le modèle d'embeddings", null, null);
+    public static final Counter RETRIEVED_SEGMENTS = REGISTRY.counter("rag_retrieved_segments_total",
+            "Segments renvoyés par les recherches dans les stores", null, null);
+    public static final Counter STORE_WRITES = REGISTRY.counter("rag_store_writes_total",
+            "Ajouts et suppressions dans les stores", null, null);
+    public static final Counter SEMANTIC_CACHE_HITS = cache("rag_cache_hits_total", "Réponses servies par un cache", "semantic");
+    public static final Counter SEMANTIC_CACHE_MISSES = cache("rag_cache_misses_total", "Requêtes non trouvées dans un cache", "semantic");
+    public static final Counter WEB_CACHE_HITS = cache("rag_cache_hits_total", "Réponses servies par un cache", "web");
+    public static final Counter WEB_CACHE_MISSES = cache("rag_cache_misses_total", "Requêtes non trouvées dans un cache", "web");
+
+    private RagMetrics() {
+    }
+
+    public static String scrape() {
+        return REGISTRY.scrape();
+    }
+
+    private static Histogram stage(String stage) {
+        return REGISTRY.histogram("rag_stage_duration_seconds", "Durée de chaque étape du pipeline RAG", "stage", stage);
+    }
+
+    private static Counter tokens(String kind) {
+        return REGISTRY.counter("rag_tokens_total", "Tokens envoyés / reçus / économisés", "kind", kind);
+    }
+
+    private static Counter cache(String name, String help, String cache) {
+        return REGISTRY.counter(name, help, "cache", cache);
+    }
+}
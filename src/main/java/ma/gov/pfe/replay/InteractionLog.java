@@ -0,0 +1,194 @@
+package ma.gov.pfe.replay;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+import ma.gov.pfe.cache.CachingWebSearchEngine;
+import ma.gov.pfe.index.SegmentCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Journal des interactions réelles (Gemini, Tavily) pour les rejouer hors ligne.
+// Clé chat = dernier message utilisateur normalisé (question + contexte RAG injecté, ou prompt du routeur) ;
+// clé web = termes de recherche normalisés + maxResults, comme CachingWebSearchEngine.
+// Plusieurs réponses pour une même clé sont rejouées à tour de rôle.
+public class InteractionLog {
+
+    private static final int MAGIC = 0x52504C59; // "RPLY"
+    private static final int VERSION = 1;
+
+    private final Map<String, Entries<ChatRecord>> chats = new ConcurrentHashMap<>();
+    private final Map<String, Entries<SearchRecord>> searches = new ConcurrentHashMap<>();
+
+    // inputTokens / outputTokens : -1 si le fournisseur ne les a pas renvoyés
+    public record ChatRecord(String text, int inputTokens, int outputTokens, long latencyNanos) {
+    }
+
+    public record SearchRecord(WebSearchResults results, long latencyNanos) {
+    }
+
+    // Journal vide si le fichier n'existe pas encore
+    public static InteractionLog load(Path file) throws IOException {
+        InteractionLog log = new InteractionLog();
+        if (!Files.exists(file)) {
+            return log;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalStateException("en-tête invalide " + file.getFileName());
+            }
+            int chatKeys = in.readInt();
+            for (int i = 0; i < chatKeys; i++) {
+                String key = SegmentCodec.readString(in);
+                int count = in.readInt();
+                for (int j = 0; j < count; j++) {
+                    log.addChat(key, new ChatRecord(SegmentCodec.readString(in), in.readInt(), in.readInt(), in.readLong()));
+                }
+            }
+            int searchKeys = in.readInt();
+            for (int i = 0; i < searchKeys; i++) {
+                String key = SegmentCodec.readString(in);
+                int count = in.readInt();
+                for (int j = 0; j < count; j++) {
+                    long latency = in.readLong();
+                    log.addSearch(key, new SearchRecord(CachingWebSearchEngine.readResults(in), latency));
+                }
+            }
+        }
+        return log;
+    }
+
+    public void save(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(chats.size());
+            for (Map.Entry<String, Entries<ChatRecord>> entry : chats.entrySet()) {
+                SegmentCodec.writeString(out, entry.getKey());
+                List<ChatRecord> records = new ArrayList<>(entry.getValue().items);
+                out.writeInt(records.size());
+                for (ChatRecord record : records) {
+                    SegmentCodec.writeString(out, record.text());
+                    out.writeInt(record.inputTokens());
+                    out.writeInt(record.outputTokens());
+                    out.writeLong(record.latencyNanos());
+                }
+            }
+            out.writeInt(searches.size());
+            for (Map.Entry<String, Entries<SearchRecord>> entry : searches.entrySet()) {
+                SegmentCodec.writeString(out, entry.getKey());
+                List<SearchRecord> records = new ArrayList<>(entry.getValue().items);
+                out.writeInt(records.size());
+                for (SearchRecord record : records) {
+                    out.writeLong(record.latencyNanos());
+                    CachingWebSearchEngine.writeResults(out, record.results());
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void addChat(String key, ChatRecord record) {
+        chats.computeIfAbsent(key, k -> new Entries<>()).items.add(record);
+    }
+
+    public void addSearch(String key, SearchRecord record) {
+        searches.computeIfAbsent(key, k -> new Entries<>()).items.add(record);
+    }
+
+    // null si la clé n'a jamais été enregistrée
+    public ChatRecord nextChat(String key) {
+        Entries<ChatRecord> entries = chats.get(key);
+        return entries == null ? null : entries.next();
+    }
+
+    public SearchRecord nextSearch(String key) {
+        Entries<SearchRecord> entries = searches.get(key);
+        return entries == null ? null : entries.next();
+    }
+
+    // Latence médiane des appels chat enregistrés (utilisée pour les clés absentes du journal)
+    public long medianChatLatencyNanos() {
+        List<Long> latencies = new ArrayList<>();
+        for (Entries<ChatRecord> entries : chats.values()) {
+            for (ChatRecord record : entries.items) {
+                latencies.add(record.latencyNanos());
+            }
+        }
+        return median(latencies);
+    }
+
+    // Idem pour les recherches web
+    public long medianSearchLatencyNanos() {
+        List<Long> latencies = new ArrayList<>();
+        for (Entries<SearchRecord> entries : searches.values()) {
+            for (SearchRecord record : entries.items) {
+                latencies.add(record.latencyNanos());
+            }
+        }
+        return median(latencies);
+    }
+
+    private static long median(List<Long> latencies) {
+        if (latencies.isEmpty()) {
+            return 0;
+        }
+        latencies.sort(null);
+        return latencies.get(latencies.size() / 2);
+    }
+
+    public static String chatKey(List<ChatMessage> messages) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i) instanceof UserMessage userMessage && userMessage.hasSingleText()) {
+                return CachingWebSearchEngine.normalize(userMessage.singleText());
+            }
+        }
+        return "";
+    }
+
+    public static String searchKey(WebSearchRequest request) {
+        return CachingWebSearchEngine.normalize(request.searchTerms()) + "|" + request.maxResults();
+    }
+
+    public String stats() {
+        int chatCount = 0;
+        for (Entries<ChatRecord> entries : chats.values()) {
+            chatCount += entries.items.size();
+        }
+        int searchCount = 0;
+        for (Entries<SearchRecord> entries : searches.values()) {
+            searchCount += entries.items.size();
+        }
+        return String.format(Locale.ROOT, "Journal : %d réponses chat (%d clés), %d recherches web (%d clés)",
+                chatCount, chats.size(), searchCount, searches.size());
+    }
+
+    private static final class Entries<T> {
+
+        private final List<T> items = new CopyOnWriteArrayList<>();
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        // null tant que la première réponse de la clé n'est pas encore ajoutée
+        T next() {
+            int size = items.size();
+            return size == 0 ? null : items.get(Math.floorMod(cursor.getAndIncrement(), size));
+        }
+    }
+}
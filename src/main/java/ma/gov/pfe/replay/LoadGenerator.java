@@ -0,0 +1,276 @@
+package ma.gov.pfe.replay;
+
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.tavily.TavilyWebSearchEngine;
+import ma.gov.pfe.assistant.Assistant;
+import ma.gov.pfe.cache.CachingWebSearchEngine;
+import ma.gov.pfe.cache.SemanticCache;
+import ma.gov.pfe.embedding.EmbeddingModelProvider;
+import ma.gov.pfe.retrieval.StubWebSearchEngine;
+import ma.gov.pfe.retrieval.TokenBudgetContentAggregator;
+import ma.gov.pfe.server.StubChatModel;
+import ma.gov.pfe.test1_naif.RagNaif;
+import ma.gov.pfe.test3_routage.TestRoutage;
+import ma.gov.pfe.test4_pas_de_rag.TestSansRag;
+import ma.gov.pfe.test5_websearch.TestWebSearch;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Générateur de charge hors ligne pour les assistants (naif, routage, sansrag, web), sans clé avec -Drag.replay :
+//   closed:N  N clients simulés (un thread virtuel + une conversation chacun), question suivante dès la réponse
+//   open:R    R requêtes/s à intervalles fixes quel que soit le temps de réponse ; latence mesurée depuis
+//             l'instant d'envoi prévu (pas d'omission coordonnée) ; au-delà de 1024 requêtes en cours, les
+//             arrivées attendent une place et cette attente compte dans leur latence
+// Usage : LoadGenerator [assistant=naif] [charge=closed:16] [duréeS=30] [questions.txt]
+// Sans -Drag.replay ni GEMINI_KEY : modèle et recherche web simulés (latence fixe).
+// La recherche web n'est pas mise en cache (sinon, après l'échauffement, on ne mesurerait que le cache) ;
+// -Drag.load.webCache=true ajoute CachingWebSearchEngine pour mesurer le déploiement avec cache ; de même
+// -Drag.load.semanticCache=true place un SemanticCache partagé par toutes les conversations simulées.
+public class LoadGenerator {
+
+    private static final int MAX_IN_FLIGHT = 1_024;
+
+    private static final List<String> QUESTIONS = List.of(
+            "Qu'est-ce que le RAG ?",
+            "Quels sont les avantages du retrieval augmented generation ?",
+            "Comment fonctionnent les embeddings et la recherche vectorielle ?",
+            "Quel est le rôle du retriever dans un assistant IA ?",
+            "Comment utiliser AiServices avec un ChatMemory ?",
+            "Comment ajouter la dépendance langchain4j dans Maven ?",
+            "Qu'est-ce qu'un QueryRouter ?",
+            "Peux-tu résumer ta réponse précédente ?",
+            "Quelle est la capitale du Maroc ?",
+            "Quelles sont les dernières nouveautés de LangChain4j ?");
+
+    public static void main(String[] args) throws Exception {
+        String name = args.length > 0 ? args[0] : "naif";
+        String load = args.length > 1 ? args[1] : "closed:16";
+        Duration duration = Duration.ofSeconds(args.length > 2 ? Long.parseLong(args[2]) : 30);
+        List<String> questions = args.length > 3 ? readQuestions(Path.of(args[3])) : QUESTIONS;
+
+        int colon = load.indexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Charge inconnue : " + load + " (closed:N ou open:R)");
+        }
+        String mode = load.substring(0, colon);
+        double value = Double.parseDouble(load.substring(colon + 1));
+        if (value <= 0) {
+            throw new IllegalArgumentException("closed:N / open:R avec N, R > 0 : " + load);
+        }
+
+        ChatModel model = chatModel();
+        WebSearchEngine webEngine = webSearchEngine();
+        EmbeddingModel embeddingModel = EmbeddingModelProvider.get();
+        WebSearchEngine searched = Boolean.getBoolean("rag.load.webCache")
+                ? new CachingWebSearchEngine(webEngine, Duration.ofMinutes(10), 10_000)
+                : webEngine;
+        SemanticCache cache = Boolean.getBoolean("rag.load.semanticCache") ? new SemanticCache(embeddingModel) : null;
+        Supplier<Assistant> sessions = sessions(name, model, embeddingModel, searched, cache);
+
+        // Échauffement : chaque question une fois, hors mesure
+        Assistant warmup = sessions.get();
+        for (String question : questions) {
+            warmup.chat(question);
+        }
+
+        Recorder recorder = new Recorder();
+        long start = System.nanoTime();
+        switch (mode) {
+            case "closed" -> closedLoop(sessions, questions, Math.max(1, (int) value), start + duration.toNanos(), recorder);
+            case "open" -> openLoop(sessions, questions, value, start, start + duration.toNanos(), recorder);
+            default -> throw new IllegalArgumentException("Charge inconnue : " + load + " (closed:N ou open:R)");
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf(Locale.ROOT, " Assistant %s, charge %s, %d s, %d questions, cache web %s, cache sémantique %s%n",
+                name, load, duration.toSeconds(), questions.size(), searched == webEngine ? "non" : "oui",
+                cache == null ? "non" : "oui");
+        System.out.println(" " + recorder.report(elapsed));
+        if (cache != null) {
+            System.out.println(" " + cache.stats());
+        }
+        if (model instanceof ReplayChatModel replay) {
+            System.out.println(" " + replay.stats());
+        }
+        if (webEngine instanceof ReplayWebSearchEngine replay) {
+            System.out.println(" " + replay.stats());
+        }
+    }
+
+    // Boucle fermée : le débit s'adapte au temps de réponse (N requêtes au plus en cours)
+    private static void closedLoop(Supplier<Assistant> sessions, List<String> questions, int clients,
+                                   long end, Recorder recorder) {
+        AtomicInteger next = new AtomicInteger();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                executor.submit(() -> {
+                    Assistant assistant = sessions.get();
+                    while (System.nanoTime() < end) {
+                        String question = questions.get(Math.floorMod(next.getAndIncrement(), questions.size()));
+                        long sent = System.nanoTime();
+                        try {
+                            assistant.chat(question);
+                            recorder.success(System.nanoTime() - sent);
+                        } catch (RuntimeException e) {
+                            recorder.error(e);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    // Boucle ouverte : arrivées à taux fixe ; les conversations libres sont réutilisées, une nouvelle est
+    // ouverte quand toutes sont occupées. Une arrivée sans place libre n'est pas abandonnée (elle sortirait
+    // des centiles, qui paraîtraient meilleurs sous saturation) : son thread virtuel attend une place.
+    private static void openLoop(Supplier<Assistant> sessions, List<String> questions, double rate,
+                                 long start, long end, Recorder recorder) {
+        Queue<Assistant> idle = new ConcurrentLinkedQueue<>();
+        Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; ; i++) {
+                long intended = start + (long) (i * 1e9 / rate);
+                if (intended >= end) {
+                    break;
+                }
+                long wait;
+                while ((wait = intended - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                String question = questions.get((int) (i % questions.size()));
+                executor.submit(() -> {
+                    if (!inFlight.tryAcquire()) {
+                        recorder.queued();
+                        inFlight.acquireUninterruptibly();
+                    }
+                    Assistant assistant = idle.poll();
+                    if (assistant == null) {
+                        assistant = sessions.get();
+                    }
+                    try {
+                        assistant.chat(question);
+                        recorder.success(System.nanoTime() - intended);
+                    } catch (RuntimeException e) {
+                        recorder.error(e);
+                    } finally {
+                        idle.offer(assistant);
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+    }
+
+    // Une conversation par appel, avec sa propre mémoire de 10 messages (cache : partagé, null = sans cache)
+    private static Supplier<Assistant> sessions(String name, ChatModel model, EmbeddingModel embeddingModel,
+                                                WebSearchEngine webEngine, SemanticCache cache) throws Exception {
+        Function<ChatMemory, Assistant> conversations = switch (name.toLowerCase(Locale.ROOT)) {
+            case "naif" -> RagNaif.sessions(model, null, embeddingModel, cache);
+            case "routage" -> TestRoutage.sessions(model, null, embeddingModel, TokenBudgetContentAggregator.create(), false, cache);
+            case "sansrag" -> TestSansRag.sessions(model, null, embeddingModel, cache);
+            case "web" -> TestWebSearch.sessions(model, null, embeddingModel, webEngine, TokenBudgetContentAggregator.create(), cache);
+            default -> throw new IllegalArgumentException("Assistant inconnu : " + name + " (naif, routage, sansrag, web)");
+        };
+        return () -> conversations.apply(MessageWindowChatMemory.withMaxMessages(10));
+    }
+
+    private static ChatModel chatModel() {
+        String apiKey = System.getenv("GEMINI_KEY");
+        if (apiKey == null && !ReplayModels.replaying()) {
+            System.out.println(" GEMINI_KEY absente et pas de -Drag.replay : modèle simulé (200 ms)");
+            return new StubChatModel(Duration.ofMillis(200));
+        }
+        return ReplayModels.chatModel(() -> GoogleAiGeminiChatModel.builder()
+                .apiKey(apiKey)
+                .modelName("gemini-2.5-flash")
+                .temperature(0.3)
+                .build());
+    }
+
+    private static WebSearchEngine webSearchEngine() {
+        String tavilyKey = System.getenv("TAVILY_KEY");
+        if (tavilyKey == null && !ReplayModels.replaying()) {
+            return new StubWebSearchEngine(Duration.ofMillis(300));
+        }
+        return ReplayModels.webSearchEngine(() -> TavilyWebSearchEngine.builder().apiKey(tavilyKey).build());
+    }
+
+    // Une question par ligne ; lignes vides et commentaires (#) ignorés
+    private static List<String> readQuestions(Path file) throws Exception {
+        List<String> questions = Files.readAllLines(file).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .toList();
+        if (questions.isEmpty()) {
+            throw new IllegalArgumentException("Aucune question dans " + file);
+        }
+        return questions;
+    }
+
+    // Latences de toutes les requêtes réussies (centiles exacts), erreurs et arrivées mises en attente
+    private static final class Recorder {
+
+        private long[] latencies = new long[1_024];
+        private int count;
+        private int errors;
+        private int queued;
+        private String firstError;
+
+        synchronized void success(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+
+        synchronized void error(RuntimeException e) {
+            errors++;
+            if (firstError == null) {
+                firstError = e.getClass().getSimpleName() + " : " + e.getMessage();
+            }
+        }
+
+        synchronized void queued() {
+            queued++;
+        }
+
+        synchronized String report(long elapsedNanos) {
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            double mean = count == 0 ? 0 : Arrays.stream(sorted).average().orElse(0) / 1e6;
+            String text = String.format(Locale.ROOT,
+                    "%d requêtes (%d erreurs, %d mises en attente), débit %.1f req/s%n"
+                            + " Latence (ms) : moy %.1f | p50 %.1f | p99 %.1f | p99.9 %.1f | max %.1f",
+                    count, errors, queued, count / (elapsedNanos / 1e9),
+                    mean, percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                    count == 0 ? 0 : sorted[count - 1] / 1e6);
+            return firstError == null ? text : text + "\n Première erreur : " + firstError;
+        }
+
+        private static double percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * quantile) - 1)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package ma.gov.pfe.replay;
+
+import dev.langchain4j.model.chat.Capability;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.util.Set;
+
+// Décorateur d'un vrai modèle (Gemini) : chaque réponse est ajoutée au journal avec sa latence
+// et ses tokens, pour être rejouée ensuite par ReplayChatModel. Les listeners restent sur le délégué.
+public class RecordingChatModel implements ChatModel {
+
+    private final ChatModel delegate;
+    private final InteractionLog log;
+
+    public RecordingChatModel(ChatModel delegate, InteractionLog log) {
+        this.delegate = delegate;
+        this.log = log;
+    }
+
+    @Override
+    public ChatResponse doChat(ChatRequest chatRequest) {
+        long start = System.nanoTime();
+        ChatResponse response = delegate.chat(chatRequest);
+        long latency = System.nanoTime() - start;
+
+        TokenUsage usage = response.tokenUsage();
+        String text = response.aiMessage().text();
+        log.addChat(InteractionLog.chatKey(chatRequest.messages()), new InteractionLog.ChatRecord(
+                text == null ? "" : text,
+                usage == null || usage.inputTokenCount() == null ? -1 : usage.inputTokenCount(),
+                usage == null || usage.outputTokenCount() == null ? -1 : usage.outputTokenCount(),
+                latency));
+        return response;
+    }
+
+    @Override
+    public Set<Capability> supportedCapabilities() {
+        return delegate.supportedCapabilities();
+    }
+}
@@ -0,0 +1,26 @@
+package ma.gov.pfe.replay;
+
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+
+// Décorateur du vrai moteur (Tavily) : résultats et latence de chaque recherche ajoutés au journal.
+// À placer sous CachingWebSearchEngine pour n'enregistrer que les vrais appels réseau.
+public class RecordingWebSearchEngine implements WebSearchEngine {
+
+    private final WebSearchEngine delegate;
+    private final InteractionLog log;
+
+    public RecordingWebSearchEngine(WebSearchEngine delegate, InteractionLog log) {
+        this.delegate = delegate;
+        this.log = log;
+    }
+
+    @Override
+    public WebSearchResults search(WebSearchRequest request) {
+        long start = System.nanoTime();
+        WebSearchResults results = delegate.search(request);
+        log.addSearch(InteractionLog.searchKey(request), new InteractionLog.SearchRecord(results, System.nanoTime() - start));
+        return results;
+    }
+}
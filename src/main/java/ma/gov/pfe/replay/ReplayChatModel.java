@@ -0,0 +1,71 @@
+package ma.gov.pfe.replay;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.output.FinishReason;
+import dev.langchain4j.model.output.TokenUsage;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Remplace Gemini hors ligne : renvoie la réponse enregistrée pour le même dernier message utilisateur,
+// après une latence synthétique. Question absente du journal : réponse simulée à la latence médiane.
+public class ReplayChatModel implements ChatModel {
+
+    private final InteractionLog log;
+    private final SyntheticLatency latency;
+    private final List<ChatModelListener> listeners;
+    private final long missLatencyNanos;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ReplayChatModel(InteractionLog log, SyntheticLatency latency) {
+        this(log, latency, List.of());
+    }
+
+    public ReplayChatModel(InteractionLog log, SyntheticLatency latency, List<ChatModelListener> listeners) {
+        this.log = log;
+        this.latency = latency;
+        this.listeners = List.copyOf(listeners);
+        this.missLatencyNanos = log.medianChatLatencyNanos();
+    }
+
+    @Override
+    public List<ChatModelListener> listeners() {
+        return listeners;
+    }
+
+    @Override
+    public ChatResponse doChat(ChatRequest chatRequest) {
+        String key = InteractionLog.chatKey(chatRequest.messages());
+        InteractionLog.ChatRecord record = log.nextChat(key);
+        if (record == null) {
+            misses.incrementAndGet();
+            SyntheticLatency.sleep(latency.nanos(missLatencyNanos));
+            int length = Math.min(key.length(), 80);
+            return ChatResponse.builder()
+                    .aiMessage(AiMessage.from("Réponse non enregistrée : " + key.substring(0, length)))
+                    .finishReason(FinishReason.STOP)
+                    .build();
+        }
+        hits.incrementAndGet();
+        SyntheticLatency.sleep(latency.nanos(record.latencyNanos()));
+        ChatResponse.Builder response = ChatResponse.builder()
+                .aiMessage(AiMessage.from(record.text()))
+                .finishReason(FinishReason.STOP);
+        if (record.inputTokens() >= 0 && record.outputTokens() >= 0) {
+            response.tokenUsage(new TokenUsage(record.inputTokens(), record.outputTokens()));
+        }
+        return response.build();
+    }
+
+    public String stats() {
+        return String.format(Locale.ROOT, "Replay chat : %d réponses rejouées, %d questions absentes du journal",
+                hits.get(), misses.get());
+    }
+}
@@ -0,0 +1,86 @@
+package ma.gov.pfe.replay;
+
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.web.search.WebSearchEngine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Choix des modèles distants utilisés par les tests :
+//   -Drag.record=fichier   vrais modèles (clés requises), interactions ajoutées au fichier à la sortie
+//   -Drag.replay=fichier   interactions rejouées depuis le fichier, sans GEMINI_KEY ni TAVILY_KEY
+//   -Drag.replay.latency=recorded | recorded*F | <ms> | <médiane ms>/<p99 ms>  (chat, défaut recorded)
+//   -Drag.replay.webLatency=...                                                 (web, défaut recorded)
+public final class ReplayModels {
+
+    private ReplayModels() {
+    }
+
+    public static boolean replaying() {
+        return System.getProperty("rag.replay") != null;
+    }
+
+    public static ChatModel chatModel(Supplier<ChatModel> live) {
+        return chatModel(List.of(), live);
+    }
+
+    // listeners : posés sur le modèle rejoué (le modèle réel a déjà les siens)
+    public static ChatModel chatModel(List<ChatModelListener> listeners, Supplier<ChatModel> live) {
+        if (replaying()) {
+            return new ReplayChatModel(Holder.LOG, SyntheticLatency.parse(System.getProperty("rag.replay.latency", "recorded")), listeners);
+        }
+        if (System.getProperty("rag.record") != null) {
+            return new RecordingChatModel(live.get(), Holder.LOG);
+        }
+        return live.get();
+    }
+
+    public static WebSearchEngine webSearchEngine(Supplier<WebSearchEngine> live) {
+        if (replaying()) {
+            return new ReplayWebSearchEngine(Holder.LOG, SyntheticLatency.parse(System.getProperty("rag.replay.webLatency", "recorded")));
+        }
+        if (System.getProperty("rag.record") != null) {
+            return new RecordingWebSearchEngine(live.get(), Holder.LOG);
+        }
+        return live.get();
+    }
+
+    // Journal partagé : chargé une fois ; en enregistrement, les nouvelles interactions sont ajoutées
+    // aux anciennes et le fichier est réécrit à l'arrêt de la JVM
+    private static final class Holder {
+
+        private static final InteractionLog LOG = load();
+
+        private static InteractionLog load() {
+            String replay = System.getProperty("rag.replay");
+            String record = System.getProperty("rag.record");
+            if (replay != null && record != null) {
+                throw new IllegalArgumentException("rag.record et rag.replay sont exclusifs");
+            }
+            Path file = Path.of(replay != null ? replay : record);
+            try {
+                InteractionLog log = InteractionLog.load(file);
+                System.out.println(" " + log.stats() + (replay != null ? " — rejoué depuis " : " — enregistrement dans ") + file);
+                if (record != null) {
+                    Runtime.getRuntime().addShutdownHook(new Thread(() -> save(log, file)));
+                }
+                return log;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private static void save(InteractionLog log, Path file) {
+            try {
+                log.save(file);
+                System.out.println(" " + log.stats() + " — enregistré dans " + file);
+            } catch (IOException e) {
+                System.out.println(" Enregistrement impossible : " + e.getMessage());
+            }
+        }
+    }
+}
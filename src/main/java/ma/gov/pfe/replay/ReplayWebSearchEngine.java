@@ -0,0 +1,47 @@
+package ma.gov.pfe.replay;
+
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Remplace Tavily hors ligne : résultats enregistrés pour les mêmes termes, après une latence synthétique.
+// Recherche absente du journal : aucun résultat (le contexte PDF reste disponible), à la latence médiane
+// enregistrée pour ne pas rendre les questions imprévues plus rapides que les autres.
+public class ReplayWebSearchEngine implements WebSearchEngine {
+
+    private final InteractionLog log;
+    private final SyntheticLatency latency;
+    private final long missLatencyNanos;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ReplayWebSearchEngine(InteractionLog log, SyntheticLatency latency) {
+        this.log = log;
+        this.latency = latency;
+        this.missLatencyNanos = log.medianSearchLatencyNanos();
+    }
+
+    @Override
+    public WebSearchResults search(WebSearchRequest request) {
+        InteractionLog.SearchRecord record = log.nextSearch(InteractionLog.searchKey(request));
+        if (record == null) {
+            misses.incrementAndGet();
+            SyntheticLatency.sleep(latency.nanos(missLatencyNanos));
+            return WebSearchResults.from(WebSearchInformationResult.from(0L), List.of());
+        }
+        hits.incrementAndGet();
+        SyntheticLatency.sleep(latency.nanos(record.latencyNanos()));
+        return record.results();
+    }
+
+    public String stats() {
+        return String.format(Locale.ROOT, "Replay web : %d recherches rejouées, %d absentes du journal",
+                hits.get(), misses.get());
+    }
+}
@@ -0,0 +1,68 @@
+package ma.gov.pfe.replay;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Latence appliquée par les modèles rejoués, à partir de la latence enregistrée de l'interaction :
+//   "recorded"       latence enregistrée (défaut)
+//   "recorded*0.5"   latence enregistrée x facteur
+//   "250"            latence fixe en ms
+//   "250/1200"       log-normale de médiane 250 ms et p99 1200 ms (queue de distribution réaliste)
+@FunctionalInterface
+public interface SyntheticLatency {
+
+    // z du 99e centile de la loi normale
+    double Z_99 = 2.326;
+
+    long nanos(long recordedNanos);
+
+    static SyntheticLatency recorded(double factor) {
+        return recordedNanos -> (long) (recordedNanos * factor);
+    }
+
+    static SyntheticLatency fixedMillis(long millis) {
+        long nanos = millis * 1_000_000;
+        return recordedNanos -> nanos;
+    }
+
+    static SyntheticLatency logNormalMillis(double medianMillis, double p99Millis) {
+        if (medianMillis <= 0 || p99Millis < medianMillis) {
+            throw new IllegalArgumentException("log-normale : 0 < médiane <= p99 attendu (" + medianMillis + "/" + p99Millis + ")");
+        }
+        double mu = Math.log(medianMillis);
+        double sigma = Math.log(p99Millis / medianMillis) / Z_99;
+        return recordedNanos -> (long) (Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()) * 1_000_000);
+    }
+
+    static SyntheticLatency parse(String spec) {
+        String value = spec.trim().toLowerCase(Locale.ROOT);
+        try {
+            if (value.equals("recorded")) {
+                return recorded(1.0);
+            }
+            if (value.startsWith("recorded*")) {
+                return recorded(Double.parseDouble(value.substring("recorded*".length())));
+            }
+            int slash = value.indexOf('/');
+            if (slash > 0) {
+                return logNormalMillis(Double.parseDouble(value.substring(0, slash)), Double.parseDouble(value.substring(slash + 1)));
+            }
+            return fixedMillis(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Latence inconnue : " + spec + " (recorded, recorded*F, <ms>, <médiane ms>/<p99 ms>)", e);
+        }
+    }
+
+    // Attente simulée de l'appel distant
+    static void sleep(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Appel interrompu", e);
+        }
+    }
+}
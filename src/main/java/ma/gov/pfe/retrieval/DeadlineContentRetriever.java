@@ -0,0 +1,89 @@
+package ma.gov.pfe.retrieval;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Retriever avec échéance : au-delà du délai on renvoie une liste vide (le résultat tardif est jeté),
+// une erreur dégrade de la même façon. Option hedge : relance une 2e requête si la 1re tarde.
+// Chaque appel tourne dans sa propre tâche : à l'échéance (ou quand une autre a répondu) elle est
+// interrompue. L'appel ne s'arrête vraiment que si le délégué réagit à l'interruption (sleep,
+// HttpClient, sockets des threads virtuels) ; sinon il finit en tâche de fond et son résultat est ignoré.
+public class DeadlineContentRetriever implements ContentRetriever {
+
+    private static final ExecutorService VIRTUAL_THREADS = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final String name;
+    private final ContentRetriever delegate;
+    private final Duration timeout;
+    private final Duration hedgeAfter;
+
+    public DeadlineContentRetriever(String name, ContentRetriever delegate, Duration timeout) {
+        this(name, delegate, timeout, null);
+    }
+
+    public DeadlineContentRetriever(String name, ContentRetriever delegate, Duration timeout, Duration hedgeAfter) {
+        this.name = name;
+        this.delegate = delegate;
+        this.timeout = timeout;
+        this.hedgeAfter = hedgeAfter;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        CompletableFuture<List<Content>> result = new CompletableFuture<>();
+        List<Future<?>> calls = new CopyOnWriteArrayList<>();
+        launch(query, result, calls);
+        if (hedgeAfter != null && hedgeAfter.compareTo(timeout) < 0) {
+            CompletableFuture.delayedExecutor(hedgeAfter.toNanos(), TimeUnit.NANOSECONDS, VIRTUAL_THREADS)
+                    .execute(() -> {
+                        if (!result.isDone()) {
+                            launch(query, result, calls);
+                        }
+                    });
+        }
+        // Réponse, erreur ou échéance : les appels encore en cours sont interrompus
+        result.whenComplete((contents, error) -> calls.forEach(call -> call.cancel(true)));
+
+        try {
+            return result.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            System.out.println(" " + name + " hors délai (" + timeout.toMillis() + " ms) — ignoré");
+            return List.of();
+        } catch (ExecutionException e) {
+            System.out.println(" " + name + " en erreur — ignoré : " + e.getCause());
+            return List.of();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return List.of();
+        }
+    }
+
+    // La première réponse gagne ; les suivantes n'ont plus d'effet
+    private void launch(Query query, CompletableFuture<List<Content>> result, List<Future<?>> calls) {
+        Future<?> call = VIRTUAL_THREADS.submit(() -> {
+            try {
+                result.complete(delegate.retrieve(query));
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        calls.add(call);
+        // Lancé (hedge) juste après la fin : personne d'autre ne l'interrompra
+        if (result.isDone()) {
+            call.cancel(true);
+        }
+    }
+}
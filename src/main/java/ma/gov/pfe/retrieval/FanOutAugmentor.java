@@ -0,0 +1,31 @@
+package ma.gov.pfe.retrieval;
+
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.content.aggregator.DefaultContentAggregator;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.router.DefaultQueryRouter;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+
+// Interroge tous les retrievers en parallèle sur des threads virtuels ;
+// à combiner avec DeadlineContentRetriever pour qu'un retriever lent ne bloque pas la réponse
+public final class FanOutAugmentor {
+
+    private FanOutAugmentor() {
+    }
+
+    public static RetrievalAugmentor create(List<ContentRetriever> retrievers) {
+        return create(retrievers, new DefaultContentAggregator());
+    }
+
+    public static RetrievalAugmentor create(List<ContentRetriever> retrievers, ContentAggregator aggregator) {
+        return DefaultRetrievalAugmentor.builder()
+                .queryRouter(new DefaultQueryRouter(retrievers))
+                .contentAggregator(aggregator)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+}
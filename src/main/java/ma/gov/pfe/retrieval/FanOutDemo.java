@@ -0,0 +1,46 @@
+package ma.gov.pfe.retrieval;
+
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.AugmentationRequest;
+import dev.langchain4j.rag.AugmentationResult;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.WebSearchContentRetriever;
+import dev.langchain4j.rag.query.Metadata;
+
+import java.time.Duration;
+import java.util.List;
+
+// Démo hors ligne : PDF (local, immédiat) + Web simulé lent. Avec une échéance web de 300 ms
+// la réponse arrive en ~300 ms avec le seul contexte PDF au lieu d'attendre la recherche web.
+// Usage : FanOutDemo [latenceWebMs=2000] [échéanceWebMs=300]
+public class FanOutDemo {
+
+    public static void main(String[] args) {
+        long webLatency = args.length > 0 ? Long.parseLong(args[0]) : 2_000;
+        long webDeadline = args.length > 1 ? Long.parseLong(args[1]) : 300;
+
+        ContentRetriever pdf = query -> List.of(Content.from(TextSegment.from("Segment PDF pour : " + query.text())));
+        ContentRetriever web = WebSearchContentRetriever.builder()
+                .webSearchEngine(new StubWebSearchEngine(Duration.ofMillis(webLatency)))
+                .maxResults(3)
+                .build();
+
+        RetrievalAugmentor augmentor = FanOutAugmentor.create(List.of(
+                new DeadlineContentRetriever("PDF", pdf, Duration.ofMillis(200)),
+                new DeadlineContentRetriever("Web", web, Duration.ofMillis(webDeadline))));
+
+        UserMessage question = UserMessage.from("Qu'est-ce que le RAG ?");
+        Metadata metadata = Metadata.from(question, "demo", List.of());
+        long start = System.nanoTime();
+        AugmentationResult result = augmentor.augment(new AugmentationRequest(question, metadata));
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.println(" " + result.contents().size() + " contenus en " + elapsed + " ms :");
+        for (Content content : result.contents()) {
+            System.out.println("  - " + content.textSegment().text());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package ma.gov.pfe.retrieval;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.gov.pfe.store.Bm25Index;
+import ma.gov.pfe.store.EmbeddingStores;
+import ma.gov.pfe.store.FlatVectorStore;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Retriever hybride dense + BM25 :
+//  PREFILTER : les meilleurs candidats BM25 sont seuls rescorés par cosinus, par id dans le FlatVectorStore
+//              derrière `store` (pas de balayage). Repli sur store.search (balayage complet pour un store
+//              à plat) quand moins de maxResults candidats passent minScore (requête sans terme connu,
+//              candidats hors sujet) ou quand `store` n'est pas un FlatVectorStore (shardé, Qdrant...)
+//  RRF       : recherche dense et BM25 fusionnées par Reciprocal Rank Fusion (1 / (60 + rang))
+public class HybridContentRetriever implements ContentRetriever {
+
+    public enum Mode { PREFILTER, RRF }
+
+    private static final int RRF_K = 60;
+
+    private final Bm25Index index;
+    private final EmbeddingStore<TextSegment> store;
+    private final FlatVectorStore flat;
+    private final EmbeddingModel embeddingModel;
+    private final Mode mode;
+    private final int maxResults;
+    private final double minScore;
+    private final int candidates;
+
+    public HybridContentRetriever(Bm25Index index, EmbeddingStore<TextSegment> store, EmbeddingModel embeddingModel,
+                                  Mode mode, int maxResults, double minScore) {
+        this(index, store, embeddingModel, mode, maxResults, minScore, 50 * maxResults);
+    }
+
+    // candidates : nombre de documents BM25 rescorés (PREFILTER) ou fusionnés (RRF)
+    public HybridContentRetriever(Bm25Index index, EmbeddingStore<TextSegment> store, EmbeddingModel embeddingModel,
+                                  Mode mode, int maxResults, double minScore, int candidates) {
+        this.index = index;
+        this.store = store;
+        this.flat = EmbeddingStores.flat(store);
+        this.embeddingModel = embeddingModel;
+        this.mode = mode;
+        this.maxResults = maxResults;
+        this.minScore = minScore;
+        this.candidates = candidates;
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        List<EmbeddingMatch<TextSegment>> matches = search(query.text(), embeddingModel.embed(query.text()).content());
+        List<Content> contents = new ArrayList<>(matches.size());
+        for (EmbeddingMatch<TextSegment> match : matches) {
+            contents.add(Content.from(match.embedded(), Map.<ContentMetadata, Object>of(
+                    ContentMetadata.SCORE, match.score(),
+                    ContentMetadata.EMBEDDING_ID, match.embeddingId())));
+        }
+        return contents;
+    }
+
+    // Recherche avec un embedding de requête déjà calculé
+    public List<EmbeddingMatch<TextSegment>> search(String text, Embedding embedding) {
+        return mode == Mode.PREFILTER ? prefilter(text, embedding) : fuse(text, embedding);
+    }
+
+    private List<EmbeddingMatch<TextSegment>> prefilter(String text, Embedding embedding) {
+        if (flat == null) {
+            return dense(embedding, maxResults);
+        }
+        List<EmbeddingMatch<TextSegment>> matches = flat.searchAmong(index.candidates(text, candidates),
+                request(embedding, maxResults)).matches();
+        return matches.size() < maxResults ? dense(embedding, maxResults) : matches;
+    }
+
+    private List<EmbeddingMatch<TextSegment>> fuse(String text, Embedding embedding) {
+        Map<String, Double> scores = new HashMap<>();
+        Map<String, EmbeddingMatch<TextSegment>> byId = new HashMap<>();
+        List<EmbeddingMatch<TextSegment>> dense = dense(embedding, candidates);
+        for (int rank = 0; rank < dense.size(); rank++) {
+            EmbeddingMatch<TextSegment> match = dense.get(rank);
+            scores.merge(match.embeddingId(), 1.0 / (RRF_K + rank + 1), Double::sum);
+            byId.putIfAbsent(match.embeddingId(), match);
+        }
+        List<EmbeddingMatch<TextSegment>> lexical = index.search(text, candidates);
+        for (int rank = 0; rank < lexical.size(); rank++) {
+            EmbeddingMatch<TextSegment> match = lexical.get(rank);
+            scores.merge(match.embeddingId(), 1.0 / (RRF_K + rank + 1), Double::sum);
+            byId.putIfAbsent(match.embeddingId(), match);
+        }
+        List<EmbeddingMatch<TextSegment>> fused = new ArrayList<>(scores.size());
+        for (Map.Entry<String, Double> entry : scores.entrySet()) {
+            EmbeddingMatch<TextSegment> match = byId.get(entry.getKey());
+            fused.add(new EmbeddingMatch<>(entry.getValue(), match.embeddingId(), match.embedding(), match.embedded()));
+        }
+        fused.sort((a, b) -> Double.compare(b.score(), a.score()));
+        return fused.subList(0, Math.min(maxResults, fused.size()));
+    }
+
+    private List<EmbeddingMatch<TextSegment>> dense(Embedding embedding, int k) {
+        return store.search(request(embedding, k)).matches();
+    }
+
+    private EmbeddingSearchRequest request(Embedding embedding, int k) {
+        return EmbeddingSearchRequest.builder()
+                .queryEmbedding(embedding)
+                .maxResults(k)
+                .minScore(minScore)
+                .build();
+    }
+}
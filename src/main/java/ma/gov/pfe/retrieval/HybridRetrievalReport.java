@@ -0,0 +1,152 @@
+package ma.gov.pfe.retrieval;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.gov.pfe.embedding.EmbeddingModelProvider;
+import ma.gov.pfe.ingestion.IngestedDocument;
+import ma.gov.pfe.ingestion.IngestionPipeline;
+import ma.gov.pfe.store.Bm25Index;
+import ma.gov.pfe.store.FlatVectorStore;
+import ma.gov.pfe.store.HnswRecallReport;
+
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+// Latence et rappel@k des modes hybrides (BM25 en préfiltre, fusion RRF) face à la recherche dense seule,
+// sur les deux PDF du projet + des segments "bruit" (mots du corpus, vecteurs aléatoires) pour grossir l'index.
+// Usage : HybridRetrievalReport [nbSegmentsBruit=100000] [k=3]
+public class HybridRetrievalReport {
+
+    private static final List<String> QUESTIONS = List.of(
+            "Qu'est-ce que le RAG ?",
+            "Quels sont les avantages du retrieval augmented generation ?",
+            "EmbeddingStoreContentRetriever",
+            "Comment utiliser AiServices avec un ChatMemory ?",
+            "QueryRouter et LanguageModelQueryRouter",
+            "Comment ajouter la dépendance langchain4j dans Maven ?",
+            "embeddings et recherche vectorielle",
+            "Quel est le rôle du retriever ?");
+
+    private static final int REPEAT = 20;
+
+    public static void main(String[] args) throws Exception {
+        int noise = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int k = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        EmbeddingModel embeddingModel = EmbeddingModelProvider.get();
+        List<IngestedDocument> documents = IngestionPipeline.defaults(embeddingModel)
+                .process(List.of(resource("/rag.pdf"), resource("/langchain4jj.pdf")));
+
+        Bm25Index index = new Bm25Index();
+        FlatVectorStore flat = new FlatVectorStore();
+        EmbeddingStore<TextSegment> store = index.indexing(flat);
+        List<String> vocabulary = new ArrayList<>();
+        for (IngestedDocument document : documents) {
+            document.addTo(store);
+            for (TextSegment segment : document.segments()) {
+                vocabulary.addAll(Arrays.asList(segment.text().split("\\s+")));
+            }
+        }
+        addNoise(store, vocabulary, noise);
+
+        List<Embedding> queryEmbeddings = new ArrayList<>();
+        for (String question : QUESTIONS) {
+            queryEmbeddings.add(embeddingModel.embed(question).content());
+        }
+        List<Set<String>> truth = new ArrayList<>();
+        for (Embedding embedding : queryEmbeddings) {
+            truth.add(ids(flat.search(EmbeddingSearchRequest.builder()
+                    .queryEmbedding(embedding).maxResults(k).minScore(0.0).build()).matches()));
+        }
+
+        System.out.printf(Locale.ROOT, "%d segments indexés, %d requêtes x %d, k=%d%n", index.size(), QUESTIONS.size(), REPEAT, k);
+        System.out.printf(Locale.ROOT, "%-12s %10s %10s %10s%n", "mode", "rappel", "moy (µs)", "p99 (µs)");
+
+        long[] denseLatencies = new long[QUESTIONS.size() * REPEAT];
+        for (int r = 0, i = 0; r < REPEAT; r++) {
+            for (Embedding embedding : queryEmbeddings) {
+                long start = System.nanoTime();
+                flat.search(EmbeddingSearchRequest.builder().queryEmbedding(embedding).maxResults(k).minScore(0.0).build());
+                denseLatencies[i++] = System.nanoTime() - start;
+            }
+        }
+        print("dense", 1.0, denseLatencies);
+
+        for (HybridContentRetriever.Mode mode : HybridContentRetriever.Mode.values()) {
+            HybridContentRetriever retriever = new HybridContentRetriever(index, flat, embeddingModel, mode, k, 0.0);
+            long[] latencies = new long[QUESTIONS.size() * REPEAT];
+            double recall = 0;
+            for (int r = 0, i = 0; r < REPEAT; r++) {
+                for (int q = 0; q < QUESTIONS.size(); q++) {
+                    long start = System.nanoTime();
+                    List<EmbeddingMatch<TextSegment>> matches = retriever.search(QUESTIONS.get(q), queryEmbeddings.get(q));
+                    latencies[i++] = System.nanoTime() - start;
+                    if (r == 0) {
+                        Set<String> found = ids(matches);
+                        found.retainAll(truth.get(q));
+                        recall += truth.get(q).isEmpty() ? 1 : (double) found.size() / truth.get(q).size();
+                    }
+                }
+            }
+            print(mode.name().toLowerCase(Locale.ROOT), recall / QUESTIONS.size(), latencies);
+        }
+    }
+
+    // Texte tiré du vocabulaire réel (postings réalistes), vecteur aléatoire (loin des vraies questions)
+    private static void addNoise(EmbeddingStore<TextSegment> store, List<String> vocabulary, int count) {
+        Random random = new Random(42);
+        int dimension = FlatVectorStore.MINILM_DIMENSION;
+        int batch = 10_000;
+        for (int from = 0; from < count; from += batch) {
+            int n = Math.min(batch, count - from);
+            List<Embedding> embeddings = new ArrayList<>(n);
+            List<TextSegment> segments = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                float[] vector = new float[dimension];
+                for (int d = 0; d < dimension; d++) {
+                    vector[d] = (float) random.nextGaussian();
+                }
+                embeddings.add(Embedding.from(vector));
+                StringBuilder text = new StringBuilder();
+                for (int w = 0; w < 60; w++) {
+                    text.append(vocabulary.get(random.nextInt(vocabulary.size()))).append(' ');
+                }
+                segments.add(TextSegment.from(text.toString(), Metadata.from("bruit", "oui")));
+            }
+            store.addAll(embeddings, segments);
+        }
+    }
+
+    private static Set<String> ids(List<EmbeddingMatch<TextSegment>> matches) {
+        Set<String> ids = new HashSet<>();
+        for (EmbeddingMatch<TextSegment> match : matches) {
+            ids.add(match.embeddingId());
+        }
+        return ids;
+    }
+
+    private static void print(String label, double recall, long[] nanos) {
+        System.out.printf(Locale.ROOT, "%-12s %10.4f %10.1f %10.1f%n", label, recall,
+                HnswRecallReport.mean(nanos), HnswRecallReport.p99(nanos));
+    }
+
+    private static Path resource(String name) throws Exception {
+        URL resource = HybridRetrievalReport.class.getResource(name);
+        if (resource == null) {
+            throw new RuntimeException(" Fichier introuvable dans resources: " + name);
+        }
+        return Path.of(resource.toURI());
+    }
+}
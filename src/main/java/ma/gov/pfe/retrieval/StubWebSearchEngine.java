@@ -0,0 +1,52 @@
+package ma.gov.pfe.retrieval;
+
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Moteur de recherche local (sans Tavily) avec latence injectée, pour tester hors ligne
+public class StubWebSearchEngine implements WebSearchEngine {
+
+    private final Duration latency;
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger interrupted = new AtomicInteger();
+
+    public StubWebSearchEngine(Duration latency) {
+        this.latency = latency;
+    }
+
+    public int calls() {
+        return calls.get();
+    }
+
+    // Recherches interrompues avant la fin de la latence (échéance dépassée)
+    public int interrupted() {
+        return interrupted.get();
+    }
+
+    @Override
+    public WebSearchResults search(WebSearchRequest request) {
+        calls.incrementAndGet();
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            interrupted.incrementAndGet();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Recherche interrompue", e);
+        }
+        String query = request.searchTerms();
+        WebSearchOrganicResult result = WebSearchOrganicResult.from(
+                "Résultat pour " + query,
+                URI.create("https://example.org/search?q=" + query.hashCode()),
+                "Extrait simulé pour : " + query,
+                "Contenu simulé pour : " + query);
+        return WebSearchResults.from(WebSearchInformationResult.from(1L), List.of(result));
+    }
+}
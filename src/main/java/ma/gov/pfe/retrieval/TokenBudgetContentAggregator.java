@@ -0,0 +1,285 @@
+package ma.gov.pfe.retrieval;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.content.aggregator.DefaultContentAggregator;
+import dev.langchain4j.rag.query.Query;
+import ma.gov.pfe.metrics.RagMetrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToIntFunction;
+
+// Étape d'agrégation du DefaultRetrievalAugmentor qui réduit le prompt envoyé au modèle :
+//  1. classement RRF habituel (DefaultContentAggregator)
+//  2. segments voisins d'un même document fusionnés, recouvrement du splitter (50 caractères) retiré
+//  3. quasi-doublons (Jaccard sur trigrammes de mots >= seuil) supprimés
+//  4. contenu gardé par ordre de rang tant que contenu + mémoire + question tiennent dans le budget ;
+//     minContextTokens restent réservés au contenu même si la mémoire remplit tout le budget
+//     (sinon une longue conversation ferait partir la question sans aucun contexte)
+public class TokenBudgetContentAggregator implements ContentAggregator {
+
+    // Estimation sans tokenizer : ~4 caractères par token pour Gemini sur du texte latin
+    public static final ToIntFunction<String> APPROXIMATE_TOKENS = text -> (text.length() + 3) / 4;
+
+    private static final int MIN_OVERLAP = 10;
+    private static final int MAX_OVERLAP = 200;
+
+    private final ContentAggregator ranking;
+    private final int maxTokens;
+    private final int minContextTokens;
+    private final double duplicateThreshold;
+    private final ToIntFunction<String> tokenCounter;
+    private final boolean verbose;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong tokensIn = new AtomicLong();
+    private final AtomicLong tokensOut = new AtomicLong();
+
+    // Budget lu dans -Drag.context.maxTokens (2000 par défaut), dont un quart réservé au contenu
+    public static TokenBudgetContentAggregator create() {
+        return new TokenBudgetContentAggregator(Integer.getInteger("rag.context.maxTokens", 2_000));
+    }
+
+    public TokenBudgetContentAggregator(int maxTokens) {
+        this(new DefaultContentAggregator(), maxTokens, 0.9, APPROXIMATE_TOKENS, false);
+    }
+
+    public TokenBudgetContentAggregator(ContentAggregator ranking, int maxTokens, double duplicateThreshold,
+                                        ToIntFunction<String> tokenCounter, boolean verbose) {
+        this(ranking, maxTokens, Math.max(1, maxTokens / 4), duplicateThreshold, tokenCounter, verbose);
+    }
+
+    // maxTokens : budget pour contenu récupéré + mémoire de conversation + question
+    // minContextTokens : part du budget toujours laissée au contenu, quelle que soit la taille de la mémoire
+    public TokenBudgetContentAggregator(ContentAggregator ranking, int maxTokens, int minContextTokens,
+                                        double duplicateThreshold, ToIntFunction<String> tokenCounter, boolean verbose) {
+        if (maxTokens < 1) {
+            throw new IllegalArgumentException("maxTokens doit être >= 1 : " + maxTokens);
+        }
+        if (minContextTokens < 1 || minContextTokens > maxTokens) {
+            throw new IllegalArgumentException("minContextTokens doit être entre 1 et maxTokens : " + minContextTokens);
+        }
+        this.ranking = ranking;
+        this.maxTokens = maxTokens;
+        this.minContextTokens = minContextTokens;
+        this.duplicateThreshold = duplicateThreshold;
+        this.tokenCounter = tokenCounter;
+        this.verbose = verbose;
+    }
+
+    @Override
+    public List<Content> aggregate(Map<Query, Collection<List<Content>>> queryToContents) {
+        List<Content> ranked = ranking.aggregate(queryToContents);
+        if (ranked.isEmpty()) {
+            return ranked;
+        }
+        int before = 0;
+        for (Content content : ranked) {
+            before += tokenCounter.applyAsInt(content.textSegment().text());
+        }
+
+        List<Block> blocks = dropNearDuplicates(mergeNeighbours(ranked));
+        int available = Math.max(minContextTokens, maxTokens - conversationTokens(queryToContents.keySet()));
+
+        List<Content> packed = new ArrayList<>();
+        int after = 0;
+        for (Block block : blocks) {
+            int tokens = tokenCounter.applyAsInt(block.text());
+            if (after + tokens <= available) {
+                packed.add(block.toContent());
+                after += tokens;
+            } else if (packed.isEmpty()) {
+                // Le meilleur bloc seul dépasse : on le tronque plutôt que de ne rien envoyer
+                String truncated = truncate(block.text(), available);
+                if (!truncated.isBlank()) {
+                    packed.add(Content.from(TextSegment.from(truncated, block.metadata())));
+                    after += tokenCounter.applyAsInt(truncated);
+                }
+            }
+        }
+
+        requests.incrementAndGet();
+        tokensIn.addAndGet(before);
+        tokensOut.addAndGet(after);
+        RagMetrics.CONTEXT_TOKENS_SAVED.add(before - after);
+        if (verbose) {
+            System.out.printf(Locale.ROOT, " Contexte : %d -> %d tokens (%d segments -> %d blocs, budget restant %d)%n",
+                    before, after, ranked.size(), packed.size(), available);
+        }
+        return packed;
+    }
+
+    public long tokensSaved() {
+        return tokensIn.get() - tokensOut.get();
+    }
+
+    public String stats() {
+        long count = requests.get();
+        return String.format(Locale.ROOT, "Contexte : %d requêtes, %d -> %d tokens de contenu, %.1f tokens économisés / requête",
+                count, tokensIn.get(), tokensOut.get(), count == 0 ? 0 : (double) tokensSaved() / count);
+    }
+
+    // Segments d'un même fichier à index consécutifs -> un seul bloc ; le rang du bloc est celui de sa meilleure partie
+    private static List<Block> mergeNeighbours(List<Content> ranked) {
+        Map<String, List<Block>> bySource = new LinkedHashMap<>();
+        List<Block> blocks = new ArrayList<>();
+        for (int rank = 0; rank < ranked.size(); rank++) {
+            TextSegment segment = ranked.get(rank).textSegment();
+            String source = source(segment.metadata());
+            int index = index(segment.metadata());
+            Block block = new Block(rank, index, index, segment.text(), segment.metadata());
+            if (source == null || index < 0) {
+                blocks.add(block);
+            } else {
+                bySource.computeIfAbsent(source, s -> new ArrayList<>()).add(block);
+            }
+        }
+        for (List<Block> parts : bySource.values()) {
+            parts.sort(Comparator.comparingInt(Block::first));
+            Block current = parts.get(0);
+            for (int i = 1; i < parts.size(); i++) {
+                Block next = parts.get(i);
+                if (next.first() <= current.last() + 1) {
+                    current = current.merge(next);
+                } else {
+                    blocks.add(current);
+                    current = next;
+                }
+            }
+            blocks.add(current);
+        }
+        blocks.sort(Comparator.comparingInt(Block::rank));
+        return blocks;
+    }
+
+    private List<Block> dropNearDuplicates(List<Block> blocks) {
+        List<Block> kept = new ArrayList<>(blocks.size());
+        List<Set<String>> shingles = new ArrayList<>(blocks.size());
+        outer:
+        for (Block block : blocks) {
+            Set<String> candidate = shingles(block.text());
+            for (Set<String> existing : shingles) {
+                if (jaccard(candidate, existing) >= duplicateThreshold) {
+                    continue outer;
+                }
+            }
+            kept.add(block);
+            shingles.add(candidate);
+        }
+        return kept;
+    }
+
+    private int conversationTokens(Collection<Query> queries) {
+        int tokens = 0;
+        for (Query query : queries) {
+            tokens += tokenCounter.applyAsInt(query.text());
+            if (query.metadata() != null && query.metadata().chatMemory() != null) {
+                for (ChatMessage message : query.metadata().chatMemory()) {
+                    tokens += tokenCounter.applyAsInt(text(message));
+                }
+            }
+            break; // la mémoire est la même pour toutes les requêtes dérivées
+        }
+        return tokens;
+    }
+
+    private String truncate(String text, int tokens) {
+        int end = Math.min(text.length(), tokens * 4);
+        while (end > 0 && tokenCounter.applyAsInt(text.substring(0, end)) > tokens) {
+            end = end * 9 / 10;
+        }
+        int sentence = text.lastIndexOf(". ", end);
+        return text.substring(0, sentence > end / 2 ? sentence + 1 : end);
+    }
+
+    private static String text(ChatMessage message) {
+        if (message instanceof UserMessage user) {
+            return user.hasSingleText() ? user.singleText() : "";
+        }
+        if (message instanceof AiMessage ai) {
+            return ai.text() == null ? "" : ai.text();
+        }
+        if (message instanceof SystemMessage system) {
+            return system.text();
+        }
+        return "";
+    }
+
+    private static String source(Metadata metadata) {
+        Object file = metadata.toMap().get("file_name");
+        Object url = metadata.toMap().get("url");
+        return file != null ? file.toString() : url != null ? url.toString() : null;
+    }
+
+    private static int index(Metadata metadata) {
+        Object index = metadata.toMap().get("index");
+        if (index == null) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(index.toString());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Plus long suffixe de a égal à un préfixe de b (le recouvrement du splitter)
+    static String joinWithoutOverlap(String a, String b) {
+        int max = Math.min(MAX_OVERLAP, Math.min(a.length(), b.length()));
+        for (int length = max; length >= MIN_OVERLAP; length--) {
+            if (a.regionMatches(a.length() - length, b, 0, length)) {
+                return a + b.substring(length);
+            }
+        }
+        return a + "\n" + b;
+    }
+
+    private static Set<String> shingles(String text) {
+        String[] words = text.toLowerCase(Locale.ROOT).split("\\W+");
+        Set<String> shingles = new HashSet<>();
+        for (int i = 0; i + 2 < words.length; i++) {
+            shingles.add(words[i] + ' ' + words[i + 1] + ' ' + words[i + 2]);
+        }
+        return shingles;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() || b.isEmpty()) {
+            return 0;
+        }
+        int common = 0;
+        for (String shingle : a.size() < b.size() ? a : b) {
+            if ((a.size() < b.size() ? b : a).contains(shingle)) {
+                common++;
+            }
+        }
+        return (double) common / (a.size() + b.size() - common);
+    }
+
+    private record Block(int rank, int first, int last, String text, Metadata metadata) {
+
+        Block merge(Block next) {
+            String merged = next.last() <= last ? text : joinWithoutOverlap(text, next.text());
+            return new Block(Math.min(rank, next.rank()), first, Math.max(last, next.last()), merged, metadata);
+        }
+
+        Content toContent() {
+            return Content.from(TextSegment.from(text, metadata));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package ma.gov.pfe.routage;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.input.Prompt;
+import dev.langchain4j.model.input.PromptTemplate;
+import ma.gov.pfe.store.VectorMath;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+
+// "La question concerne-t-elle l'IA ?" : cache d'abord, puis décision locale par embeddings si elle
+// est nette, et seulement sinon l'appel au LLM (oui / non / peut-être). test() renvoie true pour "non".
+public class AiTopicClassifier implements Predicate<String> {
+
+    private static final String TEMPLATE = """
+                Est-ce que la requête suivante concerne l’intelligence artificielle ?
+                Réponds seulement par : oui / non / peut-être
+
+                Requête : {{question}}
+            """;
+
+    private static final List<String> AI_EXAMPLES = List.of(
+            "Qu'est-ce que le RAG ?",
+            "Comment fonctionnent les embeddings ?",
+            "Qu'est-ce qu'un grand modèle de langage ?",
+            "Explique l'apprentissage automatique et les réseaux de neurones.");
+
+    private static final List<String> OTHER_EXAMPLES = List.of(
+            "Quelle est la capitale de la France ?",
+            "Donne-moi une recette de couscous.",
+            "Quel temps fait-il aujourd'hui ?",
+            "Qui a gagné la coupe du monde de football ?");
+
+    private static final int CACHE_SIZE = 1_000;
+
+    private final ChatModel model;
+    private final EmbeddingModel embeddingModel;
+    private final double localMargin;
+    private final List<float[]> aiExemplars;
+    private final List<float[]> otherExemplars;
+    private final Map<String, Boolean> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public AiTopicClassifier(ChatModel model, EmbeddingModel embeddingModel) {
+        this(model, embeddingModel, 0.1);
+    }
+
+    // localMargin : écart de similarité minimal pour décider sans le LLM (embeddingModel null = toujours le LLM)
+    public AiTopicClassifier(ChatModel model, EmbeddingModel embeddingModel, double localMargin) {
+        this.model = model;
+        this.embeddingModel = embeddingModel;
+        this.localMargin = localMargin;
+        this.aiExemplars = embeddingModel == null ? List.of() : embedAll(AI_EXAMPLES);
+        this.otherExemplars = embeddingModel == null ? List.of() : embedAll(OTHER_EXAMPLES);
+    }
+
+    @Override
+    public boolean test(String question) {
+        String key = question.trim().toLowerCase(Locale.ROOT);
+        synchronized (cache) {
+            Boolean cached = cache.get(key);
+            if (cached != null) {
+                System.out.println("Décision IA ? → " + (cached ? "non" : "oui") + " (cache)");
+                return cached;
+            }
+        }
+
+        Boolean offTopic = embeddingModel == null ? null : classifyLocally(question);
+        if (offTopic == null) {
+            Prompt prompt = PromptTemplate.from(TEMPLATE).apply(Map.of("question", question));
+            String reply = model.chat(prompt.text()).trim().toLowerCase();
+            System.out.println("Décision IA ? → " + reply);
+            offTopic = reply.contains("non");
+        } else {
+            System.out.println("Décision IA ? → " + (offTopic ? "non" : "oui") + " (local)");
+        }
+
+        synchronized (cache) {
+            cache.put(key, offTopic);
+        }
+        return offTopic;
+    }
+
+    // null quand l'écart entre les deux groupes d'exemples est trop faible pour trancher
+    private Boolean classifyLocally(String question) {
+        float[] vector = VectorMath.normalized(embeddingModel.embed(question).content().vector());
+        double ai = best(vector, aiExemplars);
+        double other = best(vector, otherExemplars);
+        if (Math.abs(ai - other) < localMargin) {
+            return null;
+        }
+        return other > ai;
+    }
+
+    private List<float[]> embedAll(List<String> texts) {
+        List<TextSegment> segments = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            segments.add(TextSegment.from(text));
+        }
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (Embedding embedding : embeddingModel.embedAll(segments).content()) {
+            vectors.add(VectorMath.normalized(embedding.vector()));
+        }
+        return vectors;
+    }
+
+    private static double best(float[] vector, List<float[]> exemplars) {
+        double best = Double.NEGATIVE_INFINITY;
+        for (float[] exemplar : exemplars) {
+            best = Math.max(best, VectorMath.dot(vector, exemplar));
+        }
+        return best;
+    }
+}
@@ -0,0 +1,134 @@
+package ma.gov.pfe.routage;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+import ma.gov.pfe.store.VectorMath;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Routage local : la requête est comparée (cosinus) aux exemples de chaque retriever.
+// Seule une décision ambiguë (écart entre les deux meilleurs < minMargin) part vers le routeur de repli (LLM).
+public class ExemplarQueryRouter implements QueryRouter {
+
+    private final EmbeddingModel embeddingModel;
+    private final Map<ContentRetriever, List<float[]>> exemplars;
+    private final QueryRouter fallback;
+    private final double minMargin;
+    private final boolean verbose;
+
+    private ExemplarQueryRouter(Builder builder) {
+        if (builder.exemplars.isEmpty()) {
+            throw new IllegalArgumentException("Au moins une route est nécessaire");
+        }
+        this.embeddingModel = builder.embeddingModel;
+        this.exemplars = new LinkedHashMap<>(builder.exemplars);
+        this.fallback = builder.fallback;
+        this.minMargin = builder.minMargin;
+        this.verbose = builder.verbose;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        long start = System.nanoTime();
+        float[] vector = VectorMath.normalized(embeddingModel.embed(query.text()).content().vector());
+
+        ContentRetriever best = null;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        double secondScore = Double.NEGATIVE_INFINITY;
+        for (Map.Entry<ContentRetriever, List<float[]>> route : exemplars.entrySet()) {
+            double score = Double.NEGATIVE_INFINITY;
+            for (float[] exemplar : route.getValue()) {
+                score = Math.max(score, VectorMath.dot(vector, exemplar));
+            }
+            if (score > bestScore) {
+                secondScore = bestScore;
+                bestScore = score;
+                best = route.getKey();
+            } else if (score > secondScore) {
+                secondScore = score;
+            }
+        }
+
+        double margin = bestScore - secondScore;
+        if (margin < minMargin && fallback != null) {
+            if (verbose) {
+                log("Routage ambigu (écart %.3f) → repli LLM", margin);
+            }
+            return fallback.route(query);
+        }
+        if (verbose) {
+            log("Routage local (score %.3f, écart %.3f) en %d µs", bestScore, margin,
+                    (System.nanoTime() - start) / 1_000);
+        }
+        return List.of(best);
+    }
+
+    // Appelé seulement en mode verbeux : route() est sur le chemin de chaque requête, rien n'y est formaté sinon
+    private static void log(String format, Object... args) {
+        System.out.println(" " + String.format(Locale.ROOT, format, args));
+    }
+
+    public static class Builder {
+
+        private EmbeddingModel embeddingModel;
+        private final Map<ContentRetriever, List<float[]>> exemplars = new LinkedHashMap<>();
+        private QueryRouter fallback;
+        private double minMargin = 0.05;
+        private boolean verbose;
+
+        public Builder embeddingModel(EmbeddingModel embeddingModel) {
+            this.embeddingModel = embeddingModel;
+            return this;
+        }
+
+        // Textes représentatifs d'une route (description, questions types), encodés une seule fois
+        public Builder route(ContentRetriever retriever, String... texts) {
+            if (embeddingModel == null) {
+                throw new IllegalStateException("embeddingModel doit être défini avant les routes");
+            }
+            List<TextSegment> segments = new ArrayList<>(texts.length);
+            for (String text : texts) {
+                segments.add(TextSegment.from(text));
+            }
+            for (Embedding embedding : embeddingModel.embedAll(segments).content()) {
+                exemplars.computeIfAbsent(retriever, r -> new ArrayList<>()).add(VectorMath.normalized(embedding.vector()));
+            }
+            return this;
+        }
+
+        public Builder fallback(QueryRouter fallback) {
+            this.fallback = fallback;
+            return this;
+        }
+
+        public Builder minMargin(double minMargin) {
+            this.minMargin = minMargin;
+            return this;
+        }
+
+        public Builder verbose(boolean verbose) {
+            this.verbose = verbose;
+            return this;
+        }
+
+        public ExemplarQueryRouter build() {
+            if (embeddingModel == null) {
+                throw new IllegalStateException("embeddingModel est obligatoire");
+            }
+            return new ExemplarQueryRouter(this);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ma.gov.pfe.routage;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.rag.query.router.QueryRouter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Predicate;
+
+// Récupération spéculative : la recherche dans le retriever démarre en même temps que la décision
+// "faut-il du RAG ?". Le résultat n'est jeté que si la décision est négative.
+// Latence ≈ max(décision, recherche) au lieu de décision + recherche.
+public class SpeculativeQueryRouter implements QueryRouter {
+
+    private final ContentRetriever retriever;
+    private final Predicate<String> discard;
+    private final Executor executor;
+
+    // discard : renvoie true quand la question ne doit PAS utiliser le retriever
+    public SpeculativeQueryRouter(ContentRetriever retriever, Predicate<String> discard) {
+        this(retriever, discard, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    public SpeculativeQueryRouter(ContentRetriever retriever, Predicate<String> discard, Executor executor) {
+        this.retriever = retriever;
+        this.discard = discard;
+        this.executor = executor;
+    }
+
+    @Override
+    public Collection<ContentRetriever> route(Query query) {
+        CompletableFuture<List<Content>> speculative = CompletableFuture.supplyAsync(() -> retriever.retrieve(query), executor);
+        boolean discarded;
+        try {
+            discarded = discard.test(query.text());
+        } catch (RuntimeException e) {
+            speculative.cancel(true);
+            throw e;
+        }
+        if (discarded) {
+            speculative.cancel(true);
+            return Collections.emptyList();
+        }
+        return List.of(new PrefetchedRetriever(speculative));
+    }
+
+    // Rend le résultat déjà en cours de calcul au lieu de relancer la recherche
+    private record PrefetchedRetriever(CompletableFuture<List<Content>> contents) implements ContentRetriever {
+
+        @Override
+        public List<Content> retrieve(Query query) {
+            try {
+                return contents.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : e;
+            }
+        }
+    }
+}
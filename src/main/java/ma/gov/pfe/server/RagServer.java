@@ -0,0 +1,442 @@
+package ma.gov.pfe.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
+import dev.langchain4j.model.googleai.GoogleAiGeminiStreamingChatModel;
+import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.content.retriever.WebSearchContentRetriever;
+import dev.langchain4j.rag.query.router.LanguageModelQueryRouter;
+import dev.langchain4j.service.AiServices;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import dev.langchain4j.store.memory.chat.InMemoryChatMemoryStore;
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.tavily.TavilyWebSearchEngine;
+import ma.gov.pfe.assistant.SessionAssistant;
+import ma.gov.pfe.assistant.StreamingSessionAssistant;
+import ma.gov.pfe.assistant.TokenStreamPrinter;
+import ma.gov.pfe.cache.CachingWebSearchEngine;
+import ma.gov.pfe.cache.SemanticCache;
+import ma.gov.pfe.cache.SemanticCacheSessionAssistant;
+import ma.gov.pfe.embedding.BatchingEmbeddingModel;
+import ma.gov.pfe.embedding.EmbeddingModelProvider;
+import ma.gov.pfe.embedding.QueryEmbeddingCache;
+import ma.gov.pfe.index.PersistentEmbeddingIndex;
+import ma.gov.pfe.metrics.MeteredQueryRouter;
+import ma.gov.pfe.metrics.MeteredWebSearchEngine;
+import ma.gov.pfe.metrics.MetricsChatModelListener;
+import ma.gov.pfe.metrics.RagMetrics;
+import ma.gov.pfe.replay.ReplayModels;
+import ma.gov.pfe.retrieval.DeadlineContentRetriever;
+import ma.gov.pfe.retrieval.FanOutAugmentor;
+import ma.gov.pfe.retrieval.StubWebSearchEngine;
+import ma.gov.pfe.retrieval.TokenBudgetContentAggregator;
+import ma.gov.pfe.routage.ExemplarQueryRouter;
+import ma.gov.pfe.store.EmbeddingStores;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Mode serveur HTTP (serveur intégré du JDK, un thread virtuel par requête) :
+//   POST /chat/{naif|routage|web}   corps = question (texte), en-tête X-Session-Id = session ;
+//                                   ?stream=true : réponse envoyée en chunks au fil des tokens
+//   GET  /metrics                   métriques par étape au format Prometheus
+// Index et modèle d'embeddings partagés, mémoire par session (@MemoryId), nombre d'appels LLM
+// simultanés borné (503 + Retry-After au-delà). Sessions bornées en nombre (LRU) et en inactivité (TTL) ;
+// sans X-Session-Id la question est traitée sans mémoire conservée. Sans GEMINI_KEY / TAVILY_KEY : modèles simulés.
+// Chaque assistant a un cache sémantique partagé par toutes les sessions, en streaming comme en bloquant.
+public class RagServer {
+
+    private static final int MAX_QUESTION_BYTES = 8 * 1024;
+
+    private final Map<String, SessionAssistant> assistants;
+    private final Map<String, StreamingSessionAssistant> streamingAssistants;
+    private final Semaphore permits;
+    private final long queueTimeoutNanos;
+    private final SessionRegistry sessions;
+
+    public RagServer(Map<String, SessionAssistant> assistants, int maxConcurrentCalls, Duration queueTimeout,
+                     int maxSessions, Duration sessionTtl) {
+        this(assistants, Map.of(), maxConcurrentCalls, queueTimeout, maxSessions, sessionTtl);
+    }
+
+    // streamingAssistants : variantes en streaming, par nom, sur les mêmes mémoires que assistants
+    // (un assistant sans variante répond d'un bloc même avec ?stream=true)
+    public RagServer(Map<String, SessionAssistant> assistants, Map<String, StreamingSessionAssistant> streamingAssistants,
+                     int maxConcurrentCalls, Duration queueTimeout, int maxSessions, Duration sessionTtl) {
+        this.assistants = Map.copyOf(assistants);
+        this.streamingAssistants = Map.copyOf(streamingAssistants);
+        this.permits = new Semaphore(maxConcurrentCalls);
+        this.queueTimeoutNanos = queueTimeout.toNanos();
+        this.sessions = new SessionRegistry(maxSessions, sessionTtl, session -> evict(session.assistant(), session.id()));
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = Integer.getInteger("rag.server.port", 8080);
+        int maxConcurrent = Integer.getInteger("rag.server.maxConcurrent", 256);
+        int maxSessions = Integer.getInteger("rag.server.maxSessions", 10_000);
+        Duration sessionTtl = Duration.ofMinutes(Long.getLong("rag.server.sessionTtlMinutes", 30));
+
+        // -Drag.replay=fichier : Gemini et Tavily rejoués depuis un enregistrement (cf. ReplayModels)
+        String apiKey = System.getenv("GEMINI_KEY");
+        ChatModel model;
+        if (apiKey == null && !ReplayModels.replaying()) {
+            System.out.println(" GEMINI_KEY absente : modèle simulé");
+            model = new StubChatModel(Duration.ofMillis(200), List.of(new MetricsChatModelListener()));
+        } else {
+            model = ReplayModels.chatModel(List.of(new MetricsChatModelListener()), () -> GoogleAiGeminiChatModel.builder()
+                    .apiKey(apiKey)
+                    .modelName("gemini-2.5-flash")
+                    .temperature(0.3)
+                    .listeners(List.of(new MetricsChatModelListener()))
+                    .build());
+        }
+
+        // Streaming : Gemini en direct (non rejouable), modèle simulé mot par mot sans GEMINI_KEY
+        StreamingChatModel streamingModel = apiKey == null
+                ? new StubStreamingChatModel(Duration.ofMillis(200), Duration.ofMillis(20), List.of(new MetricsChatModelListener()))
+                : GoogleAiGeminiStreamingChatModel.builder()
+                        .apiKey(apiKey)
+                        .modelName("gemini-2.5-flash")
+                        .temperature(0.3)
+                        .listeners(List.of(new MetricsChatModelListener()))
+                        .build();
+
+        String tavilyKey = System.getenv("TAVILY_KEY");
+        WebSearchEngine webEngine = tavilyKey == null && !ReplayModels.replaying()
+                ? new StubWebSearchEngine(Duration.ofMillis(300))
+                : ReplayModels.webSearchEngine(() -> TavilyWebSearchEngine.builder().apiKey(tavilyKey).build());
+
+        // Un seul modèle d'embeddings et un seul index pour toutes les requêtes
+        EmbeddingModel embeddingModel = EmbeddingModelProvider.get();
+        PersistentEmbeddingIndex index = PersistentEmbeddingIndex.defaults(embeddingModel);
+        EmbeddingStore<TextSegment> storeIA = EmbeddingStores.create();
+        index.load(resource("/rag.pdf"), storeIA);
+        EmbeddingStore<TextSegment> storeAutre = EmbeddingStores.create();
+        index.load(resource("/langchain4jj.pdf"), storeAutre);
+
+        // Les questions simultanées de toutes les sessions sont encodées ensemble (un embedAll par lot)
+        BatchingEmbeddingModel batchedEmbeddings = new BatchingEmbeddingModel(embeddingModel);
+        // ... et une seule fois par requête pour le cache sémantique, le routeur et le retriever
+        EmbeddingModel queryEmbeddings = new QueryEmbeddingCache(batchedEmbeddings);
+        // Contexte + mémoire de la session bornés en tokens (le prompt ne grossit plus à chaque tour)
+        TokenBudgetContentAggregator contextPacker = TokenBudgetContentAggregator.create();
+        // Un cache de réponses par assistant, vidé quand l'un des index qu'il interroge change
+        SemanticCache naifCache = new SemanticCache(queryEmbeddings).dependsOn(storeIA);
+        SemanticCache routageCache = new SemanticCache(queryEmbeddings).dependsOn(storeIA).dependsOn(storeAutre);
+        SemanticCache webCache = new SemanticCache(queryEmbeddings).dependsOn(storeIA);
+        ChatMemoryProvider naifMemories = memories();
+        ChatMemoryProvider routageMemories = memories();
+        ChatMemoryProvider webMemories = memories();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println(" " + batchedEmbeddings.stats());
+            System.out.println(" " + contextPacker.stats());
+            System.out.println(" naif — " + naifCache.stats());
+            System.out.println(" routage — " + routageCache.stats());
+            System.out.println(" web — " + webCache.stats());
+        }));
+
+        ContentRetriever retrieverIA = retriever(storeIA, queryEmbeddings);
+        ContentRetriever retrieverAutre = retriever(storeAutre, queryEmbeddings);
+
+        RetrievalAugmentor naifAugmentor = DefaultRetrievalAugmentor.builder()
+                .contentRetriever(retrieverIA)
+                .build();
+
+        Map<ContentRetriever, String> routeMap = Map.of(
+                retrieverIA, "Document sur le RAG, IA, embeddings, retrieval.",
+                retrieverAutre, "Document sur un sujet non-IA (général).");
+        RetrievalAugmentor routageAugmentor = DefaultRetrievalAugmentor.builder()
+                .queryRouter(new MeteredQueryRouter(ExemplarQueryRouter.builder()
+                        .embeddingModel(queryEmbeddings)
+                        .route(retrieverIA, routeMap.get(retrieverIA))
+                        .route(retrieverAutre, routeMap.get(retrieverAutre))
+                        .fallback(new LanguageModelQueryRouter(model, routeMap))
+                        .build()))
+                .contentAggregator(contextPacker)
+                .build();
+
+        ContentRetriever webRetriever = WebSearchContentRetriever.builder()
+                .webSearchEngine(new CachingWebSearchEngine(new MeteredWebSearchEngine(webEngine), Duration.ofMinutes(10), 10_000))
+                .maxResults(3)
+                .build();
+        RetrievalAugmentor webAugmentor = FanOutAugmentor.create(List.of(
+                new DeadlineContentRetriever("PDF", retrieverIA, Duration.ofMillis(500)),
+                new DeadlineContentRetriever("Web", webRetriever, Duration.ofSeconds(3))),
+                contextPacker);
+
+        RagServer server = new RagServer(Map.of(
+                "naif", new SemanticCacheSessionAssistant(
+                        sessionAssistant(model, naifMemories, naifAugmentor), naifMemories, naifCache),
+                "routage", new SemanticCacheSessionAssistant(
+                        sessionAssistant(model, routageMemories, routageAugmentor), routageMemories, routageCache),
+                "web", new SemanticCacheSessionAssistant(
+                        sessionAssistant(model, webMemories, webAugmentor), webMemories, webCache)),
+                Map.of(
+                        "naif", streamingSessionAssistant(streamingModel, naifMemories, naifAugmentor),
+                        "routage", streamingSessionAssistant(streamingModel, routageMemories, routageAugmentor),
+                        "web", streamingSessionAssistant(streamingModel, webMemories, webAugmentor)),
+                maxConcurrent, Duration.ofSeconds(2), maxSessions, sessionTtl);
+        server.start(port);
+        System.out.println(" Serveur RAG prêt sur http://localhost:" + port + "/chat/{naif|routage|web}");
+    }
+
+    private static SessionAssistant sessionAssistant(ChatModel model, ChatMemoryProvider memories,
+                                                     RetrievalAugmentor augmentor) {
+        return AiServices.builder(SessionAssistant.class)
+                .chatModel(model)
+                .chatMemoryProvider(memories)
+                .retrievalAugmentor(augmentor)
+                .build();
+    }
+
+    private static StreamingSessionAssistant streamingSessionAssistant(StreamingChatModel model, ChatMemoryProvider memories,
+                                                                       RetrievalAugmentor augmentor) {
+        return AiServices.builder(StreamingSessionAssistant.class)
+                .streamingChatModel(model)
+                .chatMemoryProvider(memories)
+                .retrievalAugmentor(augmentor)
+                .build();
+    }
+
+    public HttpServer start(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 1024);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/chat/", this::handle);
+        server.createContext("/metrics", RagServer::metrics);
+        server.start();
+        return server;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "POST attendu");
+                return;
+            }
+            String name = exchange.getRequestURI().getPath().substring("/chat/".length());
+            SessionAssistant assistant = assistants.get(name);
+            if (assistant == null) {
+                send(exchange, 404, "Assistant inconnu : " + name + " (" + String.join(", ", assistants.keySet()) + ")");
+                return;
+            }
+            String question = readBody(exchange.getRequestBody());
+            if (question == null || question.isBlank()) {
+                send(exchange, 400, "Question vide ou trop longue (" + MAX_QUESTION_BYTES + " octets max)");
+                return;
+            }
+            String sessionId = exchange.getRequestHeaders().getFirst("X-Session-Id");
+            if (sessionId == null || sessionId.isBlank()) {
+                answerWithoutMemory(exchange, name, assistant, question);
+                return;
+            }
+            exchange.getResponseHeaders().set("X-Session-Id", sessionId);
+
+            long deadline = System.nanoTime() + queueTimeoutNanos;
+            SessionRegistry.Session session = sessions.acquire(name, sessionId);
+            try {
+                // Verrou de session d'abord : une session bavarde attend son tour sans immobiliser de permis
+                if (!session.lock().tryLock(queueTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    send(exchange, 503, "Session occupée par une question précédente, réessayez");
+                    return;
+                }
+                try {
+                    answer(exchange, deadline, reply(exchange, name, assistant, sessionId, question));
+                } finally {
+                    session.lock().unlock();
+                }
+            } finally {
+                sessions.release(session);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            // Détail dans les logs du serveur seulement, pas dans la réponse au client
+            System.out.println(" Erreur : " + e);
+            if (exchange.getResponseCode() == -1) {
+                send(exchange, 500, "Erreur interne");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Sans X-Session-Id : mémoire temporaire, libérée dès la réponse envoyée
+    private void answerWithoutMemory(HttpExchange exchange, String name, SessionAssistant assistant, String question)
+            throws IOException, InterruptedException {
+        String memoryId = "anonyme-" + UUID.randomUUID();
+        try {
+            answer(exchange, System.nanoTime() + queueTimeoutNanos, reply(exchange, name, assistant, memoryId, question));
+        } finally {
+            evict(name, memoryId);
+        }
+    }
+
+    // Contre-pression : au-delà de maxConcurrent appels en cours on refuse plutôt que d'empiler
+    private void answer(HttpExchange exchange, long deadline, Reply reply)
+            throws IOException, InterruptedException {
+        if (!permits.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 503, "Serveur saturé, réessayez");
+            return;
+        }
+        try {
+            reply.send();
+        } finally {
+            permits.release();
+        }
+    }
+
+    private Reply reply(HttpExchange exchange, String name, SessionAssistant assistant, String memoryId, String question) {
+        StreamingSessionAssistant streaming = streamRequested(exchange) ? streamingAssistants.get(name) : null;
+        if (streaming == null) {
+            return () -> send(exchange, 200, assistant.chat(memoryId, question));
+        }
+        return () -> stream(exchange, assistant, streaming, memoryId, question);
+    }
+
+    // Réponse en chunks, envoyés au fil des tokens ; passe par le cache sémantique de l'assistant bloquant,
+    // dont un hit est envoyé d'un bloc
+    private static void stream(HttpExchange exchange, SessionAssistant assistant, StreamingSessionAssistant streaming,
+                               String memoryId, String question) throws IOException {
+        Supplier<String> call = () -> {
+            try {
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                return TokenStreamPrinter.collect(streaming.chat(memoryId, question), token -> {
+                    try {
+                        out.write(token.getBytes(StandardCharsets.UTF_8));
+                        out.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }).text();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        String answer;
+        try {
+            answer = assistant instanceof SemanticCacheSessionAssistant cached
+                    ? cached.chat(memoryId, question, call)
+                    : call.get();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (exchange.getResponseCode() == -1) {
+            send(exchange, 200, answer);
+        } else {
+            exchange.getResponseBody().close();
+        }
+    }
+
+    private static boolean streamRequested(HttpExchange exchange) {
+        String query = exchange.getRequestURI().getQuery();
+        return query != null && List.of(query.split("&")).contains("stream=true");
+    }
+
+    private void evict(String name, Object memoryId) {
+        assistants.get(name).evictChatMemory(memoryId);
+        StreamingSessionAssistant streaming = streamingAssistants.get(name);
+        if (streaming != null) {
+            streaming.evictChatMemory(memoryId);
+        }
+    }
+
+    public int activeSessions() {
+        return sessions.size();
+    }
+
+    private static void metrics(HttpExchange exchange) throws IOException {
+        try {
+            byte[] bytes = RagMetrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    static MessageWindowChatMemory memory(Object sessionId) {
+        return MessageWindowChatMemory.builder()
+                .id(sessionId)
+                .maxMessages(10)
+                .build();
+    }
+
+    // Mémoires d'un assistant sur un même store : une mémoire rouverte pour le même id
+    // (cf. SemanticCacheSessionAssistant) voit les mêmes messages que celle d'AiServices
+    static ChatMemoryProvider memories() {
+        ChatMemoryStore store = new InMemoryChatMemoryStore();
+        return sessionId -> MessageWindowChatMemory.builder()
+                .id(sessionId)
+                .maxMessages(10)
+                .chatMemoryStore(store)
+                .build();
+    }
+
+    private static ContentRetriever retriever(EmbeddingStore<TextSegment> store, EmbeddingModel embeddingModel) {
+        return EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(store)
+                .embeddingModel(embeddingModel)
+                .maxResults(2)
+                .minScore(0.5)
+                .build();
+    }
+
+    private static Path resource(String name) throws Exception {
+        URL resource = RagServer.class.getResource(name);
+        if (resource == null) {
+            throw new RuntimeException(" Fichier introuvable dans resources: " + name);
+        }
+        return Path.of(resource.toURI());
+    }
+
+    // null si le corps dépasse la taille maximale
+    private static String readBody(InputStream body) throws IOException {
+        byte[] bytes = body.readNBytes(MAX_QUESTION_BYTES + 1);
+        return bytes.length > MAX_QUESTION_BYTES ? null : new String(bytes, StandardCharsets.UTF_8).trim();
+    }
+
+    private interface Reply {
+        void send() throws IOException;
+    }
+
+    private static void send(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
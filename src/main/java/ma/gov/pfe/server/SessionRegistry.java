@@ -0,0 +1,95 @@
+package ma.gov.pfe.server;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Sessions ouvertes du serveur : verrou de conversation + dernière utilisation, bornées en nombre (LRU)
+// et en durée d'inactivité (TTL). Une session évincée libère son verrou et sa mémoire (onEvict).
+// Une session en cours d'utilisation (acquise, pas encore rendue) n'est jamais évincée.
+final class SessionRegistry {
+
+    private final int maxSessions;
+    private final long ttlNanos;
+    private final Consumer<Session> onEvict;
+
+    // Ordre d'accès : les sessions les moins récemment utilisées en tête
+    private final LinkedHashMap<String, Session> sessions = new LinkedHashMap<>(16, 0.75f, true);
+
+    SessionRegistry(int maxSessions, Duration ttl, Consumer<Session> onEvict) {
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("maxSessions doit être >= 1 : " + maxSessions);
+        }
+        this.maxSessions = maxSessions;
+        this.ttlNanos = ttl.toNanos();
+        this.onEvict = onEvict;
+    }
+
+    // À rendre par release() ; entre les deux la session ne peut pas être évincée
+    synchronized Session acquire(String assistant, String sessionId) {
+        long now = System.nanoTime();
+        evict(now);
+        Session session = sessions.computeIfAbsent(assistant + "/" + sessionId,
+                key -> new Session(assistant, sessionId));
+        session.users++;
+        session.lastUsed = now;
+        return session;
+    }
+
+    synchronized void release(Session session) {
+        session.users--;
+        session.lastUsed = System.nanoTime();
+        evict(session.lastUsed);
+    }
+
+    synchronized int size() {
+        return sessions.size();
+    }
+
+    // Sessions expirées, puis les plus anciennes au-delà de maxSessions (celles en cours sont sautées)
+    private void evict(long now) {
+        int excess = sessions.size() - maxSessions;
+        Iterator<Session> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            Session session = iterator.next();
+            boolean expired = now - session.lastUsed > ttlNanos;
+            if (!expired && excess <= 0) {
+                break;
+            }
+            if (session.users == 0) {
+                iterator.remove();
+                excess--;
+                onEvict.accept(session);
+            }
+        }
+    }
+
+    static final class Session {
+
+        private final String assistant;
+        private final String id;
+        private final ReentrantLock lock = new ReentrantLock();
+        private int users;
+        private long lastUsed;
+
+        private Session(String assistant, String id) {
+            this.assistant = assistant;
+            this.id = id;
+        }
+
+        String assistant() {
+            return assistant;
+        }
+
+        String id() {
+            return id;
+        }
+
+        // Une session = une conversation : ses messages sont traités dans l'ordre
+        ReentrantLock lock() {
+            return lock;
+        }
+    }
+}
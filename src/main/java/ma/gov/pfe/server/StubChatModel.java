@@ -0,0 +1,62 @@
+package ma.gov.pfe.server;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+
+import java.time.Duration;
+import java.util.List;
+
+// Modèle de chat local déterministe (remplace Gemini hors ligne) avec latence simulée
+public class StubChatModel implements ChatModel {
+
+    private final Duration latency;
+    private final List<ChatModelListener> listeners;
+
+    public StubChatModel(Duration latency) {
+        this(latency, List.of());
+    }
+
+    public StubChatModel(Duration latency, List<ChatModelListener> listeners) {
+        this.latency = latency;
+        this.listeners = List.copyOf(listeners);
+    }
+
+    @Override
+    public List<ChatModelListener> listeners() {
+        return listeners;
+    }
+
+    @Override
+    public ChatResponse doChat(ChatRequest chatRequest) {
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Appel interrompu", e);
+        }
+        return ChatResponse.builder()
+                .aiMessage(AiMessage.from(answer(chatRequest)))
+                .build();
+    }
+
+    static String answer(ChatRequest chatRequest) {
+        String question = lastUserText(chatRequest.messages());
+        int length = Math.min(question.length(), 80);
+        return "Réponse simulée (" + chatRequest.messages().size() + " messages) : "
+                + question.substring(0, length).replace('\n', ' ');
+    }
+
+    static String lastUserText(List<ChatMessage> messages) {
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (messages.get(i) instanceof UserMessage userMessage && userMessage.hasSingleText()) {
+                return userMessage.singleText();
+            }
+        }
+        return "";
+    }
+}
@@ -0,0 +1,57 @@
+package ma.gov.pfe.server;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+
+import java.time.Duration;
+import java.util.List;
+
+// Variante en streaming de StubChatModel : même réponse, envoyée mot par mot après la latence
+// simulée (le premier token arrive après latency, les suivants après tokenDelay chacun)
+public class StubStreamingChatModel implements StreamingChatModel {
+
+    private final Duration latency;
+    private final Duration tokenDelay;
+    private final List<ChatModelListener> listeners;
+
+    public StubStreamingChatModel(Duration latency, Duration tokenDelay) {
+        this(latency, tokenDelay, List.of());
+    }
+
+    public StubStreamingChatModel(Duration latency, Duration tokenDelay, List<ChatModelListener> listeners) {
+        this.latency = latency;
+        this.tokenDelay = tokenDelay;
+        this.listeners = List.copyOf(listeners);
+    }
+
+    @Override
+    public List<ChatModelListener> listeners() {
+        return listeners;
+    }
+
+    @Override
+    public void doChat(ChatRequest chatRequest, StreamingChatResponseHandler handler) {
+        String answer = StubChatModel.answer(chatRequest);
+        try {
+            Thread.sleep(latency);
+            String[] words = answer.split("(?<= )");
+            for (int i = 0; i < words.length; i++) {
+                if (i > 0) {
+                    Thread.sleep(tokenDelay);
+                }
+                handler.onPartialResponse(words[i]);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            handler.onError(new IllegalStateException("Appel interrompu", e));
+            return;
+        }
+        handler.onCompleteResponse(ChatResponse.builder()
+                .aiMessage(AiMessage.from(answer))
+                .build());
+    }
+}
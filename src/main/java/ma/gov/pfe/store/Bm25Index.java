@@ -0,0 +1,448 @@
+package ma.gov.pfe.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Index lexical BM25 en mémoire, rempli en même temps que le store d'embeddings (voir indexing()).
+// Listes de postings en tableaux int[] (document, fréquence) par terme, sans boxing. Aucun vecteur ici :
+// le score dense des candidats lexicaux est calculé par le store lui-même (FlatVectorStore.searchAmong).
+// Suppression logique (document marqué, df et longueur totale décomptés tout de suite) ; quand les
+// documents supprimés dépassent la moitié des lignes, l'index est compacté (postings, termes).
+public class Bm25Index {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int COMPACT_MIN_DELETED = 256;
+    private static final Pattern TOKEN = Pattern.compile("[\\p{L}\\p{N}_]+");
+    private static final Pattern CAMEL_CASE = Pattern.compile("(?<=\\p{Ll})(?=\\p{Lu})");
+    private static final Set<String> STOP_WORDS = Set.of(
+            "le", "la", "les", "un", "une", "des", "de", "du", "et", "ou", "en", "au", "aux", "est", "que", "qui",
+            "dans", "pour", "par", "sur", "avec", "ce", "cette", "il", "elle", "on", "se", "sa", "son", "ses", "ne", "pas",
+            "the", "a", "an", "of", "to", "and", "or", "in", "is", "are", "for", "with", "by", "it", "this", "that");
+
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private int[][] postingDocs = new int[1024][];
+    private int[][] postingFreqs = new int[1024][];
+    private int[] postingSizes = new int[1024];
+    // Documents vivants par terme (postingSizes compte aussi les supprimés jusqu'au compactage)
+    private int[] liveDf = new int[1024];
+
+    private final List<String> ids = new ArrayList<>();
+    private final List<TextSegment> segments = new ArrayList<>();
+    private final Map<String, Integer> docById = new HashMap<>();
+    private int[] docLengths = new int[1024];
+    private long totalLength;
+    private int docs;
+    private final BitSet deleted = new BitSet();
+    private int deletedCount;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Store qui transmet tout au délégué et indexe au passage les segments ajoutés / retirés
+    public EmbeddingStore<TextSegment> indexing(EmbeddingStore<TextSegment> delegate) {
+        return new IndexingStore(delegate);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Tokens : mots en minuscules, plus les parties des identifiants CamelCase (EmbeddingStore -> embedding, store)
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        Matcher matcher = TOKEN.matcher(text);
+        while (matcher.find()) {
+            String word = matcher.group();
+            addToken(tokens, word);
+            String[] parts = CAMEL_CASE.split(word);
+            if (parts.length > 1) {
+                for (String part : parts) {
+                    addToken(tokens, part);
+                }
+            }
+        }
+        return tokens;
+    }
+
+    // Top-k BM25 ; score = score BM25 brut (non borné), sans embedding (seul le store a les vecteurs)
+    public List<EmbeddingMatch<TextSegment>> search(String query, int k) {
+        lock.readLock().lock();
+        try {
+            TopK top = bm25(query, k);
+            float[] scores = new float[top.size()];
+            int[] rows = top.drainDescending(scores);
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(rows.length);
+            for (int i = 0; i < rows.length; i++) {
+                matches.add(match(scores[i], rows[i]));
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Ids des k meilleurs documents BM25, du meilleur au moins bon ; vide si aucun terme de la requête n'est connu
+    public List<String> candidates(String query, int k) {
+        lock.readLock().lock();
+        try {
+            TopK top = bm25(query, k);
+            int[] rows = top.drainDescending(new float[top.size()]);
+            List<String> found = new ArrayList<>(rows.length);
+            for (int row : rows) {
+                found.add(ids.get(row));
+            }
+            return found;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Appelé sous verrou de lecture. Accumulateur dense float[docs] : une seule allocation par requête.
+    private TopK bm25(String query, int k) {
+        TopK top = new TopK(Math.max(1, k));
+        if (docs == 0) {
+            return top;
+        }
+        float[] scores = new float[docs];
+        int[] touched = new int[64];
+        int touchedCount = 0;
+        int live = docById.size();
+        float averageLength = (float) totalLength / Math.max(1, live);
+
+        for (String token : new LinkedHashSet<>(tokenize(query))) {
+            Integer termId = termIds.get(token);
+            if (termId == null) {
+                continue;
+            }
+            int[] postings = postingDocs[termId];
+            int[] freqs = postingFreqs[termId];
+            int df = liveDf[termId];
+            if (df == 0) {
+                continue;
+            }
+            float idf = (float) Math.log(1 + (Math.max(0, live - df) + 0.5) / (df + 0.5));
+            int size = postingSizes[termId];
+            for (int p = 0; p < size; p++) {
+                int doc = postings[p];
+                if (deleted.get(doc)) {
+                    continue;
+                }
+                float tf = freqs[p];
+                float norm = K1 * (1 - B + B * docLengths[doc] / averageLength);
+                if (scores[doc] == 0) {
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
+                    }
+                    touched[touchedCount++] = doc;
+                }
+                scores[doc] += idf * tf * (K1 + 1) / (tf + norm);
+            }
+        }
+        for (int i = 0; i < touchedCount; i++) {
+            top.offer(scores[touched[i]], touched[i]);
+        }
+        return top;
+    }
+
+    private EmbeddingMatch<TextSegment> match(float score, int row) {
+        return new EmbeddingMatch<>((double) score, ids.get(row), null, segments.get(row));
+    }
+
+    private void add(String id, TextSegment segment) {
+        if (segment == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            Integer previous = docById.remove(id);
+            if (previous != null) {
+                markDeleted(previous);
+            }
+            int doc = docs++;
+            ensureDocCapacity(doc + 1);
+            ids.add(id);
+            segments.add(segment);
+            docById.put(id, doc);
+
+            Map<String, Integer> frequencies = new HashMap<>();
+            List<String> tokens = tokenize(segment.text());
+            for (String token : tokens) {
+                frequencies.merge(token, 1, Integer::sum);
+            }
+            docLengths[doc] = tokens.size();
+            totalLength += tokens.size();
+            for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+                int termId = termId(entry.getKey());
+                addPosting(termId, doc, entry.getValue());
+                liveDf[termId]++;
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void delete(Collection<String> removed) {
+        lock.writeLock().lock();
+        try {
+            for (String id : removed) {
+                Integer doc = docById.remove(id);
+                if (doc != null) {
+                    markDeleted(doc);
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Sous verrou d'écriture. Les postings restent jusqu'au compactage, le texte est libéré tout de suite.
+    private void markDeleted(int doc) {
+        deleted.set(doc);
+        deletedCount++;
+        totalLength -= docLengths[doc];
+        for (String token : new HashSet<>(tokenize(segments.get(doc).text()))) {
+            liveDf[termIds.get(token)]--;
+        }
+        ids.set(doc, null);
+        segments.set(doc, null);
+    }
+
+    private void compactIfNeeded() {
+        if (deletedCount >= COMPACT_MIN_DELETED && deletedCount * 2 >= docs) {
+            compact();
+        }
+    }
+
+    // Renumérote les documents vivants (ordre conservé) et reconstruit les postings sans les supprimés ;
+    // les termes qui n'apparaissent plus que dans des documents supprimés disparaissent
+    private void compact() {
+        int[] remap = new int[docs];
+        int live = 0;
+        for (int doc = 0; doc < docs; doc++) {
+            if (deleted.get(doc)) {
+                remap[doc] = -1;
+                continue;
+            }
+            remap[doc] = live;
+            if (live != doc) {
+                ids.set(live, ids.get(doc));
+                segments.set(live, segments.get(doc));
+                docLengths[live] = docLengths[doc];
+                docById.put(ids.get(live), live);
+            }
+            live++;
+        }
+        ids.subList(live, docs).clear();
+        segments.subList(live, docs).clear();
+        docLengths = Arrays.copyOf(docLengths, Math.max(1024, live));
+
+        Map<String, Integer> oldTermIds = new HashMap<>(termIds);
+        int[][] oldDocs = postingDocs;
+        int[][] oldFreqs = postingFreqs;
+        int[] oldSizes = postingSizes;
+        termIds.clear();
+        int termCapacity = Math.max(1024, oldTermIds.size());
+        postingDocs = new int[termCapacity][];
+        postingFreqs = new int[termCapacity][];
+        postingSizes = new int[termCapacity];
+        liveDf = new int[termCapacity];
+        for (Map.Entry<String, Integer> entry : oldTermIds.entrySet()) {
+            int old = entry.getValue();
+            int[] docsOfTerm = oldDocs[old];
+            int[] freqs = oldFreqs[old];
+            int kept = 0;
+            for (int p = 0; p < oldSizes[old]; p++) {
+                int doc = remap[docsOfTerm[p]];
+                if (doc >= 0) {
+                    docsOfTerm[kept] = doc;
+                    freqs[kept] = freqs[p];
+                    kept++;
+                }
+            }
+            if (kept == 0) {
+                continue;
+            }
+            int termId = termIds.size();
+            termIds.put(entry.getKey(), termId);
+            postingDocs[termId] = Arrays.copyOf(docsOfTerm, Math.max(4, kept));
+            postingFreqs[termId] = Arrays.copyOf(freqs, Math.max(4, kept));
+            postingSizes[termId] = kept;
+            liveDf[termId] = kept;
+        }
+        deleted.clear();
+        deletedCount = 0;
+        docs = live;
+    }
+
+    private void clear() {
+        lock.writeLock().lock();
+        try {
+            termIds.clear();
+            postingSizes = new int[1024];
+            postingDocs = new int[1024][];
+            postingFreqs = new int[1024][];
+            liveDf = new int[1024];
+            ids.clear();
+            segments.clear();
+            docById.clear();
+            deleted.clear();
+            deletedCount = 0;
+            docLengths = new int[1024];
+            docs = 0;
+            totalLength = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int termId(String term) {
+        Integer existing = termIds.get(term);
+        if (existing != null) {
+            return existing;
+        }
+        int id = termIds.size();
+        termIds.put(term, id);
+        if (id == postingSizes.length) {
+            postingSizes = Arrays.copyOf(postingSizes, id * 2);
+            postingDocs = Arrays.copyOf(postingDocs, id * 2);
+            postingFreqs = Arrays.copyOf(postingFreqs, id * 2);
+            liveDf = Arrays.copyOf(liveDf, id * 2);
+        }
+        postingDocs[id] = new int[4];
+        postingFreqs[id] = new int[4];
+        return id;
+    }
+
+    private void addPosting(int termId, int doc, int frequency) {
+        int size = postingSizes[termId];
+        if (size == postingDocs[termId].length) {
+            postingDocs[termId] = Arrays.copyOf(postingDocs[termId], size * 2);
+            postingFreqs[termId] = Arrays.copyOf(postingFreqs[termId], size * 2);
+        }
+        postingDocs[termId][size] = doc;
+        postingFreqs[termId][size] = frequency;
+        postingSizes[termId] = size + 1;
+    }
+
+    private void ensureDocCapacity(int capacity) {
+        if (capacity > docLengths.length) {
+            docLengths = Arrays.copyOf(docLengths, Math.max(capacity, docLengths.length * 2));
+        }
+    }
+
+    private static void addToken(List<String> tokens, String word) {
+        String token = word.toLowerCase(Locale.ROOT);
+        if (token.length() > 1 && !STOP_WORDS.contains(token)) {
+            tokens.add(token);
+        }
+    }
+
+    private final class IndexingStore implements EmbeddingStore<TextSegment> {
+
+        private final EmbeddingStore<TextSegment> delegate;
+
+        IndexingStore(EmbeddingStore<TextSegment> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+            return delegate.search(request);
+        }
+
+        @Override
+        public String add(Embedding embedding) {
+            return delegate.add(embedding);
+        }
+
+        @Override
+        public void add(String id, Embedding embedding) {
+            delegate.add(id, embedding);
+        }
+
+        @Override
+        public String add(Embedding embedding, TextSegment segment) {
+            String id = delegate.add(embedding, segment);
+            Bm25Index.this.add(id, segment);
+            return id;
+        }
+
+        @Override
+        public List<String> addAll(List<Embedding> embeddings) {
+            return delegate.addAll(embeddings);
+        }
+
+        @Override
+        public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+            List<String> newIds = FlatVectorStore.randomIds(embeddings.size());
+            addAll(newIds, embeddings, embedded);
+            return newIds;
+        }
+
+        @Override
+        public void addAll(List<String> newIds, List<Embedding> embeddings, List<TextSegment> embedded) {
+            delegate.addAll(newIds, embeddings, embedded);
+            if (embedded != null) {
+                for (int i = 0; i < newIds.size(); i++) {
+                    Bm25Index.this.add(newIds.get(i), embedded.get(i));
+                }
+            }
+        }
+
+        @Override
+        public void removeAll(Collection<String> removed) {
+            delegate.removeAll(removed);
+            delete(removed);
+        }
+
+        @Override
+        public void removeAll(Filter filter) {
+            delegate.removeAll(filter);
+            lock.writeLock().lock();
+            try {
+                List<String> matching = new ArrayList<>();
+                for (Map.Entry<String, Integer> entry : docById.entrySet()) {
+                    if (filter.test(segments.get(entry.getValue()).metadata())) {
+                        matching.add(entry.getKey());
+                    }
+                }
+                delete(matching);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public void removeAll() {
+            delegate.removeAll();
+            clear();
+        }
+    }
+}
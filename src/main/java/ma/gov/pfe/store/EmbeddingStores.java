@@ -0,0 +1,42 @@
+package ma.gov.pfe.store;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import ma.gov.pfe.metrics.MeteredEmbeddingStore;
+
+import java.util.Locale;
+import java.util.function.LongSupplier;
+
+// Choix du store utilisé par les tests : -Drag.store=flat (défaut) | int8 | binary | hnsw
+public final class EmbeddingStores {
+
+    private EmbeddingStores() {
+    }
+
+    // Store instrumenté (durée des recherches, segments renvoyés)
+    public static EmbeddingStore<TextSegment> create() {
+        return new MeteredEmbeddingStore(create(System.getProperty("rag.store", "flat")));
+    }
+
+    // Change à chaque ajout ou suppression dans ce store s'il a été créé par create() (constante sinon) :
+    // sert à invalider les caches de réponses (SemanticCache) quand l'index évolue, par exemple sous IncrementalIndexer
+    public static LongSupplier version(EmbeddingStore<TextSegment> store) {
+        return store instanceof MeteredEmbeddingStore metered ? metered::version : () -> 0;
+    }
+
+    // FlatVectorStore derrière store (instrumenté ou non), null pour un autre type de store
+    public static FlatVectorStore flat(EmbeddingStore<TextSegment> store) {
+        EmbeddingStore<TextSegment> inner = store instanceof MeteredEmbeddingStore metered ? metered.delegate() : store;
+        return inner instanceof FlatVectorStore flat ? flat : null;
+    }
+
+    public static EmbeddingStore<TextSegment> create(String mode) {
+        return switch (mode.toLowerCase(Locale.ROOT)) {
+            case "flat" -> new FlatVectorStore();
+            case "int8" -> new QuantizedEmbeddingStore(QuantizedEmbeddingStore.Mode.INT8);
+            case "binary" -> new QuantizedEmbeddingStore(QuantizedEmbeddingStore.Mode.BINARY);
+            case "hnsw" -> new HnswEmbeddingStore();
+            default -> throw new IllegalArgumentException("rag.store inconnu : " + mode + " (flat, int8, binary, hnsw)");
+        };
+    }
+}
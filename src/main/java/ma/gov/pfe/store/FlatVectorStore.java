@@ -0,0 +1,330 @@
+package ma.gov.pfe.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Store exact "à plat" : vecteurs normalisés rangés bout à bout hors du tas (blocs directs),
+// recherche = produits scalaires SIMD + tas top-k borné. Remplace InMemoryEmbeddingStore.
+// Une ligne supprimée ou remplacée (même id) est seulement marquée ; quand les lignes mortes dépassent
+// les vivantes, les lignes sont recopiées bout à bout et les blocs en trop libérés (compact()).
+public class FlatVectorStore implements EmbeddingStore<TextSegment> {
+
+    public static final int MINILM_DIMENSION = 384;
+
+    private static final int BLOCK_ROWS = 4096;
+    // Lignes copiées à la fois du bloc hors tas vers un tableau pour le calcul SIMD
+    private static final int TILE_ROWS = 32;
+    private static final int MIN_TOMBSTONES_TO_COMPACT = 1_024;
+
+    private final int dimension;
+    private final List<FloatBuffer> blocks = new ArrayList<>();
+    private final List<String> ids = new ArrayList<>();
+    private final List<TextSegment> segments = new ArrayList<>();
+    private final Map<String, Integer> rowById = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int rows;
+    private int tombstones;
+
+    public FlatVectorStore() {
+        this(MINILM_DIMENSION);
+    }
+
+    public FlatVectorStore(int dimension) {
+        this.dimension = dimension;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(segment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> newIds = randomIds(embeddings.size());
+        addAll(newIds, embeddings, null);
+        return newIds;
+    }
+
+    @Override
+    public void addAll(List<String> newIds, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (newIds.size() != embeddings.size() || (embedded != null && embedded.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings et segments doivent avoir la même taille");
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < embeddings.size(); i++) {
+                float[] vector = embeddings.get(i).vector().clone();
+                if (vector.length != dimension) {
+                    throw new IllegalArgumentException("dimension " + vector.length + " au lieu de " + dimension);
+                }
+                VectorMath.normalize(vector);
+
+                String id = newIds.get(i);
+                Integer previous = rowById.get(id);
+                if (previous != null) {
+                    delete(previous);
+                }
+                int row = rows++;
+                if (row / BLOCK_ROWS == blocks.size()) {
+                    blocks.add(ByteBuffer.allocateDirect(BLOCK_ROWS * dimension * Float.BYTES)
+                            .order(ByteOrder.nativeOrder())
+                            .asFloatBuffer());
+                }
+                blocks.get(row / BLOCK_ROWS).put((row % BLOCK_ROWS) * dimension, vector);
+                ids.add(id);
+                segments.add(embedded == null ? null : embedded.get(i));
+                rowById.put(id, row);
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> idsToRemove) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idsToRemove) {
+                Integer row = rowById.remove(id);
+                if (row != null) {
+                    delete(row);
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        lock.writeLock().lock();
+        try {
+            for (int row = 0; row < rows; row++) {
+                TextSegment segment = segments.get(row);
+                if (!deleted.get(row) && segment != null && filter.test(segment.metadata())) {
+                    rowById.remove(ids.get(row));
+                    delete(row);
+                }
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        lock.writeLock().lock();
+        try {
+            blocks.clear();
+            ids.clear();
+            segments.clear();
+            rowById.clear();
+            deleted.clear();
+            rows = 0;
+            tombstones = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] query = request.queryEmbedding().vector().clone();
+        VectorMath.normalize(query);
+        float minCosine = VectorMath.cosineThreshold(request.minScore());
+        Filter filter = request.filter();
+        TopK top = new TopK(request.maxResults());
+        float[] tile = new float[TILE_ROWS * dimension];
+
+        lock.readLock().lock();
+        try {
+            for (int start = 0; start < rows; start += TILE_ROWS) {
+                int count = Math.min(TILE_ROWS, rows - start);
+                // Une tuile ne traverse jamais deux blocs : BLOCK_ROWS est un multiple de TILE_ROWS
+                blocks.get(start / BLOCK_ROWS).get((start % BLOCK_ROWS) * dimension, tile, 0, count * dimension);
+                for (int r = 0; r < count; r++) {
+                    int row = start + r;
+                    if (deleted.get(row)) {
+                        continue;
+                    }
+                    float cosine = VectorMath.dot(query, 0, tile, r * dimension, dimension);
+                    if (cosine < minCosine || cosine <= top.threshold()) {
+                        continue;
+                    }
+                    if (filter != null && !matches(filter, segments.get(row))) {
+                        continue;
+                    }
+                    top.offer(cosine, row);
+                }
+            }
+            return new EmbeddingSearchResult<>(toMatches(top));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Recherche limitée à des ids connus d'avance (candidats d'un index lexical, cf. HybridContentRetriever) :
+    // un produit scalaire par candidat au lieu d'un balayage. Ids inconnus ou supprimés ignorés.
+    public EmbeddingSearchResult<TextSegment> searchAmong(Collection<String> candidateIds, EmbeddingSearchRequest request) {
+        float[] query = request.queryEmbedding().vector().clone();
+        VectorMath.normalize(query);
+        float minCosine = VectorMath.cosineThreshold(request.minScore());
+        Filter filter = request.filter();
+        TopK top = new TopK(request.maxResults());
+        float[] vector = new float[dimension];
+
+        lock.readLock().lock();
+        try {
+            for (String id : candidateIds) {
+                Integer row = rowById.get(id);
+                if (row == null) {
+                    continue;
+                }
+                blocks.get(row / BLOCK_ROWS).get((row % BLOCK_ROWS) * dimension, vector);
+                float cosine = VectorMath.dot(query, 0, vector, 0, dimension);
+                if (cosine < minCosine || cosine <= top.threshold()) {
+                    continue;
+                }
+                if (filter != null && !matches(filter, segments.get(row))) {
+                    continue;
+                }
+                top.offer(cosine, row);
+            }
+            return new EmbeddingSearchResult<>(toMatches(top));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Recopie les lignes vivantes en tête, dans l'ordre ; recherches et écritures attendent la fin
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            int live = 0;
+            for (int row = 0; row < rows; row++) {
+                if (deleted.get(row)) {
+                    continue;
+                }
+                if (live != row) {
+                    float[] vector = vectorAt(row);
+                    blocks.get(live / BLOCK_ROWS).put((live % BLOCK_ROWS) * dimension, vector);
+                    ids.set(live, ids.get(row));
+                    segments.set(live, segments.get(row));
+                    rowById.put(ids.get(live), live);
+                }
+                live++;
+            }
+            ids.subList(live, rows).clear();
+            segments.subList(live, rows).clear();
+            int usedBlocks = (live + BLOCK_ROWS - 1) / BLOCK_ROWS;
+            blocks.subList(usedBlocks, blocks.size()).clear();
+            deleted.clear();
+            rows = live;
+            tombstones = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rowById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    static List<String> randomIds(int n) {
+        List<String> newIds = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            newIds.add(UUID.randomUUID().toString());
+        }
+        return newIds;
+    }
+
+    // Appelé sous le verrou d'écriture
+    private void delete(int row) {
+        deleted.set(row);
+        segments.set(row, null);
+        tombstones++;
+    }
+
+    private void compactIfNeeded() {
+        if (tombstones >= Math.max(MIN_TOMBSTONES_TO_COMPACT, rowById.size())) {
+            compact();
+        }
+    }
+
+    // Lignes occupées, mortes comprises (mesure de la place à récupérer)
+    int rows() {
+        lock.readLock().lock();
+        try {
+            return rows;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean matches(Filter filter, TextSegment segment) {
+        return segment != null && filter.test(segment.metadata());
+    }
+
+    private List<EmbeddingMatch<TextSegment>> toMatches(TopK top) {
+        float[] scores = new float[top.size()];
+        int[] best = top.drainDescending(scores);
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(best.length);
+        for (int i = 0; i < best.length; i++) {
+            int row = best[i];
+            matches.add(new EmbeddingMatch<>(VectorMath.relevance(scores[i]), ids.get(row),
+                    Embedding.from(vectorAt(row)), segments.get(row)));
+        }
+        return matches;
+    }
+
+    private float[] vectorAt(int row) {
+        float[] vector = new float[dimension];
+        blocks.get(row / BLOCK_ROWS).get((row % BLOCK_ROWS) * dimension, vector);
+        return vector;
+    }
+}
@@ -0,0 +1,602 @@
+package ma.gov.pfe.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import ma.gov.pfe.index.SegmentCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Index HNSW (graphe de proximité hiérarchique) en mémoire : recherche approchée en O(log n).
+// M = voisins par nœud, efConstruction / efSearch = largeur de la liste de candidats.
+// Insertions concurrentes possibles (verrou par nœud), suppression logique, sauvegarde sur disque.
+// Quand les nœuds supprimés dépassent les vivants, le graphe est reconstruit sans eux (compact()).
+public class HnswEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+    private static final int VERSION = 1;
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << 16;
+    // En dessous, les nœuds supprimés coûtent moins qu'une reconstruction
+    private static final int MIN_TOMBSTONES_TO_COMPACT = 1_024;
+
+    private final int dimension;
+    private final int m;
+    private final int maxLinksLevel0;
+    private final int efConstruction;
+    private volatile int efSearch;
+    private final double levelFactor;
+
+    private final AtomicReferenceArray<Node[]> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    private final AtomicInteger count = new AtomicInteger();
+    private final Map<String, Integer> nodeById = new ConcurrentHashMap<>();
+    private final AtomicInteger tombstones = new AtomicInteger();
+    // Lecture : recherches et insertions (concurrentes entre elles) ; écriture : reconstruction / vidage
+    private final ReentrantReadWriteLock graphLock = new ReentrantReadWriteLock();
+    private final Object entryLock = new Object();
+    private volatile int entryPoint = -1;
+    private volatile int maxLevel = -1;
+
+    public HnswEmbeddingStore() {
+        this(FlatVectorStore.MINILM_DIMENSION, 16, 200, 64);
+    }
+
+    public HnswEmbeddingStore(int dimension, int m, int efConstruction, int efSearch) {
+        if (m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("m >= 2, efConstruction >= 1 et efSearch >= 1 attendus");
+        }
+        this.dimension = dimension;
+        this.m = m;
+        this.maxLinksLevel0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelFactor = 1 / Math.log(m);
+    }
+
+    // Réglable à chaud : plus grand = meilleur rappel, plus lent
+    public void efSearch(int efSearch) {
+        if (efSearch < 1) {
+            throw new IllegalArgumentException("efSearch doit être >= 1 : " + efSearch);
+        }
+        this.efSearch = efSearch;
+    }
+
+    public int size() {
+        return nodeById.size();
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        insert(id, embedding.vector(), null);
+        compactIfNeeded();
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        insert(id, embedding.vector(), segment);
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = FlatVectorStore.randomIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (ids.size() != embeddings.size() || (embedded != null && embedded.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings et segments doivent avoir la même taille");
+        }
+        for (int i = 0; i < embeddings.size(); i++) {
+            insert(ids.get(i), embeddings.get(i).vector(), embedded == null ? null : embedded.get(i));
+        }
+        compactIfNeeded();
+    }
+
+    // Les nœuds supprimés restent dans le graphe pour la navigation mais ne sont plus renvoyés
+    // (jusqu'à la prochaine reconstruction)
+    @Override
+    public void removeAll(Collection<String> ids) {
+        graphLock.readLock().lock();
+        try {
+            for (String id : ids) {
+                Integer index = nodeById.remove(id);
+                if (index != null) {
+                    node(index).deleted = true;
+                    tombstones.incrementAndGet();
+                }
+            }
+        } finally {
+            graphLock.readLock().unlock();
+        }
+        compactIfNeeded();
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        graphLock.readLock().lock();
+        try {
+            int n = count.get();
+            for (int i = 0; i < n; i++) {
+                Node node = node(i);
+                if (node != null && !node.deleted && node.segment != null && filter.test(node.segment.metadata())
+                        && nodeById.remove(node.id, i)) {
+                    node.deleted = true;
+                    tombstones.incrementAndGet();
+                }
+            }
+        } finally {
+            graphLock.readLock().unlock();
+        }
+        compactIfNeeded();
+    }
+
+    // Vidage complet : le graphe repart de zéro
+    @Override
+    public void removeAll() {
+        graphLock.writeLock().lock();
+        try {
+            reset();
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+    }
+
+    // Reconstruit le graphe avec les seuls nœuds vivants ; recherches et insertions attendent la fin
+    public void compact() {
+        graphLock.writeLock().lock();
+        try {
+            int n = count.get();
+            List<Node> live = new ArrayList<>(nodeById.size());
+            for (int i = 0; i < n; i++) {
+                Node node = node(i);
+                if (node != null && !node.deleted) {
+                    live.add(node);
+                }
+            }
+            reset();
+            for (Node node : live) {
+                insert(node.id, node.vector, node.segment);
+            }
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (tombstones.get() >= Math.max(MIN_TOMBSTONES_TO_COMPACT, nodeById.size())) {
+            compact();
+        }
+    }
+
+    // Appelé sous le verrou d'écriture
+    private void reset() {
+        for (int c = 0; c < MAX_CHUNKS && chunks.get(c) != null; c++) {
+            chunks.set(c, null);
+        }
+        count.set(0);
+        nodeById.clear();
+        tombstones.set(0);
+        synchronized (entryLock) {
+            entryPoint = -1;
+            maxLevel = -1;
+        }
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        graphLock.readLock().lock();
+        try {
+            return searchGraph(request);
+        } finally {
+            graphLock.readLock().unlock();
+        }
+    }
+
+    private EmbeddingSearchResult<TextSegment> searchGraph(EmbeddingSearchRequest request) {
+        int entry = entryPoint;
+        if (entry < 0) {
+            return new EmbeddingSearchResult<>(List.of());
+        }
+        float[] query = request.queryEmbedding().vector().clone();
+        VectorMath.normalize(query);
+
+        int k = request.maxResults();
+        Filter filter = request.filter();
+        // Avec un filtre on élargit la recherche puisque des candidats seront écartés après coup
+        int ef = Math.max(efSearch, k) * (filter == null ? 1 : 4);
+
+        int current = entry;
+        for (int level = maxLevel; level > 0; level--) {
+            current = greedyClosest(query, current, level);
+        }
+        PriorityQueue<Candidate> found = searchLayer(query, current, ef, 0);
+
+        float minCosine = VectorMath.cosineThreshold(request.minScore());
+        List<Candidate> ordered = new ArrayList<>(found);
+        ordered.sort(Comparator.comparingDouble(Candidate::similarity).reversed());
+
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(k);
+        for (Candidate candidate : ordered) {
+            if (matches.size() == k || candidate.similarity() < minCosine) {
+                break;
+            }
+            Node node = node(candidate.node());
+            if (node.deleted || (filter != null && (node.segment == null || !filter.test(node.segment.metadata())))) {
+                continue;
+            }
+            matches.add(new EmbeddingMatch<>(VectorMath.relevance(candidate.similarity()), node.id,
+                    Embedding.from(node.vector.clone()), node.segment));
+        }
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    private void insert(String id, float[] source, TextSegment segment) {
+        if (source.length != dimension) {
+            throw new IllegalArgumentException("dimension " + source.length + " au lieu de " + dimension);
+        }
+        graphLock.readLock().lock();
+        try {
+            insertNode(id, source, segment);
+        } finally {
+            graphLock.readLock().unlock();
+        }
+    }
+
+    private void insertNode(String id, float[] source, TextSegment segment) {
+        float[] vector = source.clone();
+        VectorMath.normalize(vector);
+
+        int level = randomLevel();
+        int index = count.getAndIncrement();
+        Node node = new Node(id, vector, segment, level, m, maxLinksLevel0);
+        store(index, node);
+        Integer replaced = nodeById.put(id, index);
+        if (replaced != null) {
+            node(replaced).deleted = true;
+            tombstones.incrementAndGet();
+        }
+
+        int entry;
+        int topLevel;
+        synchronized (entryLock) {
+            if (entryPoint < 0) {
+                maxLevel = level;
+                entryPoint = index;
+                return;
+            }
+            entry = entryPoint;
+            topLevel = maxLevel;
+        }
+
+        int current = entry;
+        for (int l = topLevel; l > level; l--) {
+            current = greedyClosest(vector, current, l);
+        }
+        for (int l = Math.min(level, topLevel); l >= 0; l--) {
+            PriorityQueue<Candidate> candidates = searchLayer(vector, current, efConstruction, l);
+            int maxLinks = l == 0 ? maxLinksLevel0 : m;
+            List<Candidate> neighbours = closest(candidates, m);
+            synchronized (node) {
+                for (Candidate neighbour : neighbours) {
+                    node.link(l, neighbour.node());
+                }
+            }
+            for (Candidate neighbour : neighbours) {
+                connect(node(neighbour.node()), l, index, maxLinks);
+            }
+            current = neighbours.isEmpty() ? current : neighbours.get(0).node();
+        }
+
+        if (level > topLevel) {
+            synchronized (entryLock) {
+                if (level > maxLevel) {
+                    maxLevel = level;
+                    entryPoint = index;
+                }
+            }
+        }
+    }
+
+    // Ajoute le lien retour ; si la liste déborde on garde les plus proches du voisin
+    private void connect(Node neighbour, int level, int index, int maxLinks) {
+        synchronized (neighbour) {
+            if (neighbour.linkCount(level) < maxLinks) {
+                neighbour.link(level, index);
+                return;
+            }
+            PriorityQueue<Candidate> kept = new PriorityQueue<>(Comparator.comparingDouble(Candidate::similarity));
+            int[] links = neighbour.links(level);
+            for (int other : links) {
+                kept.add(new Candidate(similarity(neighbour.vector, other), other));
+            }
+            kept.add(new Candidate(similarity(neighbour.vector, index), index));
+            while (kept.size() > maxLinks) {
+                kept.poll();
+            }
+            neighbour.clearLinks(level);
+            for (Candidate candidate : kept) {
+                neighbour.link(level, candidate.node());
+            }
+        }
+    }
+
+    private int greedyClosest(float[] query, int start, int level) {
+        int current = start;
+        float best = similarity(query, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            Node node = node(current);
+            int[] links;
+            synchronized (node) {
+                links = node.links(level);
+            }
+            for (int other : links) {
+                float s = similarity(query, other);
+                if (s > best) {
+                    best = s;
+                    current = other;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Renvoie un tas-min (le pire en tête) des ef meilleurs nœuds trouvés sur la couche
+    private PriorityQueue<Candidate> searchLayer(float[] query, int start, int ef, int level) {
+        BitSet visited = new BitSet(count.get());
+        PriorityQueue<Candidate> toVisit = new PriorityQueue<>(Comparator.comparingDouble(Candidate::similarity).reversed());
+        PriorityQueue<Candidate> results = new PriorityQueue<>(Comparator.comparingDouble(Candidate::similarity));
+
+        Candidate first = new Candidate(similarity(query, start), start);
+        visited.set(start);
+        toVisit.add(first);
+        results.add(first);
+
+        while (!toVisit.isEmpty()) {
+            Candidate candidate = toVisit.poll();
+            if (results.size() >= ef && candidate.similarity() < results.peek().similarity()) {
+                break;
+            }
+            Node node = node(candidate.node());
+            int[] links;
+            synchronized (node) {
+                links = node.links(level);
+            }
+            for (int other : links) {
+                if (visited.get(other)) {
+                    continue;
+                }
+                visited.set(other);
+                float s = similarity(query, other);
+                if (results.size() < ef || s > results.peek().similarity()) {
+                    Candidate next = new Candidate(s, other);
+                    toVisit.add(next);
+                    results.add(next);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private static List<Candidate> closest(PriorityQueue<Candidate> candidates, int n) {
+        List<Candidate> ordered = new ArrayList<>(candidates);
+        ordered.sort(Comparator.comparingDouble(Candidate::similarity).reversed());
+        return ordered.size() > n ? ordered.subList(0, n) : ordered;
+    }
+
+    private float similarity(float[] query, int index) {
+        return VectorMath.dot(query, 0, node(index).vector, 0, dimension);
+    }
+
+    private int randomLevel() {
+        double u = 1.0 - ThreadLocalRandom.current().nextDouble();
+        return (int) (-Math.log(u) * levelFactor);
+    }
+
+    private Node node(int index) {
+        Node[] chunk = chunks.get(index >>> CHUNK_BITS);
+        return chunk == null ? null : chunk[index & (CHUNK_SIZE - 1)];
+    }
+
+    private void store(int index, Node node) {
+        int chunkIndex = index >>> CHUNK_BITS;
+        if (chunkIndex >= MAX_CHUNKS) {
+            throw new IllegalStateException("capacité HNSW dépassée : " + index);
+        }
+        Node[] chunk = chunks.get(chunkIndex);
+        if (chunk == null) {
+            chunks.compareAndSet(chunkIndex, null, new Node[CHUNK_SIZE]);
+            chunk = chunks.get(chunkIndex);
+        }
+        // Publication sûre : le nœud n'est visible des autres threads qu'à travers les liens, posés sous verrou
+        synchronized (node) {
+            chunk[index & (CHUNK_SIZE - 1)] = node;
+        }
+    }
+
+    // Sauvegarde du graphe complet. Verrou d'écriture : les insertions en cours (sous verrou de lecture)
+    // se terminent d'abord, le fichier ne contient donc ni nœud à moitié publié ni lien vers un nœud absent.
+    public void save(Path file) throws IOException {
+        graphLock.writeLock().lock();
+        try {
+            write(file);
+        } finally {
+            graphLock.writeLock().unlock();
+        }
+    }
+
+    private void write(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            int n = count.get();
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dimension);
+            out.writeInt(m);
+            out.writeInt(efConstruction);
+            out.writeInt(efSearch);
+            out.writeInt(n);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (int i = 0; i < n; i++) {
+                Node node = node(i);
+                synchronized (node) {
+                    SegmentCodec.writeString(out, node.id);
+                    out.writeBoolean(node.deleted);
+                    out.writeBoolean(node.segment != null);
+                    if (node.segment != null) {
+                        SegmentCodec.write(out, node.segment);
+                    }
+                    for (float v : node.vector) {
+                        out.writeFloat(v);
+                    }
+                    out.writeInt(node.level());
+                    for (int l = 0; l <= node.level(); l++) {
+                        int[] links = node.links(l);
+                        out.writeInt(links.length);
+                        for (int link : links) {
+                            out.writeInt(link);
+                        }
+                    }
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static HnswEmbeddingStore load(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalStateException("en-tête HNSW invalide " + file.getFileName());
+            }
+            HnswEmbeddingStore store = new HnswEmbeddingStore(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+            int n = in.readInt();
+            int entry = in.readInt();
+            int topLevel = in.readInt();
+            if (n < 0 || entry < -1 || entry >= n) {
+                throw new IllegalStateException("en-tête HNSW incohérent : " + n + " nœuds, entrée " + entry);
+            }
+            for (int i = 0; i < n; i++) {
+                String id = SegmentCodec.readString(in);
+                boolean deleted = in.readBoolean();
+                TextSegment segment = in.readBoolean() ? SegmentCodec.read(in) : null;
+                float[] vector = new float[store.dimension];
+                for (int d = 0; d < vector.length; d++) {
+                    vector[d] = in.readFloat();
+                }
+                int level = in.readInt();
+                Node node = new Node(id, vector, segment, level, store.m, store.maxLinksLevel0);
+                for (int l = 0; l <= level; l++) {
+                    int links = in.readInt();
+                    for (int j = 0; j < links; j++) {
+                        int link = in.readInt();
+                        if (link < 0 || link >= n) {
+                            throw new IllegalStateException("lien HNSW invalide " + link + " (" + n + " nœuds)");
+                        }
+                        node.link(l, link);
+                    }
+                }
+                node.deleted = deleted;
+                store.store(i, node);
+                if (deleted) {
+                    store.tombstones.incrementAndGet();
+                } else {
+                    store.nodeById.put(id, i);
+                }
+            }
+            store.count.set(n);
+            store.maxLevel = topLevel;
+            store.entryPoint = entry;
+            return store;
+        }
+    }
+
+    private record Candidate(float similarity, int node) {
+    }
+
+    private static final class Node {
+
+        final String id;
+        final float[] vector;
+        final TextSegment segment;
+        final int[][] links;
+        final int[] linkCounts;
+        volatile boolean deleted;
+
+        Node(String id, float[] vector, TextSegment segment, int level, int m, int maxLinksLevel0) {
+            this.id = id;
+            this.vector = vector;
+            this.segment = segment;
+            this.links = new int[level + 1][];
+            this.linkCounts = new int[level + 1];
+            for (int l = 0; l <= level; l++) {
+                links[l] = new int[l == 0 ? maxLinksLevel0 : m];
+            }
+        }
+
+        int level() {
+            return links.length - 1;
+        }
+
+        // Les méthodes suivantes s'appellent sous synchronized(this)
+        int[] links(int level) {
+            return level < links.length ? Arrays.copyOf(links[level], linkCounts[level]) : new int[0];
+        }
+
+        int linkCount(int level) {
+            return linkCounts[level];
+        }
+
+        void link(int level, int other) {
+            if (linkCounts[level] < links[level].length) {
+                links[level][linkCounts[level]++] = other;
+            }
+        }
+
+        void clearLinks(int level) {
+            linkCounts[level] = 0;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package ma.gov.pfe.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+// Rapport rappel / latence HNSW vs recherche exacte (FlatVectorStore) sur des vecteurs synthétiques.
+// Usage : HnswRecallReport [nbVecteurs=100000] [nbRequêtes=200] [k=3]
+public class HnswRecallReport {
+
+    private static final int[] M_VALUES = {8, 16, 32};
+    private static final int[] EF_CONSTRUCTION_VALUES = {100, 200};
+    private static final int[] EF_SEARCH_VALUES = {16, 32, 64, 128, 256};
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int dimension = FlatVectorStore.MINILM_DIMENSION;
+
+        Random random = new Random(42);
+        // Requêtes tirées autour des mêmes centres que le corpus (tous les groupes, pas seulement le premier)
+        float[][] centroids = centroids(size, dimension);
+        List<Embedding> corpus = clusteredVectors(random, centroids, size);
+        List<Embedding> queryVectors = clusteredVectors(random, centroids, queries);
+        List<String> ids = FlatVectorStore.randomIds(size);
+
+        FlatVectorStore exact = new FlatVectorStore(dimension);
+        exact.addAll(ids, corpus, null);
+        List<Set<String>> truth = new ArrayList<>(queries);
+        long[] exactLatencies = new long[queries];
+        for (int q = 0; q < queries; q++) {
+            long start = System.nanoTime();
+            truth.add(ids(exact, queryVectors.get(q), k));
+            exactLatencies[q] = System.nanoTime() - start;
+        }
+
+        System.out.printf(Locale.ROOT, "%d vecteurs, %d requêtes, k=%d, SIMD=%s%n", size, queries, k, VectorMath.SIMD);
+        System.out.printf(Locale.ROOT, "%-28s %10s %10s %10s %12s%n", "configuration", "rappel", "moy (µs)", "p99 (µs)", "build (s)");
+        System.out.printf(Locale.ROOT, "%-28s %10.4f %10.1f %10.1f %12s%n", "exact", 1.0, mean(exactLatencies), p99(exactLatencies), "-");
+
+        for (int m : M_VALUES) {
+            for (int efConstruction : EF_CONSTRUCTION_VALUES) {
+                HnswEmbeddingStore hnsw = new HnswEmbeddingStore(dimension, m, efConstruction, EF_SEARCH_VALUES[0]);
+                long buildStart = System.nanoTime();
+                // Insertions concurrentes, comme pendant l'ingestion
+                IntStream.range(0, size).parallel().forEach(i -> hnsw.add(ids.get(i), corpus.get(i)));
+                double buildSeconds = (System.nanoTime() - buildStart) / 1e9;
+
+                for (int efSearch : EF_SEARCH_VALUES) {
+                    hnsw.efSearch(efSearch);
+                    long[] latencies = new long[queries];
+                    double recall = 0;
+                    for (int q = 0; q < queries; q++) {
+                        long start = System.nanoTime();
+                        Set<String> found = ids(hnsw, queryVectors.get(q), k);
+                        latencies[q] = System.nanoTime() - start;
+                        found.retainAll(truth.get(q));
+                        recall += truth.get(q).isEmpty() ? 1 : (double) found.size() / truth.get(q).size();
+                    }
+                    String label = "M=" + m + " efC=" + efConstruction + " efS=" + efSearch;
+                    System.out.printf(Locale.ROOT, "%-28s %10.4f %10.1f %10.1f %12.1f%n",
+                            label, recall / queries, mean(latencies), p99(latencies), buildSeconds);
+                }
+            }
+        }
+    }
+
+    // Ids des k meilleurs résultats (rappel = intersection avec la vérité terrain)
+    static Set<String> ids(EmbeddingStore<TextSegment> store, Embedding query, int k) {
+        EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                .queryEmbedding(query)
+                .maxResults(k)
+                .minScore(0.0)
+                .build();
+        Set<String> ids = new HashSet<>();
+        for (EmbeddingMatch<TextSegment> match : store.search(request).matches()) {
+            ids.add(match.embeddingId());
+        }
+        return ids;
+    }
+
+    // Centres aléatoires, un pour 500 vecteurs du corpus (graine fixe : même jeu d'un rapport à l'autre)
+    static float[][] centroids(int corpusSize, int dimension) {
+        Random centres = new Random(7);
+        float[][] centroids = new float[Math.max(1, corpusSize / 500)][dimension];
+        for (float[] centroid : centroids) {
+            for (int d = 0; d < dimension; d++) {
+                centroid[d] = (float) centres.nextGaussian();
+            }
+        }
+        return centroids;
+    }
+
+    // Vecteurs groupés autour des centres donnés : plus proche de vrais embeddings que du bruit uniforme
+    static List<Embedding> clusteredVectors(Random random, float[][] centroids, int n) {
+        List<Embedding> vectors = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            float[] centroid = centroids[random.nextInt(centroids.length)];
+            float[] v = new float[centroid.length];
+            for (int d = 0; d < v.length; d++) {
+                v[d] = centroid[d] + 0.5f * (float) random.nextGaussian();
+            }
+            vectors.add(Embedding.from(v));
+        }
+        return vectors;
+    }
+
+    // Latences en nanosecondes -> microsecondes ; partagés par les autres rapports
+    public static double mean(long[] nanos) {
+        return Arrays.stream(nanos).average().orElse(0) / 1_000;
+    }
+
+    public static double p99(long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * 0.99) - 1)] / 1_000.0;
+    }
+}
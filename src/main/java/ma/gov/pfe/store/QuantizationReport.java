@@ -0,0 +1,56 @@
+package ma.gov.pfe.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+// Mémoire économisée et rappel perdu des modes int8 / binaire par rapport au store exact.
+// Usage : QuantizationReport [nbVecteurs=100000] [nbRequêtes=200] [k=3]
+public class QuantizationReport {
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        int dimension = FlatVectorStore.MINILM_DIMENSION;
+
+        // Même jeu que HnswRecallReport : corpus et requêtes groupés autour des mêmes centres. Sur du bruit
+        // isotrope les plus proches voisins ne se distinguent pas des autres et le rappel ne mesure rien.
+        Random random = new Random(42);
+        float[][] centroids = HnswRecallReport.centroids(size, dimension);
+        List<Embedding> corpus = HnswRecallReport.clusteredVectors(random, centroids, size);
+        List<Embedding> queryVectors = HnswRecallReport.clusteredVectors(random, centroids, queries);
+        List<String> ids = FlatVectorStore.randomIds(size);
+
+        FlatVectorStore exact = new FlatVectorStore(dimension);
+        exact.addAll(ids, corpus, null);
+        List<Set<String>> truth = new ArrayList<>(queries);
+        for (Embedding query : queryVectors) {
+            truth.add(HnswRecallReport.ids(exact, query, k));
+        }
+
+        System.out.printf(Locale.ROOT, "%d vecteurs, %d requêtes, k=%d%n", size, queries, k);
+        for (QuantizedEmbeddingStore.Mode mode : QuantizedEmbeddingStore.Mode.values()) {
+            try (QuantizedEmbeddingStore store = new QuantizedEmbeddingStore(mode)) {
+                store.addAll(ids, corpus, null);
+
+                double recall = 0;
+                long start = System.nanoTime();
+                for (int q = 0; q < queries; q++) {
+                    Set<String> found = HnswRecallReport.ids(store, queryVectors.get(q), k);
+                    found.retainAll(truth.get(q));
+                    recall += truth.get(q).isEmpty() ? 1 : (double) found.size() / truth.get(q).size();
+                }
+                double micros = (System.nanoTime() - start) / 1_000.0 / queries;
+
+                System.out.println(" " + store.memoryReport());
+                System.out.printf(Locale.ROOT, "   rappel@%d = %.4f (perte %.2f%%), %.1f µs / requête%n",
+                        k, recall / queries, 100 * (1 - recall / queries), micros);
+            }
+        }
+    }
+}
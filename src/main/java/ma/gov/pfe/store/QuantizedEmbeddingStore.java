@@ -0,0 +1,407 @@
+package ma.gov.pfe.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Store quantifié : la première passe parcourt des codes compacts (int8 ou 1 bit par dimension),
+// puis les meilleurs candidats sont re-classés avec les vecteurs float32 exacts.
+// Les vecteurs exacts vivent dans un fichier mappé : seules les pages re-classées restent résidentes.
+// close() ferme le fichier temporaire, qui est alors supprimé (DELETE_ON_CLOSE).
+public class QuantizedEmbeddingStore implements EmbeddingStore<TextSegment>, AutoCloseable {
+
+    public enum Mode {
+        INT8(4),
+        BINARY(10);
+
+        // Candidats gardés en première passe = k * suréchantillonnage
+        private final int oversampling;
+
+        Mode(int oversampling) {
+            this.oversampling = oversampling;
+        }
+    }
+
+    private static final int BLOCK_ROWS = 16384;
+
+    private final Mode mode;
+    private final int dimension;
+    private final int words;
+    private final int oversampling;
+
+    private byte[] int8Codes = new byte[0];
+    private float[] int8Scales = new float[0];
+    private long[] binaryCodes = new long[0];
+
+    private final FileChannel vectorFile;
+    private final List<FloatBuffer> vectorBlocks = new ArrayList<>();
+
+    private final List<String> ids = new ArrayList<>();
+    private final List<TextSegment> segments = new ArrayList<>();
+    private final Map<String, Integer> rowById = new HashMap<>();
+    private final BitSet deleted = new BitSet();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int rows;
+
+    public QuantizedEmbeddingStore(Mode mode) {
+        this(mode, FlatVectorStore.MINILM_DIMENSION, mode.oversampling);
+    }
+
+    public QuantizedEmbeddingStore(Mode mode, int dimension, int oversampling) {
+        if (oversampling < 1) {
+            throw new IllegalArgumentException("oversampling doit être >= 1 : " + oversampling);
+        }
+        this.mode = mode;
+        this.dimension = dimension;
+        this.words = (dimension + Long.SIZE - 1) / Long.SIZE;
+        this.oversampling = oversampling;
+        try {
+            Path file = Files.createTempFile("rag-vectors-", ".f32");
+            file.toFile().deleteOnExit();
+            this.vectorFile = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossible de créer le fichier de vecteurs", e);
+        }
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        addAll(List.of(id), List.of(embedding), null);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(segment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> newIds = FlatVectorStore.randomIds(embeddings.size());
+        addAll(newIds, embeddings, null);
+        return newIds;
+    }
+
+    @Override
+    public void addAll(List<String> newIds, List<Embedding> embeddings, List<TextSegment> embedded) {
+        if (newIds.size() != embeddings.size() || (embedded != null && embedded.size() != embeddings.size())) {
+            throw new IllegalArgumentException("ids, embeddings et segments doivent avoir la même taille");
+        }
+        lock.writeLock().lock();
+        try {
+            ensureCapacity(rows + embeddings.size());
+            for (int i = 0; i < embeddings.size(); i++) {
+                float[] vector = embeddings.get(i).vector().clone();
+                if (vector.length != dimension) {
+                    throw new IllegalArgumentException("dimension " + vector.length + " au lieu de " + dimension);
+                }
+                VectorMath.normalize(vector);
+
+                String id = newIds.get(i);
+                Integer previous = rowById.get(id);
+                if (previous != null) {
+                    deleted.set(previous);
+                    segments.set(previous, null);
+                }
+                int row = rows++;
+                encode(row, vector);
+                vectorBlock(row).put((row % BLOCK_ROWS) * dimension, vector);
+                ids.add(id);
+                segments.add(embedded == null ? null : embedded.get(i));
+                rowById.put(id, row);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> idsToRemove) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idsToRemove) {
+                Integer row = rowById.remove(id);
+                if (row != null) {
+                    deleted.set(row);
+                    segments.set(row, null);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        lock.writeLock().lock();
+        try {
+            for (int row = 0; row < rows; row++) {
+                TextSegment segment = segments.get(row);
+                if (!deleted.get(row) && segment != null && filter.test(segment.metadata())) {
+                    rowById.remove(ids.get(row));
+                    deleted.set(row);
+                    segments.set(row, null);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        lock.writeLock().lock();
+        try {
+            reset();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            reset();
+            vectorFile.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossible de fermer le fichier de vecteurs", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Repart de zéro : les lignes, les codes et les blocs mappés sont libérés, le fichier est tronqué
+    // (les anciens blocs ne sont plus référencés, donc plus jamais lus) ; appelé sous le verrou d'écriture
+    private void reset() {
+        ids.clear();
+        segments.clear();
+        rowById.clear();
+        deleted.clear();
+        rows = 0;
+        int8Codes = new byte[0];
+        int8Scales = new float[0];
+        binaryCodes = new long[0];
+        vectorBlocks.clear();
+        try {
+            if (vectorFile.isOpen()) {
+                vectorFile.truncate(0);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Impossible de vider le fichier de vecteurs", e);
+        }
+    }
+
+    // Lignes non supprimées dont le segment passe le filtre ; appelé sous le verrou de lecture
+    private BitSet eligibleRows(Filter filter) {
+        BitSet eligible = new BitSet(rows);
+        eligible.set(0, rows);
+        eligible.andNot(deleted);
+        if (filter != null) {
+            for (int row = eligible.nextSetBit(0); row >= 0; row = eligible.nextSetBit(row + 1)) {
+                TextSegment segment = segments.get(row);
+                if (segment == null || !filter.test(segment.metadata())) {
+                    eligible.clear(row);
+                }
+            }
+        }
+        return eligible;
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        float[] query = request.queryEmbedding().vector().clone();
+        VectorMath.normalize(query);
+        int k = request.maxResults();
+        Filter filter = request.filter();
+
+        lock.readLock().lock();
+        try {
+            // Passe 1 : codes compacts, sur les seules lignes vivantes qui passent le filtre
+            // (filtrer après coup laisserait moins de k résultats avec un filtre sélectif)
+            BitSet eligible = eligibleRows(filter);
+            TopK candidates = new TopK(k * oversampling);
+            if (mode == Mode.BINARY) {
+                long[] queryBits = new long[words];
+                binarize(query, queryBits, 0);
+                for (int row = eligible.nextSetBit(0); row >= 0; row = eligible.nextSetBit(row + 1)) {
+                    candidates.offer(-hamming(queryBits, row), row);
+                }
+            } else {
+                byte[] queryCodes = new byte[dimension];
+                float queryScale = quantize(query, queryCodes, 0);
+                for (int row = eligible.nextSetBit(0); row >= 0; row = eligible.nextSetBit(row + 1)) {
+                    candidates.offer(int8Dot(queryCodes, row) / (queryScale * int8Scales[row]), row);
+                }
+            }
+
+            // Passe 2 : re-classement exact (minScore sur le score exact)
+            float minCosine = VectorMath.cosineThreshold(request.minScore());
+            float[] ignored = new float[candidates.size()];
+            float[] vector = new float[dimension];
+            TopK top = new TopK(k);
+            for (int row : candidates.drainDescending(ignored)) {
+                vectorBlock(row).get((row % BLOCK_ROWS) * dimension, vector);
+                float cosine = VectorMath.dot(query, 0, vector, 0, dimension);
+                if (cosine >= minCosine) {
+                    top.offer(cosine, row);
+                }
+            }
+
+            float[] scores = new float[top.size()];
+            int[] best = top.drainDescending(scores);
+            List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(best.length);
+            for (int i = 0; i < best.length; i++) {
+                int row = best[i];
+                float[] exact = new float[dimension];
+                vectorBlock(row).get((row % BLOCK_ROWS) * dimension, exact);
+                matches.add(new EmbeddingMatch<>(VectorMath.relevance(scores[i]), ids.get(row),
+                        Embedding.from(exact), segments.get(row)));
+            }
+            return new EmbeddingSearchResult<>(matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rowById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Octets résidents parcourus en première passe
+    public long codeBytes() {
+        return mode == Mode.BINARY
+                ? (long) rows * words * Long.BYTES
+                : (long) rows * (dimension + Float.BYTES);
+    }
+
+    // Octets qu'occuperaient les mêmes vecteurs en float32 sur le tas
+    public long fullPrecisionBytes() {
+        return (long) rows * dimension * Float.BYTES;
+    }
+
+    public String memoryReport() {
+        long full = fullPrecisionBytes();
+        long codes = codeBytes();
+        return String.format(Locale.ROOT, "%s : %d vecteurs, codes %.1f Mo au lieu de %.1f Mo (%.1f%% économisés)",
+                mode, rows, codes / 1e6, full / 1e6, full == 0 ? 0 : 100.0 * (full - codes) / full);
+    }
+
+    private void encode(int row, float[] vector) {
+        if (mode == Mode.BINARY) {
+            binarize(vector, binaryCodes, row * words);
+        } else {
+            int8Scales[row] = quantize(vector, int8Codes, row * dimension);
+        }
+    }
+
+    // Quantification scalaire par vecteur : code = round(v * 127 / max|v|), renvoie l'échelle
+    private float quantize(float[] vector, byte[] codes, int offset) {
+        float max = 0;
+        for (float v : vector) {
+            max = Math.max(max, Math.abs(v));
+        }
+        float scale = max == 0 ? 1 : 127 / max;
+        for (int d = 0; d < dimension; d++) {
+            codes[offset + d] = (byte) Math.round(vector[d] * scale);
+        }
+        return scale;
+    }
+
+    private void binarize(float[] vector, long[] codes, int offset) {
+        Arrays.fill(codes, offset, offset + words, 0L);
+        for (int d = 0; d < dimension; d++) {
+            if (vector[d] > 0) {
+                codes[offset + d / Long.SIZE] |= 1L << (d % Long.SIZE);
+            }
+        }
+    }
+
+    private int int8Dot(byte[] query, int row) {
+        int offset = row * dimension;
+        int sum = 0;
+        for (int d = 0; d < dimension; d++) {
+            sum += query[d] * int8Codes[offset + d];
+        }
+        return sum;
+    }
+
+    private int hamming(long[] query, int row) {
+        int offset = row * words;
+        int distance = 0;
+        for (int w = 0; w < words; w++) {
+            distance += Long.bitCount(query[w] ^ binaryCodes[offset + w]);
+        }
+        return distance;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (mode == Mode.BINARY) {
+            if (binaryCodes.length < needed * words) {
+                binaryCodes = Arrays.copyOf(binaryCodes, Math.max(needed, 2 * rows) * words);
+            }
+        } else if (int8Scales.length < needed) {
+            int capacity = Math.max(needed, 2 * rows);
+            int8Codes = Arrays.copyOf(int8Codes, capacity * dimension);
+            int8Scales = Arrays.copyOf(int8Scales, capacity);
+        }
+    }
+
+    // Un bloc = une région du fichier mappée en lecture / écriture (le fichier grandit à la demande)
+    private FloatBuffer vectorBlock(int row) {
+        int block = row / BLOCK_ROWS;
+        while (vectorBlocks.size() <= block) {
+            long blockBytes = (long) BLOCK_ROWS * dimension * Float.BYTES;
+            try {
+                vectorBlocks.add(vectorFile.map(FileChannel.MapMode.READ_WRITE, vectorBlocks.size() * blockBytes, blockBytes)
+                        .order(ByteOrder.nativeOrder())
+                        .asFloatBuffer());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Impossible de mapper le fichier de vecteurs", e);
+            }
+        }
+        return vectorBlocks.get(block);
+    }
+}
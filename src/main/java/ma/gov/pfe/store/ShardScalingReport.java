@@ -0,0 +1,80 @@
+package ma.gov.pfe.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.MetadataFilterBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Latence de recherche du ShardedEmbeddingStore selon le nombre de shards et de threads du pool,
+// avec et sans filtre sur la collection (un seul shard visité).
+// Usage : ShardScalingReport [nbVecteurs=200000] [nbRequêtes=200] [k=5]
+public class ShardScalingReport {
+
+    private static final int[] SHARD_COUNTS = {1, 2, 4, 8, 16};
+    private static final int COLLECTIONS = 64;
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int k = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int dimension = FlatVectorStore.MINILM_DIMENSION;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        Random random = new Random(42);
+        float[][] centroids = HnswRecallReport.centroids(size, dimension);
+        List<Embedding> corpus = HnswRecallReport.clusteredVectors(random, centroids, size);
+        List<Embedding> queryVectors = HnswRecallReport.clusteredVectors(random, centroids, queries);
+        List<String> ids = FlatVectorStore.randomIds(size);
+        List<TextSegment> segments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            segments.add(TextSegment.from("segment " + i, Metadata.from("collection", "c" + (i % COLLECTIONS))));
+        }
+        Filter oneCollection = MetadataFilterBuilder.metadataKey("collection").isEqualTo("c7");
+
+        System.out.printf(Locale.ROOT, "%d vecteurs, %d requêtes, k=%d, %d cœurs, SIMD=%s%n", size, queries, k, cores, VectorMath.SIMD);
+        System.out.printf(Locale.ROOT, "%-8s %-8s %12s %12s %12s %14s%n",
+                "shards", "threads", "moy (µs)", "p99 (µs)", "req/s", "filtré (µs)");
+
+        for (int shardCount : SHARD_COUNTS) {
+            ShardedEmbeddingStore store = new ShardedEmbeddingStore(shardCount, () -> new FlatVectorStore(dimension), "collection");
+            store.addAll(ids, corpus, segments);
+
+            for (int threads = 1; threads <= cores; threads *= 2) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                store.pool(pool);
+                // Une passe à blanc pour le JIT
+                measure(store, queryVectors, k, null);
+                long[] latencies = measure(store, queryVectors, k, null);
+                long[] filtered = measure(store, queryVectors, k, oneCollection);
+                double mean = HnswRecallReport.mean(latencies);
+                System.out.printf(Locale.ROOT, "%-8d %-8d %12.1f %12.1f %12.0f %14.1f%n",
+                        shardCount, threads, mean, HnswRecallReport.p99(latencies), 1e6 / mean, HnswRecallReport.mean(filtered));
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static long[] measure(ShardedEmbeddingStore store, List<Embedding> queries, int k, Filter filter) {
+        long[] latencies = new long[queries.size()];
+        for (int q = 0; q < queries.size(); q++) {
+            EmbeddingSearchRequest request = EmbeddingSearchRequest.builder()
+                    .queryEmbedding(queries.get(q))
+                    .maxResults(k)
+                    .minScore(0.0)
+                    .filter(filter)
+                    .build();
+            long start = System.nanoTime();
+            store.search(request);
+            latencies[q] = System.nanoTime() - start;
+        }
+        return latencies;
+    }
+}
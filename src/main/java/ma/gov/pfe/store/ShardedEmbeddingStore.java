@@ -0,0 +1,262 @@
+package ma.gov.pfe.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import dev.langchain4j.store.embedding.filter.logical.Or;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+// Store réparti sur N shards. Un segment va dans le shard de sa clé de métadonnée (ex. "collection",
+// "file_name") ou, à défaut, de son id. Recherche : un top-k par shard en parallèle sur un ForkJoinPool,
+// puis fusion par un tas de taille k. Un filtre sur la clé de partition ne visite que les shards concernés.
+public class ShardedEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private static final Comparator<EmbeddingMatch<TextSegment>> BY_SCORE = Comparator.comparingDouble(EmbeddingMatch::score);
+
+    private final List<EmbeddingStore<TextSegment>> shards;
+    private final String shardKey;
+    private final Map<String, Integer> shardById = new ConcurrentHashMap<>();
+    private volatile ForkJoinPool pool;
+
+    public ShardedEmbeddingStore(int shardCount, Supplier<EmbeddingStore<TextSegment>> shardFactory) {
+        this(shardCount, shardFactory, null);
+    }
+
+    // shardKey : métadonnée qui décide du shard (null = répartition par id)
+    public ShardedEmbeddingStore(int shardCount, Supplier<EmbeddingStore<TextSegment>> shardFactory, String shardKey) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount doit être >= 1 : " + shardCount);
+        }
+        this.shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(shardFactory.get());
+        }
+        this.shardKey = shardKey;
+        this.pool = ForkJoinPool.commonPool();
+    }
+
+    // Pool utilisé pour les recherches (par défaut le pool commun)
+    public void pool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        BitSet candidates = candidates(request.filter());
+        int k = request.maxResults();
+        if (candidates.isEmpty()) {
+            return new EmbeddingSearchResult<>(List.of());
+        }
+        if (candidates.cardinality() == 1) {
+            return shards.get(candidates.nextSetBit(0)).search(request);
+        }
+
+        List<ForkJoinTask<EmbeddingSearchResult<TextSegment>>> tasks = new ArrayList<>(candidates.cardinality());
+        for (int shard = candidates.nextSetBit(0); shard >= 0; shard = candidates.nextSetBit(shard + 1)) {
+            EmbeddingStore<TextSegment> store = shards.get(shard);
+            tasks.add(pool.submit(() -> store.search(request)));
+        }
+
+        // Tas min de taille k : la racine est le plus faible des k meilleurs retenus
+        PriorityQueue<EmbeddingMatch<TextSegment>> top = new PriorityQueue<>(k + 1, BY_SCORE);
+        for (ForkJoinTask<EmbeddingSearchResult<TextSegment>> task : tasks) {
+            for (EmbeddingMatch<TextSegment> match : task.join().matches()) {
+                if (top.size() < k) {
+                    top.add(match);
+                } else if (match.score() > top.peek().score()) {
+                    top.poll();
+                    top.add(match);
+                } else {
+                    break; // résultats d'un shard triés par score décroissant
+                }
+            }
+        }
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(top);
+        matches.sort(BY_SCORE.reversed());
+        return new EmbeddingSearchResult<>(matches);
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        String id = UUID.randomUUID().toString();
+        add(id, embedding);
+        return id;
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        int shard = shardOf(id, null);
+        Integer previous = shardById.get(id);
+        if (previous != null && previous != shard) {
+            shards.get(previous).removeAll(List.of(id));
+        }
+        shards.get(shard).add(id, embedding);
+        shardById.put(id, shard);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        String id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(segment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        List<String> ids = FlatVectorStore.randomIds(embeddings.size());
+        addAll(ids, embeddings, null);
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+        int n = shards.size();
+        List<List<String>> shardIds = new ArrayList<>(n);
+        List<List<Embedding>> shardEmbeddings = new ArrayList<>(n);
+        List<List<TextSegment>> shardSegments = new ArrayList<>(n);
+        List<List<String>> moved = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            shardIds.add(new ArrayList<>());
+            shardEmbeddings.add(new ArrayList<>());
+            shardSegments.add(embedded == null ? null : new ArrayList<>());
+            moved.add(new ArrayList<>());
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            TextSegment segment = embedded == null ? null : embedded.get(i);
+            int shard = shardOf(ids.get(i), segment);
+            // Id réécrit avec une autre clé de partition : l'ancienne copie quitte son shard
+            Integer previous = shardById.get(ids.get(i));
+            if (previous != null && previous != shard) {
+                moved.get(previous).add(ids.get(i));
+            }
+            shardIds.get(shard).add(ids.get(i));
+            shardEmbeddings.get(shard).add(embeddings.get(i));
+            if (segment != null) {
+                shardSegments.get(shard).add(segment);
+            }
+        }
+        for (int shard = 0; shard < n; shard++) {
+            if (!moved.get(shard).isEmpty()) {
+                shards.get(shard).removeAll(moved.get(shard));
+            }
+        }
+        for (int shard = 0; shard < n; shard++) {
+            if (!shardIds.get(shard).isEmpty()) {
+                shards.get(shard).addAll(shardIds.get(shard), shardEmbeddings.get(shard), shardSegments.get(shard));
+                for (String id : shardIds.get(shard)) {
+                    shardById.put(id, shard);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        List<List<String>> byShard = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (String id : ids) {
+            Integer shard = shardById.remove(id);
+            if (shard != null) {
+                byShard.get(shard).add(id);
+            }
+        }
+        for (int shard = 0; shard < shards.size(); shard++) {
+            if (!byShard.get(shard).isEmpty()) {
+                shards.get(shard).removeAll(byShard.get(shard));
+            }
+        }
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        // Les ids supprimés restent dans shardById : un removeAll(ids) ultérieur sur eux est sans effet
+        BitSet candidates = candidates(filter);
+        for (int shard = candidates.nextSetBit(0); shard >= 0; shard = candidates.nextSetBit(shard + 1)) {
+            shards.get(shard).removeAll(filter);
+        }
+    }
+
+    @Override
+    public void removeAll() {
+        for (EmbeddingStore<TextSegment> shard : shards) {
+            shard.removeAll();
+        }
+        shardById.clear();
+    }
+
+    private int shardOf(String id, TextSegment segment) {
+        if (shardKey != null && segment != null) {
+            Object value = segment.metadata().toMap().get(shardKey);
+            if (value != null) {
+                return shardOfValue(value);
+            }
+        }
+        return Math.floorMod(id.hashCode(), shards.size());
+    }
+
+    // IsEqualTo compare les nombres comme BigDecimal (5 == 5.0 == 5L) : même forme canonique, même shard
+    private int shardOfValue(Object value) {
+        String key = value instanceof Number number
+                ? new BigDecimal(number.toString()).stripTrailingZeros().toPlainString()
+                : value.toString();
+        return Math.floorMod(key.hashCode(), shards.size());
+    }
+
+    // Shards pouvant contenir un résultat : seuls =, IN, AND et OR sur la clé de partition réduisent la liste
+    private BitSet candidates(Filter filter) {
+        BitSet all = new BitSet(shards.size());
+        all.set(0, shards.size());
+        if (filter == null || shardKey == null) {
+            return all;
+        }
+        if (filter instanceof IsEqualTo equal && shardKey.equals(equal.key())) {
+            BitSet one = new BitSet(shards.size());
+            one.set(shardOfValue(equal.comparisonValue()));
+            return one;
+        }
+        if (filter instanceof IsIn in && shardKey.equals(in.key())) {
+            BitSet some = new BitSet(shards.size());
+            for (Object value : in.comparisonValues()) {
+                some.set(shardOfValue(value));
+            }
+            return some;
+        }
+        if (filter instanceof And and) {
+            BitSet both = candidates(and.left());
+            both.and(candidates(and.right()));
+            return both;
+        }
+        if (filter instanceof Or or) {
+            BitSet either = candidates(or.left());
+            either.or(candidates(or.right()));
+            return either;
+        }
+        return all;
+    }
+}
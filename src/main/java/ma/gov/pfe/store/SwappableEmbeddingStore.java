@@ -0,0 +1,83 @@
+package ma.gov.pfe.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+import java.util.Collection;
+import java.util.List;
+
+// Vue stable sur un store remplaçable : les retrievers gardent cette instance, swap() change
+// le store actif d'un coup (une écriture volatile). Une recherche voit l'ancien ou le nouveau, jamais un mélange.
+public class SwappableEmbeddingStore implements EmbeddingStore<TextSegment> {
+
+    private volatile EmbeddingStore<TextSegment> current;
+
+    public SwappableEmbeddingStore(EmbeddingStore<TextSegment> initial) {
+        this.current = initial;
+    }
+
+    // Renvoie le store remplacé
+    public synchronized EmbeddingStore<TextSegment> swap(EmbeddingStore<TextSegment> next) {
+        EmbeddingStore<TextSegment> previous = current;
+        current = next;
+        return previous;
+    }
+
+    public EmbeddingStore<TextSegment> current() {
+        return current;
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return current.search(request);
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        return current.add(embedding);
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        current.add(id, embedding);
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment segment) {
+        return current.add(embedding, segment);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        return current.addAll(embeddings);
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> embedded) {
+        return current.addAll(embeddings, embedded);
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+        current.addAll(ids, embeddings, embedded);
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        current.removeAll(ids);
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        current.removeAll(filter);
+    }
+
+    @Override
+    public void removeAll() {
+        current.removeAll();
+    }
+}
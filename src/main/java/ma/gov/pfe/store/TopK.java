@@ -0,0 +1,88 @@
+package ma.gov.pfe.store;
+
+// Tas-min borné sur primitives (score, ligne) : garde les k meilleurs sans boxing
+final class TopK {
+
+    private final float[] scores;
+    private final int[] rows;
+    private int size;
+
+    TopK(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k doit être >= 1 : " + k);
+        }
+        this.scores = new float[k];
+        this.rows = new int[k];
+    }
+
+    void offer(float score, int row) {
+        if (size < scores.length) {
+            scores[size] = score;
+            rows[size] = row;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            scores[0] = score;
+            rows[0] = row;
+            siftDown(0);
+        }
+    }
+
+    // Plus petit score retenu, ou -infini tant que le tas n'est pas plein
+    float threshold() {
+        return size < scores.length ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Vide le tas et renvoie les lignes par score décroissant (scoresOut reçoit les scores associés)
+    int[] drainDescending(float[] scoresOut) {
+        int n = size;
+        int[] result = new int[n];
+        for (int i = n - 1; i >= 0; i--) {
+            result[i] = rows[0];
+            scoresOut[i] = scores[0];
+            size--;
+            scores[0] = scores[size];
+            rows[0] = rows[size];
+            siftDown(0);
+        }
+        return result;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= scores[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left + 1 < size && scores[left + 1] < scores[left] ? left + 1 : left;
+            if (scores[i] <= scores[smallest]) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        float s = scores[a];
+        scores[a] = scores[b];
+        scores[b] = s;
+        int r = rows[a];
+        rows[a] = rows[b];
+        rows[b] = r;
+    }
+}
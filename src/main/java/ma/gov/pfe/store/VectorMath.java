@@ -0,0 +1,58 @@
+package ma.gov.pfe.store;
+
+// Produit scalaire : API Vector (SIMD) si le module jdk.incubator.vector est chargé
+// (--add-modules jdk.incubator.vector), boucle scalaire sinon
+public final class VectorMath {
+
+    static final boolean SIMD = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private VectorMath() {
+    }
+
+    static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        if (SIMD) {
+            return SimdDot.dot(a, aOffset, b, bOffset, length);
+        }
+        float sum = 0f;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    // Produit scalaire de deux vecteurs de même dimension
+    public static float dot(float[] a, float[] b) {
+        return dot(a, 0, b, 0, a.length);
+    }
+
+    // Copie normalisée (le vecteur d'origine, souvent partagé par le modèle, n'est pas modifié)
+    public static float[] normalized(float[] vector) {
+        float[] copy = vector.clone();
+        normalize(copy);
+        return copy;
+    }
+
+    // Normalise en place : le cosinus devient un simple produit scalaire
+    static void normalize(float[] vector) {
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) {
+            return;
+        }
+        float inverse = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= inverse;
+        }
+    }
+
+    // Score de pertinence identique à InMemoryEmbeddingStore : (cos + 1) / 2
+    static double relevance(float cosine) {
+        return (cosine + 1) / 2.0;
+    }
+
+    static float cosineThreshold(double minScore) {
+        return (float) (2 * minScore - 1);
+    }
+}
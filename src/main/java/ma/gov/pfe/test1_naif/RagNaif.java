@@ -1,90 +1,117 @@
 package ma.gov.pfe.test1_naif;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.ChatModel;
-import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
-import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import ma.gov.pfe.assistant.Assistant;
+import ma.gov.pfe.assistant.Assistants;
+import ma.gov.pfe.cache.SemanticCache;
+import ma.gov.pfe.cache.SemanticCacheAssistant;
+import ma.gov.pfe.embedding.EmbeddingModelProvider;
+import ma.gov.pfe.index.PersistentEmbeddingIndex;
+import ma.gov.pfe.replay.ReplayModels;
+import ma.gov.pfe.retrieval.HybridContentRetriever;
+import ma.gov.pfe.store.Bm25Index;
+import ma.gov.pfe.store.EmbeddingStores;
 
 import java.net.URL;
 import java.nio.file.Path;
-import java.util.List;
+import java.util.Locale;
 import java.util.Scanner;
+import java.util.function.Function;
 
 public class RagNaif {
 
     public static void main(String[] args) throws Exception {
 
         String apiKey = System.getenv("GEMINI_KEY");
-        if (apiKey == null) {
-            System.out.println("Définis GEMINI_KEY avant de lancer !");
+        if (apiKey == null && !ReplayModels.replaying()) {
+            System.out.println("Définis GEMINI_KEY avant de lancer (ou -Drag.replay=fichier) !");
             return;
         }
 
-        //  Modèle LLM
-        ChatModel model = GoogleAiGeminiChatModel.builder()
+        //  Modèle LLM (réel, enregistré avec -Drag.record ou rejoué avec -Drag.replay)
+        ChatModel model = ReplayModels.chatModel(() -> GoogleAiGeminiChatModel.builder()
                 .apiKey(apiKey)
                 .modelName("gemini-2.5-flash")
                 .temperature(0.3)
-                .build();
+                .build());
+
+        // Mode streaming (-Drag.streaming=true) : la réponse s'affiche token par token
+        StreamingChatModel streamingModel = Assistants.streamingModel(apiKey, 0.3);
+
+        EmbeddingModel embeddingModel = EmbeddingModelProvider.get();
+
+        // Réponses mises en cache par question (et question précédente), vidé si l'index change
+        SemanticCache cache = new SemanticCache(embeddingModel);
+        Assistant assistant = sessions(model, streamingModel, embeddingModel, cache)
+                .apply(MessageWindowChatMemory.withMaxMessages(10));
+
+        // Questions
+        Scanner sc = new Scanner(System.in);
+        System.out.println(" RAG Naïf" + (streamingModel == null ? "" : " (streaming)") + " prêt — tape `exit` pour quitter");
+
+        while (true) {
+            System.out.print("Question : ");
+            String q = sc.nextLine();
+            if (q.equalsIgnoreCase("exit")) break;
+            long hits = cache.hits();
+            String answer = assistant.chat(q);
+            // En streaming la réponse est déjà affichée, sauf si elle vient du cache
+            if (streamingModel == null || cache.hits() > hits) {
+                System.out.println(" " + answer);
+            }
+        }
+        System.out.println(" " + cache.stats());
+    }
+
+    // Index chargé une fois ; chaque appel ouvre une conversation (assistant sur la mémoire fournie)
+    // sur ce même index. Sert aussi à LoadGenerator (une conversation par client simulé).
+    // streamingModel : réponses en streaming (null = bloquantes) ; cache : partagé par toutes les
+    // conversations (null = sans cache)
+    public static Function<ChatMemory, Assistant> sessions(ChatModel model, StreamingChatModel streamingModel,
+                                                           EmbeddingModel embeddingModel, SemanticCache cache) throws Exception {
+        ContentRetriever retriever = retriever(embeddingModel, cache);
+        return memory -> SemanticCacheAssistant.with(cache, Assistants.build(model, streamingModel, services -> services
+                .chatMemory(memory)
+                .contentRetriever(retriever)), memory);
+    }
 
+    private static ContentRetriever retriever(EmbeddingModel embeddingModel, SemanticCache cache) throws Exception {
         //  Charger PDF depuis resources
         URL res = RagNaif.class.getResource("/rag.pdf");
         if (res == null) throw new RuntimeException(" Fichier rag.pdf introuvable !");
         Path path = Path.of(res.toURI());
 
-        var parser = new ApacheTikaDocumentParser();
-        Document doc = FileSystemDocumentLoader.loadDocument(path, parser);
-
-        // Split du document
-        var splitter = DocumentSplitters.recursive(500, 50);
-        List<TextSegment> segments = splitter.split(doc);
-
-        //  Embeddings
-        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
-        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
+        //  Embeddings + stockage (index persistant : parsing/embedding seulement si le PDF change)
+        EmbeddingStore<TextSegment> store = EmbeddingStores.create();
+        if (cache != null) {
+            cache.dependsOn(store);
+        }
 
-        // Stocker embeddings
-        EmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
-        store.addAll(embeddings, segments);
+        // -Drag.hybrid=prefilter|rrf : index BM25 rempli pendant le chargement, recherche hybride
+        String hybrid = System.getProperty("rag.hybrid");
+        if (hybrid != null) {
+            Bm25Index index = new Bm25Index();
+            PersistentEmbeddingIndex.defaults(embeddingModel).load(path, index.indexing(store));
+            return new HybridContentRetriever(index, store, embeddingModel,
+                    HybridContentRetriever.Mode.valueOf(hybrid.toUpperCase(Locale.ROOT)), 2, 0.5);
+        }
+        PersistentEmbeddingIndex.defaults(embeddingModel).load(path, store);
 
         // Retriever (RAG)
-        var retriever = EmbeddingStoreContentRetriever.builder()
+        return EmbeddingStoreContentRetriever.builder()
                 .embeddingStore(store)
                 .embeddingModel(embeddingModel)
                 .maxResults(2)
                 .minScore(0.5)
                 .build();
-
-        ChatMemory memory = MessageWindowChatMemory.withMaxMessages(10);
-
-        Assistant assistant = AiServices.builder(Assistant.class)
-                .chatModel(model)
-                .chatMemory(memory)
-                .contentRetriever(retriever)
-                .build();
-
-        // Questions
-        Scanner sc = new Scanner(System.in);
-        System.out.println(" RAG Naïf prêt — tape `exit` pour quitter");
-
-        while (true) {
-            System.out.print("Question : ");
-            String q = sc.nextLine();
-            if (q.equalsIgnoreCase("exit")) break;
-            System.out.println(" " + assistant.chat(q));
-        }
     }
 }
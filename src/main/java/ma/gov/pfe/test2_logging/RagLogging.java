@@ -1,26 +1,21 @@
 package ma.gov.pfe.test2_logging;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.ChatModel;
-import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
 import dev.langchain4j.service.AiServices;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import ma.gov.pfe.assistant.Assistant;
+import ma.gov.pfe.embedding.EmbeddingModelProvider;
+import ma.gov.pfe.index.PersistentEmbeddingIndex;
+import ma.gov.pfe.store.EmbeddingStores;
 
 import java.net.URL;
 import java.nio.file.Path;
-import java.util.List;
 import java.util.Scanner;
 
 public class RagLogging {
@@ -44,17 +39,9 @@ public class RagLogging {
         URL resource = RagLogging.class.getResource("/rag.pdf");
         Path path = Path.of(resource.toURI());
 
-        var parser = new ApacheTikaDocumentParser();
-        Document doc = FileSystemDocumentLoader.loadDocument(path, parser);
-
-        var splitter = DocumentSplitters.recursive(500, 50);
-        List<TextSegment> segments = splitter.split(doc);
-
-        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
-        List<Embedding> embeddings = embeddingModel.embedAll(segments).content();
-
-        EmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
-        store.addAll(embeddings, segments);
+        EmbeddingModel embeddingModel = EmbeddingModelProvider.get();
+        EmbeddingStore<TextSegment> store = EmbeddingStores.create();
+        PersistentEmbeddingIndex.defaults(embeddingModel).load(path, store);
 
         var retriever = EmbeddingStoreContentRetriever.builder()
                 .embeddingStore(store)
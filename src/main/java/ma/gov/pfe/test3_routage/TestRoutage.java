@@ -1,99 +1,150 @@
 package ma.gov.pfe.test3_routage;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.rag.query.router.LanguageModelQueryRouter;
 import dev.langchain4j.rag.query.router.QueryRouter;
 import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
+import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
-import dev.langchain4j.service.AiServices;
 import ma.gov.pfe.assistant.Assistant;
+import ma.gov.pfe.assistant.Assistants;
+import ma.gov.pfe.cache.SemanticCache;
+import ma.gov.pfe.cache.SemanticCacheAssistant;
+import ma.gov.pfe.embedding.EmbeddingModelProvider;
+import ma.gov.pfe.embedding.QueryEmbeddingCache;
+import ma.gov.pfe.index.PersistentEmbeddingIndex;
+import ma.gov.pfe.replay.ReplayModels;
+import ma.gov.pfe.retrieval.TokenBudgetContentAggregator;
+import ma.gov.pfe.routage.ExemplarQueryRouter;
+import ma.gov.pfe.store.EmbeddingStores;
 import java.net.URL;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Function;
 
 public class TestRoutage {
 
     public static void main(String[] args) throws Exception {
 
         String apiKey = System.getenv("GEMINI_KEY");
-        if (apiKey == null) {
-            System.out.println(" Définis GEMINI_KEY avant de lancer !");
+        if (apiKey == null && !ReplayModels.replaying()) {
+            System.out.println(" Définis GEMINI_KEY avant de lancer (ou -Drag.replay=fichier) !");
             return;
         }
 
-        //  Modèle Gemini avec logs
-        ChatModel model = GoogleAiGeminiChatModel.builder()
+        //  Modèle Gemini avec logs (enregistré avec -Drag.record ou rejoué avec -Drag.replay)
+        ChatModel model = ReplayModels.chatModel(() -> GoogleAiGeminiChatModel.builder()
                 .apiKey(apiKey)
                 .modelName("gemini-2.5-flash")
                 .temperature(0.3)
                 .logRequestsAndResponses(true)
-                .build();
+                .build());
 
-        //  Charger deux documents
-        EmbeddingStore<TextSegment> storeIA = loadDocument("/rag.pdf");
-        EmbeddingStore<TextSegment> storeAutre = loadDocument("/langchain4jj.pdf");
+        // Mode streaming (-Drag.streaming=true) : la réponse s'affiche token par token
+        StreamingChatModel streamingModel = Assistants.streamingModel(apiKey, 0.3);
+
+        //  Modèle embeddings (instance partagée)
+        EmbeddingModel embeddingModel = EmbeddingModelProvider.get();
+
+        // Contexte dédoublonné et borné en tokens avant l'appel à Gemini
+        TokenBudgetContentAggregator contextPacker = TokenBudgetContentAggregator.create();
+        SemanticCache cache = new SemanticCache(embeddingModel);
+        Assistant assistant = sessions(model, streamingModel, embeddingModel, contextPacker, true, cache)
+                .apply(MessageWindowChatMemory.withMaxMessages(10));
+
+        Scanner sc = new Scanner(System.in);
+        System.out.println(" Routage prêt — pose une question ('exit' pour quitter)");
+
+        while (true) {
+            System.out.print(" Question : ");
+            String q = sc.nextLine();
+
+            if (q.equalsIgnoreCase("exit")) break;
+            if (streamingModel != null) {
+                System.out.print("🤖");
+            }
+            long hits = cache.hits();
+            String answer = assistant.chat(q);
+            // En streaming la réponse est déjà affichée, sauf si elle vient du cache
+            if (streamingModel == null) {
+                System.out.println("🤖 " + answer);
+            } else if (cache.hits() > hits) {
+                System.out.println(" " + answer);
+            }
+        }
+        System.out.println(" " + cache.stats());
+        System.out.println(" " + contextPacker.stats());
+    }
 
-        //  Modèle embeddings
-        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+    // Index et routeur construits une fois ; chaque appel ouvre une conversation (assistant sur la
+    // mémoire fournie). verbose : trace de la route choisie. streamingModel : null = réponses bloquantes.
+    // cache : partagé, null = sans cache. Sert aussi à LoadGenerator.
+    public static Function<ChatMemory, Assistant> sessions(ChatModel model, StreamingChatModel streamingModel,
+                                               EmbeddingModel embeddingModel,
+                                               ContentAggregator contentAggregator, boolean verbose,
+                                               SemanticCache cache) throws Exception {
+        //  Charger deux documents
+        EmbeddingStore<TextSegment> storeIA = loadDocument("/rag.pdf", embeddingModel);
+        EmbeddingStore<TextSegment> storeAutre = loadDocument("/langchain4jj.pdf", embeddingModel);
+        if (cache != null) {
+            cache.dependsOn(storeIA).dependsOn(storeAutre);
+        }
 
+        // Requête encodée une fois pour le routeur et le retriever choisi
+        EmbeddingModel queryEmbeddings = new QueryEmbeddingCache(embeddingModel);
         ContentRetriever retrieverIA = EmbeddingStoreContentRetriever.builder()
                 .embeddingStore(storeIA)
-                .embeddingModel(embeddingModel)
+                .embeddingModel(queryEmbeddings)
                 .maxResults(2)
                 .minScore(0.5)
                 .build();
 
         ContentRetriever retrieverAutre = EmbeddingStoreContentRetriever.builder()
                 .embeddingStore(storeAutre)
-                .embeddingModel(embeddingModel)
+                .embeddingModel(queryEmbeddings)
                 .maxResults(2)
                 .minScore(0.5)
                 .build();
 
-        //  Routage via LLM
+        //  Descriptions des routes (servent aussi au routeur LLM de repli)
         Map<ContentRetriever, String> routeMap = new HashMap<>();
         routeMap.put(retrieverIA, "Document sur le RAG, IA, embeddings, retrieval.");
         routeMap.put(retrieverAutre, "Document sur un sujet non-IA (général).");
 
-        QueryRouter router = new LanguageModelQueryRouter(model, routeMap);
+        //  Routage local par similarité d'embeddings ; le LLM ne tranche que les cas ambigus
+        QueryRouter router = ExemplarQueryRouter.builder()
+                .embeddingModel(queryEmbeddings)
+                .route(retrieverIA, routeMap.get(retrieverIA),
+                        "Qu'est-ce que le RAG ?",
+                        "Comment fonctionnent les embeddings et la recherche vectorielle ?",
+                        "Quel est le rôle du retriever dans un assistant IA ?")
+                .route(retrieverAutre, routeMap.get(retrieverAutre),
+                        "Comment utiliser la bibliothèque LangChain4j ?",
+                        "Comment configurer un projet Java avec Maven ?")
+                .fallback(new LanguageModelQueryRouter(model, routeMap))
+                .verbose(verbose)
+                .build();
 
         var augmentor = DefaultRetrievalAugmentor.builder()
                 .queryRouter(router)
+                .contentAggregator(contentAggregator)
                 .build();
 
-        Assistant assistant = AiServices.builder(Assistant.class)
-                .chatModel(model)
-                .chatMemory(MessageWindowChatMemory.withMaxMessages(10))
-                .retrievalAugmentor(augmentor)
-                .build();
-
-        Scanner sc = new Scanner(System.in);
-        System.out.println(" Routage prêt — pose une question ('exit' pour quitter)");
-
-        while (true) {
-            System.out.print(" Question : ");
-            String q = sc.nextLine();
-
-            if (q.equalsIgnoreCase("exit")) break;
-            System.out.println("🤖 " + assistant.chat(q));
-        }
+        return memory -> SemanticCacheAssistant.with(cache, Assistants.build(model, streamingModel, services -> services
+                .chatMemory(memory)
+                .retrievalAugmentor(augmentor)), memory);
     }
 
     //  Charger document PDF et embeddings
-    private static EmbeddingStore<TextSegment> loadDocument(String resourcePath) throws Exception {
+    private static EmbeddingStore<TextSegment> loadDocument(String resourcePath, EmbeddingModel embeddingModel) throws Exception {
 
         URL resource = TestRoutage.class.getResource(resourcePath);
         if (resource == null) {
@@ -103,16 +154,8 @@ public class TestRoutage {
         System.out.println(" Chargement du fichier : " + resourcePath);
 
         Path path = Path.of(resource.toURI());
-        Document doc = FileSystemDocumentLoader.loadDocument(path, new ApacheTikaDocumentParser());
-
-        var splitter = DocumentSplitters.recursive(500, 50);
-        List<TextSegment> segments = splitter.split(doc);
-
-        EmbeddingModel embModel = new AllMiniLmL6V2EmbeddingModel();
-        List<Embedding> embeddings = embModel.embedAll(segments).content();
-
-        EmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
-        store.addAll(embeddings, segments);
+        EmbeddingStore<TextSegment> store = EmbeddingStores.create();
+        PersistentEmbeddingIndex.defaults(embeddingModel).load(path, store);
 
         return store;
     }
@@ -1,109 +1,112 @@
 package ma.gov.pfe.test4_pas_de_rag;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
 import dev.langchain4j.data.segment.TextSegment;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
-import dev.langchain4j.model.input.Prompt;
-import dev.langchain4j.model.input.PromptTemplate;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.rag.query.router.QueryRouter;
 import dev.langchain4j.rag.DefaultRetrievalAugmentor;
-import dev.langchain4j.service.AiServices;
+import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import ma.gov.pfe.assistant.Assistant;
+import ma.gov.pfe.assistant.Assistants;
+import ma.gov.pfe.cache.SemanticCache;
+import ma.gov.pfe.cache.SemanticCacheAssistant;
+import ma.gov.pfe.embedding.EmbeddingModelProvider;
+import ma.gov.pfe.embedding.QueryEmbeddingCache;
+import ma.gov.pfe.index.PersistentEmbeddingIndex;
+import ma.gov.pfe.replay.ReplayModels;
+import ma.gov.pfe.routage.AiTopicClassifier;
+import ma.gov.pfe.routage.SpeculativeQueryRouter;
+import ma.gov.pfe.store.EmbeddingStores;
 
 import java.net.URL;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Function;
 
 public class TestSansRag {
 
     public static void main(String[] args) throws Exception {
 
         String apiKey = System.getenv("GEMINI_KEY");
-        if (apiKey == null) {
-            System.out.println(" Définit GEMINI_KEY avant de lancer !");
+        if (apiKey == null && !ReplayModels.replaying()) {
+            System.out.println(" Définit GEMINI_KEY avant de lancer (ou -Drag.replay=fichier) !");
             return;
         }
 
-        ChatModel model = GoogleAiGeminiChatModel.builder()
+        ChatModel model = ReplayModels.chatModel(() -> GoogleAiGeminiChatModel.builder()
                 .apiKey(apiKey)
                 .modelName("gemini-2.5-flash")
                 .temperature(0.2)
                 .logRequestsAndResponses(true)
-                .build();
+                .build());
 
-        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
+        // Mode streaming (-Drag.streaming=true) : la réponse s'affiche token par token
+        StreamingChatModel streamingModel = Assistants.streamingModel(apiKey, 0.2);
 
-        EmbeddingStore<TextSegment> store = loadPdf("/rag.pdf", embeddingModel);
+        EmbeddingModel embeddingModel = EmbeddingModelProvider.get();
 
-        ContentRetriever retriever = EmbeddingStoreContentRetriever.builder()
-                .embeddingStore(store)
-                .embeddingModel(embeddingModel)
-                .maxResults(3)
-                .build();
-
-        // -------- ROUTER PERSONNALISÉ (prend un seul paramètre Query) --------
-        QueryRouter router = (query) -> {
-            // query.text() contient la question de l'utilisateur
-            String userMessage = query.text();
+        SemanticCache cache = new SemanticCache(embeddingModel);
+        Assistant assistant = sessions(model, streamingModel, embeddingModel, cache)
+                .apply(MessageWindowChatMemory.withMaxMessages(10));
 
-            String template = """
-                Est-ce que la requête suivante concerne l’intelligence artificielle ?
-                Réponds seulement par : oui / non / peut-être
+        System.out.println(" Test 4" + (streamingModel == null ? "" : " (streaming)") + " prêt — écris une question (exit pour quitter)");
 
-                Requête : {{question}}
-            """;
-
-            Prompt prompt = PromptTemplate.from(template)
-                    .apply(Map.of("question", userMessage));
+        Scanner sc = new Scanner(System.in);
+        while (true) {
+            System.out.print(" Question : ");
+            String q = sc.nextLine();
+            if (q.equalsIgnoreCase("exit")) break;
 
-            // Convertir le Prompt en texte
-            String promptText = prompt.text();
+            if (streamingModel != null) {
+                System.out.print(" Réponse :");
+            }
+            long hits = cache.hits();
+            String answer = assistant.chat(q);
+            // En streaming la réponse est déjà affichée, sauf si elle vient du cache
+            if (streamingModel == null) {
+                System.out.println(" Réponse : " + answer);
+            } else if (cache.hits() > hits) {
+                System.out.println(" " + answer);
+            }
+        }
+        System.out.println(" " + cache.stats());
+    }
 
-            // Appel modèle + nettoyage réponse (model.chat attend une String)
-            String reply = model.chat(promptText)
-                    .trim()
-                    .toLowerCase();
+    // Index, retriever et routeur construits une fois ; chaque appel ouvre une conversation
+    // (assistant sur la mémoire fournie). Sert aussi à LoadGenerator. streamingModel : null = réponses
+    // bloquantes ; cache : partagé, null = sans cache
+    public static Function<ChatMemory, Assistant> sessions(ChatModel model, StreamingChatModel streamingModel,
+                                                           EmbeddingModel embeddingModel, SemanticCache cache) throws Exception {
+        EmbeddingStore<TextSegment> store = loadPdf("/rag.pdf", embeddingModel);
+        if (cache != null) {
+            cache.dependsOn(store);
+        }
 
-            System.out.println("Décision IA ? → " + reply);
+        // Requête encodée une fois pour la recherche spéculative et la classification locale
+        EmbeddingModel queryEmbeddings = new QueryEmbeddingCache(embeddingModel);
+        ContentRetriever retriever = EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(store)
+                .embeddingModel(queryEmbeddings)
+                .maxResults(3)
+                .build();
 
-            if (reply.contains("non")) {
-                return Collections.emptyList();
-            } else {
-                return List.of(retriever);
-            }
-        };
+        // -------- ROUTER PERSONNALISÉ : la recherche démarre pendant la décision "IA ?" --------
+        // (décision en cache, puis locale par embeddings, puis LLM seulement si elle reste ambiguë)
+        QueryRouter router = new SpeculativeQueryRouter(retriever, new AiTopicClassifier(model, queryEmbeddings));
 
         var augmentor = DefaultRetrievalAugmentor.builder()
                 .queryRouter(router)
                 .build();
 
-        Assistant assistant = AiServices.builder(Assistant.class)
-                .chatModel(model)
-                .chatMemory(MessageWindowChatMemory.withMaxMessages(10))
-                .retrievalAugmentor(augmentor)
-                .build();
-
-        System.out.println(" Test 4 prêt — écris une question (exit pour quitter)");
-
-        Scanner sc = new Scanner(System.in);
-        while (true) {
-            System.out.print(" Question : ");
-            String q = sc.nextLine();
-            if (q.equalsIgnoreCase("exit")) break;
-
-            System.out.println(" Réponse : " + assistant.chat(q));
-        }
+        return memory -> SemanticCacheAssistant.with(cache, Assistants.build(model, streamingModel, services -> services
+                .chatMemory(memory)
+                .retrievalAugmentor(augmentor)), memory);
     }
 
     private static EmbeddingStore<TextSegment> loadPdf(String path, EmbeddingModel embeddingModel) throws Exception {
@@ -111,13 +114,9 @@ public class TestSansRag {
         if (resource == null) {
             throw new RuntimeException("Fichier ressource introuvable : " + path + " — place le dans src/main/resources");
         }
-        Document doc = FileSystemDocumentLoader.loadDocument(Path.of(resource.toURI()), new ApacheTikaDocumentParser());
-
-        var splitter = DocumentSplitters.recursive(500, 50);
-        List<TextSegment> segments = splitter.split(doc);
 
-        EmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
-        store.addAll(embeddingModel.embedAll(segments).content(), segments);
+        EmbeddingStore<TextSegment> store = EmbeddingStores.create();
+        PersistentEmbeddingIndex.defaults(embeddingModel).load(Path.of(resource.toURI()), store);
         return store;
     }
 }
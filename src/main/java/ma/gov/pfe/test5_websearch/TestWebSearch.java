@@ -1,29 +1,37 @@
 package ma.gov.pfe.test5_websearch;
 
-import dev.langchain4j.data.document.Document;
-import dev.langchain4j.data.document.loader.FileSystemDocumentLoader;
-import dev.langchain4j.data.document.parser.apache.tika.ApacheTikaDocumentParser;
-import dev.langchain4j.data.document.splitter.DocumentSplitters;
 import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.model.chat.StreamingChatModel;
 import dev.langchain4j.model.embedding.EmbeddingModel;
-import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
 import dev.langchain4j.model.googleai.GoogleAiGeminiChatModel;
-import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.store.embedding.EmbeddingStore;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 import dev.langchain4j.rag.content.retriever.WebSearchContentRetriever;
+import dev.langchain4j.web.search.WebSearchEngine;
 import dev.langchain4j.web.search.tavily.TavilyWebSearchEngine;
-import dev.langchain4j.rag.query.router.DefaultQueryRouter;
-import dev.langchain4j.service.AiServices;
 import ma.gov.pfe.assistant.Assistant;
+import ma.gov.pfe.assistant.Assistants;
+import ma.gov.pfe.cache.CachingWebSearchEngine;
+import ma.gov.pfe.cache.SemanticCache;
+import ma.gov.pfe.cache.SemanticCacheAssistant;
+import ma.gov.pfe.embedding.EmbeddingModelProvider;
+import ma.gov.pfe.index.PersistentEmbeddingIndex;
+import ma.gov.pfe.replay.ReplayModels;
+import ma.gov.pfe.retrieval.DeadlineContentRetriever;
+import ma.gov.pfe.retrieval.FanOutAugmentor;
+import ma.gov.pfe.retrieval.TokenBudgetContentAggregator;
+import ma.gov.pfe.store.EmbeddingStores;
 import java.net.URL;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Scanner;
+import java.util.function.Function;
 
 public class TestWebSearch {
 
@@ -32,25 +40,77 @@ public class TestWebSearch {
         String apiKey = System.getenv("GEMINI_KEY");
         String tavilyKey = System.getenv("TAVILY_KEY");
 
-        if (apiKey == null || tavilyKey == null) {
-            System.out.println(" Configure GEMINI_KEY et TAVILY_API_KEY avant d'exécuter !");
+        if ((apiKey == null || tavilyKey == null) && !ReplayModels.replaying()) {
+            System.out.println(" Configure GEMINI_KEY et TAVILY_API_KEY avant d'exécuter (ou -Drag.replay=fichier) !");
             return;
         }
 
-        // Modèle Gemini
-        ChatModel model = GoogleAiGeminiChatModel.builder()
+        // Modèle Gemini (enregistré avec -Drag.record ou rejoué avec -Drag.replay)
+        ChatModel model = ReplayModels.chatModel(() -> GoogleAiGeminiChatModel.builder()
                 .apiKey(apiKey)
                 .modelName("gemini-2.5-flash")
                 .temperature(0.2)
                 .logRequestsAndResponses(true)
-                .build();
+                .build());
+
+        // Mode streaming (-Drag.streaming=true) : la réponse s'affiche token par token
+        StreamingChatModel streamingModel = Assistants.streamingModel(apiKey, 0.2);
+
+        EmbeddingModel embeddingModel = EmbeddingModelProvider.get();
+
+        WebSearchEngine webEngine = ReplayModels.webSearchEngine(() -> TavilyWebSearchEngine.builder()
+                .apiKey(tavilyKey)
+                .build());
+
+        // Cache des recherches web : TTL 10 min, 500 requêtes, sauvegardé à l'arrêt (Ctrl+C compris)
+        // et relu au lancement suivant
+        CachingWebSearchEngine cachedWebEngine = new CachingWebSearchEngine(webEngine,
+                Duration.ofMinutes(10), 500, Path.of(System.getProperty("rag.index.dir", ".rag-index"), "web-cache.bin"));
+        Runtime.getRuntime().addShutdownHook(new Thread(cachedWebEngine::close, "web-cache-save"));
+
+        TokenBudgetContentAggregator contextPacker = TokenBudgetContentAggregator.create();
+        SemanticCache cache = new SemanticCache(embeddingModel);
+        Assistant assistant = sessions(model, streamingModel, embeddingModel, cachedWebEngine, contextPacker, cache)
+                .apply(MessageWindowChatMemory.withMaxMessages(10));
+
+        System.out.println("Test 5 prêt — PDF + Recherche Web (exit pour quitter)");
+        Scanner scanner = new Scanner(System.in);
 
+        while (true) {
+            System.out.print(" Question : ");
+            String question = scanner.nextLine();
+            if (question.equalsIgnoreCase("exit")) break;
+
+            if (streamingModel != null) {
+                System.out.print("\n Réponse :");
+            }
+            long hits = cache.hits();
+            String answer = assistant.chat(question);
+            // En streaming la réponse est déjà affichée, sauf si elle vient du cache
+            if (streamingModel == null) {
+                System.out.println("\n Réponse : " + answer + "\n");
+            } else if (cache.hits() > hits) {
+                System.out.println(" " + answer + "\n");
+            }
+        }
+        System.out.println(" " + cache.stats());
+        System.out.println(" " + cachedWebEngine.stats());
+        System.out.println(" " + contextPacker.stats());
+    }
+
+    // Index du PDF chargé une fois ; chaque appel ouvre une conversation (assistant sur la mémoire
+    // fournie) sur les mêmes retrievers PDF + Web. streamingModel : null = réponses bloquantes.
+    // cache : partagé, null = sans cache. Sert aussi à LoadGenerator.
+    public static Function<ChatMemory, Assistant> sessions(ChatModel model, StreamingChatModel streamingModel,
+                                               EmbeddingModel embeddingModel, WebSearchEngine webEngine,
+                                               ContentAggregator contentAggregator, SemanticCache cache) throws Exception {
         // Embedding model + stockage du PDF
-        EmbeddingModel embeddingModel = new AllMiniLmL6V2EmbeddingModel();
         EmbeddingStore<TextSegment> store = loadPdf("/rag.pdf", embeddingModel);
         if (store == null) {
-            System.out.println("Impossible de charger le PDF /rag.pdf depuis resources.");
-            return;
+            throw new IllegalStateException("Impossible de charger le PDF /rag.pdf depuis resources.");
+        }
+        if (cache != null) {
+            cache.dependsOn(store);
         }
 
         ContentRetriever pdfRetriever = EmbeddingStoreContentRetriever.builder()
@@ -59,38 +119,23 @@ public class TestWebSearch {
                 .maxResults(3)
                 .build();
 
-        TavilyWebSearchEngine webEngine = TavilyWebSearchEngine.builder()
-                .apiKey(tavilyKey)
-                .build();
-
         ContentRetriever webRetriever = WebSearchContentRetriever.builder()
                 .webSearchEngine(webEngine)
                 .maxResults(3)
                 .build();
 
-        // Router : va utiliser les deux retrievers (PDF + Web)
-        var router = new DefaultQueryRouter(List.of(pdfRetriever, webRetriever));
-
-        var augmentor = DefaultRetrievalAugmentor.builder()
-                .queryRouter(router)
-                .build();
+        // Router : interroge les deux retrievers (PDF + Web) en parallèle, chacun avec son échéance ;
+        // une recherche web trop lente est ignorée et la réponse part avec le seul contexte PDF
+        // puis le contexte (PDF + pages web + mémoire) est compacté dans un budget de tokens
+        long webTimeoutMs = Long.getLong("rag.web.timeout.ms", 3_000);
+        var augmentor = FanOutAugmentor.create(List.of(
+                new DeadlineContentRetriever("PDF", pdfRetriever, Duration.ofMillis(500)),
+                new DeadlineContentRetriever("Web", webRetriever, Duration.ofMillis(webTimeoutMs))),
+                contentAggregator);
 
-        Assistant assistant = AiServices.builder(Assistant.class)
-                .chatModel(model)
+        return memory -> SemanticCacheAssistant.with(cache, Assistants.build(model, streamingModel, services -> services
                 .retrievalAugmentor(augmentor)
-                .chatMemory(MessageWindowChatMemory.withMaxMessages(10))
-                .build();
-
-        System.out.println("Test 5 prêt — PDF + Recherche Web (exit pour quitter)");
-        Scanner scanner = new Scanner(System.in);
-
-        while (true) {
-            System.out.print(" Question : ");
-            String question = scanner.nextLine();
-            if (question.equalsIgnoreCase("exit")) break;
-
-            System.out.println("\n Réponse : " + assistant.chat(question) + "\n");
-        }
+                .chatMemory(memory)), memory);
     }
 
     private static EmbeddingStore<TextSegment> loadPdf(String resourcePath, EmbeddingModel embeddingModel) throws Exception {
@@ -100,15 +145,8 @@ public class TestWebSearch {
             return null;
         }
 
-        Document doc = FileSystemDocumentLoader.loadDocument(
-                Path.of(resource.toURI()),
-                new ApacheTikaDocumentParser()
-        );
-
-        var segments = DocumentSplitters.recursive(500, 50).split(doc);
-
-        EmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
-        store.addAll(embeddingModel.embedAll(segments).content(), segments);
+        EmbeddingStore<TextSegment> store = EmbeddingStores.create();
+        PersistentEmbeddingIndex.defaults(embeddingModel).load(Path.of(resource.toURI()), store);
         return store;
     }
 }
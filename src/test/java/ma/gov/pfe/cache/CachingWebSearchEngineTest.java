@@ -0,0 +1,168 @@
+package ma.gov.pfe.cache;
+
+import dev.langchain4j.web.search.WebSearchEngine;
+import dev.langchain4j.web.search.WebSearchInformationResult;
+import dev.langchain4j.web.search.WebSearchOrganicResult;
+import dev.langchain4j.web.search.WebSearchRequest;
+import dev.langchain4j.web.search.WebSearchResults;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingWebSearchEngineTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void concurrentIdenticalSearchesShareOneCall() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CachingWebSearchEngine engine = new CachingWebSearchEngine(blocking(release), Duration.ofMinutes(10), 100);
+
+        List<Future<WebSearchResults>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 8; i++) {
+                // Même requête après normalisation
+                String terms = i % 2 == 0 ? "Qu'est-ce que le RAG ?" : "qu est ce que le rag";
+                results.add(executor.submit(() -> engine.search(WebSearchRequest.from(terms, 3))));
+            }
+            Thread.sleep(50);
+            release.countDown();
+        }
+
+        assertEquals(1, calls.get());
+        for (Future<WebSearchResults> result : results) {
+            assertSame(results.get(0).get(), result.get());
+        }
+    }
+
+    @Test
+    void interruptedCallerLeavesSharedSearchRunning() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CachingWebSearchEngine engine = new CachingWebSearchEngine(blocking(release), Duration.ofMinutes(10), 100);
+        WebSearchRequest request = WebSearchRequest.from("rag", 3);
+
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Thread caller = Thread.ofVirtual().start(() -> {
+            assertThrows(IllegalStateException.class, () -> engine.search(request));
+            interrupted.countDown();
+        });
+        Thread.sleep(50);
+        caller.interrupt();
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+
+        release.countDown();
+        WebSearchResults results = engine.search(request);
+        assertEquals(1, calls.get());
+        assertEquals("rag", results.results().get(0).title());
+    }
+
+    @Test
+    void expiredEntryIsFetchedAgain() {
+        MutableClock clock = new MutableClock();
+        CachingWebSearchEngine engine = new CachingWebSearchEngine(blocking(new CountDownLatch(0)),
+                Duration.ofMinutes(10), 100, null, clock);
+        WebSearchRequest request = WebSearchRequest.from("rag", 3);
+
+        engine.search(request);
+        clock.advance(Duration.ofMinutes(9));
+        engine.search(request);
+        assertEquals(1, calls.get());
+
+        clock.advance(Duration.ofMinutes(2));
+        engine.search(request);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void failureIsSharedButNotCached() {
+        AtomicInteger attempts = new AtomicInteger();
+        CachingWebSearchEngine engine = new CachingWebSearchEngine(request -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("panne");
+            }
+            return results(request.searchTerms());
+        }, Duration.ofMinutes(10), 100);
+        WebSearchRequest request = WebSearchRequest.from("rag", 3);
+
+        assertThrows(IllegalStateException.class, () -> engine.search(request));
+        assertEquals("rag", engine.search(request).results().get(0).title());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test
+    void closeSavesEntriesForTheNextRun(@TempDir Path dir) {
+        Path file = dir.resolve("web-cache.bin");
+        WebSearchRequest request = WebSearchRequest.from("rag", 3);
+        try (CachingWebSearchEngine first = new CachingWebSearchEngine(blocking(new CountDownLatch(0)),
+                Duration.ofMinutes(10), 100, file)) {
+            first.search(request);
+        }
+
+        CachingWebSearchEngine second = new CachingWebSearchEngine(blocking(new CountDownLatch(0)),
+                Duration.ofMinutes(10), 100, file);
+        assertEquals("rag", second.search(request).results().get(0).title());
+        assertEquals(1, calls.get());
+    }
+
+    private WebSearchEngine blocking(CountDownLatch release) {
+        return request -> {
+            calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Appel interrompu", e);
+            }
+            return results(request.searchTerms());
+        };
+    }
+
+    private static WebSearchResults results(String title) {
+        return WebSearchResults.from(WebSearchInformationResult.from(1L),
+                List.of(WebSearchOrganicResult.from(title, URI.create("https://example.org/"), "extrait", null)));
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ma.gov.pfe.cache;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import ma.gov.pfe.assistant.Assistant;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Modèle d'embeddings factice : un sac de mots haché sur 64 dimensions (questions proches = cosinus élevé)
+class SemanticCacheTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final Assistant model = question -> "réponse " + calls.incrementAndGet() + " à " + question;
+
+    @Test
+    void sessionsShareAnswers() {
+        SemanticCache cache = new SemanticCache(new BagOfWords());
+
+        String first = session(cache).chat("Qu'est-ce que le RAG ?");
+        String second = session(cache).chat("  qu'est-ce que   le RAG ? ");
+
+        assertEquals(first, second);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void followUpDependsOnPreviousQuestion() {
+        SemanticCache cache = new SemanticCache(new BagOfWords());
+        Assistant a = session(cache);
+        Assistant b = session(cache);
+        Assistant c = session(cache);
+
+        a.chat("Qu'est-ce que le RAG ?");
+        String followUpA = a.chat("Peux-tu résumer ?");
+        b.chat("Quelle est la capitale du Maroc ?");
+        String followUpB = b.chat("Peux-tu résumer ?");
+        c.chat("Qu'est-ce que le RAG ?");
+        String followUpC = c.chat("Peux-tu résumer ?");
+
+        assertEquals(4, calls.get());
+        assertEquals(followUpA, followUpC);
+        assertEquals(false, followUpA.equals(followUpB));
+    }
+
+    @Test
+    void onlyTrackedIndexWritesInvalidate() {
+        AtomicLong tracked = new AtomicLong();
+        AtomicLong other = new AtomicLong();
+        SemanticCache cache = new SemanticCache(new BagOfWords(), 0.92, 100, Duration.ofHours(1), Clock.systemUTC())
+                .dependsOn(tracked::get);
+
+        session(cache).chat("Qu'est-ce que le RAG ?");
+        other.incrementAndGet();
+        session(cache).chat("Qu'est-ce que le RAG ?");
+        tracked.incrementAndGet();
+        session(cache).chat("Qu'est-ce que le RAG ?");
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void hitIsAddedToConversationMemory() {
+        SemanticCache cache = new SemanticCache(new BagOfWords());
+        session(cache).chat("Qu'est-ce que le RAG ?");
+        MessageWindowChatMemory memory = MessageWindowChatMemory.withMaxMessages(10);
+
+        new SemanticCacheAssistant(model, memory, cache).chat("Qu'est-ce que le RAG ?");
+
+        assertEquals(2, memory.messages().size());
+    }
+
+    private Assistant session(SemanticCache cache) {
+        return new SemanticCacheAssistant(model, MessageWindowChatMemory.withMaxMessages(10), cache);
+    }
+
+    private static final class BagOfWords implements EmbeddingModel {
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            return Response.from(segments.stream().map(segment -> {
+                float[] vector = new float[64];
+                for (String word : segment.text().toLowerCase(Locale.ROOT).split("\\W+")) {
+                    if (!word.isEmpty()) {
+                        vector[Math.floorMod(word.hashCode(), vector.length)]++;
+                    }
+                }
+                return Embedding.from(vector);
+            }).toList());
+        }
+    }
+}
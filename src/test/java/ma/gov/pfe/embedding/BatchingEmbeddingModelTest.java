@@ -0,0 +1,128 @@
+package ma.gov.pfe.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Modèle factice : l'embedding d'un texte est (longueur, 1), chaque embedAll est noté avec sa taille
+class BatchingEmbeddingModelTest {
+
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+    @Test
+    void concurrentQueriesShareOneBatch() throws Exception {
+        try (BatchingEmbeddingModel model = new BatchingEmbeddingModel(recording(), Duration.ofSeconds(5), 8, 1);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Embedding>> results = new ArrayList<>();
+            for (int i = 1; i <= 8; i++) {
+                String text = "x".repeat(i);
+                results.add(executor.submit(() -> model.embed(text).content()));
+            }
+
+            // Le lot part dès qu'il est plein, sans attendre la fin de maxWait
+            for (int i = 0; i < 8; i++) {
+                assertEquals(i + 1, results.get(i).get(2, TimeUnit.SECONDS).vector()[0]);
+            }
+            assertEquals(List.of(8), batchSizes);
+            assertEquals(8, model.averageBatchSize());
+        }
+    }
+
+    @Test
+    void largeBatchSkipsTheQueue() {
+        try (BatchingEmbeddingModel model = new BatchingEmbeddingModel(recording(), Duration.ofSeconds(5), 2, 1)) {
+            List<Embedding> embeddings = model.embedAll(List.of(TextSegment.from("a"), TextSegment.from("bb"))).content();
+
+            assertEquals(2, embeddings.get(1).vector()[0]);
+            assertEquals(List.of(2), batchSizes);
+            assertEquals(0, model.averageBatchSize());
+        }
+    }
+
+    @Test
+    void failureReachesEveryCallerOfTheBatch() throws Exception {
+        EmbeddingModel failing = segments -> {
+            throw new IllegalStateException("panne");
+        };
+        try (BatchingEmbeddingModel model = new BatchingEmbeddingModel(failing, Duration.ofMillis(50), 32, 1);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Embedding>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(() -> model.embed("a").content()));
+            }
+
+            for (Future<Embedding> result : results) {
+                ExecutionException e = assertThrows(ExecutionException.class, () -> result.get(2, TimeUnit.SECONDS));
+                assertEquals("panne", e.getCause().getMessage());
+            }
+        }
+    }
+
+    @Test
+    void closeFailsQueuedQueries() throws Exception {
+        BatchingEmbeddingModel model = new BatchingEmbeddingModel(recording(), Duration.ofSeconds(30), 32, 1);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // La requête attend les autres membres de son lot (maxWait = 30 s)
+            Future<Embedding> queued = executor.submit(() -> model.embed("a").content());
+            Thread.sleep(100);
+            model.close();
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> queued.get(2, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+        }
+        // Après fermeture, appel direct au modèle
+        assertEquals(1, model.embed("a").content().vector()[0]);
+    }
+
+    @Test
+    void callersRacingCloseNeverHang() {
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            for (int round = 0; round < 20; round++) {
+                BatchingEmbeddingModel model = new BatchingEmbeddingModel(recording(), Duration.ofMillis(1), 4, 2);
+                try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                    List<Future<Embedding>> results = new ArrayList<>();
+                    for (int i = 0; i < 50; i++) {
+                        results.add(executor.submit(() -> model.embed("a").content()));
+                        if (i == 25) {
+                            model.close();
+                        }
+                    }
+                    for (Future<Embedding> result : results) {
+                        try {
+                            assertEquals(1, result.get().vector()[0]);
+                        } catch (ExecutionException e) {
+                            assertTrue(e.getCause().getMessage().contains("fermé"), e.getCause().toString());
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private EmbeddingModel recording() {
+        return segments -> {
+            batchSizes.add(segments.size());
+            return Response.from(segments.stream()
+                    .map(segment -> Embedding.from(new float[]{segment.text().length(), 1}))
+                    .toList());
+        };
+    }
+}
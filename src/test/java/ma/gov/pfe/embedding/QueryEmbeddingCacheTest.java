@@ -0,0 +1,105 @@
+package ma.gov.pfe.embedding;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QueryEmbeddingCacheTest {
+
+    @Test
+    void concurrentCallersShareOneEmbedding() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Counting model = new Counting(release);
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(model);
+
+        List<Future<Embedding>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> cache.embed("Qu'est-ce que le RAG ?").content()));
+            }
+            Thread.sleep(50);
+            release.countDown();
+        }
+
+        assertEquals(1, model.calls.get());
+        for (Future<Embedding> result : results) {
+            assertSame(results.get(0).get(), result.get());
+        }
+    }
+
+    @Test
+    void leastRecentlyUsedTextIsEvicted() {
+        Counting model = new Counting(new CountDownLatch(0));
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(model, 2);
+
+        cache.embed("a");
+        cache.embed("b");
+        cache.embed("a");
+        cache.embed("c");
+        cache.embed("a");
+        cache.embed("b");
+
+        assertEquals(4, model.calls.get());
+    }
+
+    @Test
+    void failureIsNotRemembered() {
+        AtomicInteger calls = new AtomicInteger();
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(segments -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("panne");
+            }
+            return Response.from(List.of(Embedding.from(new float[]{1, 0})));
+        });
+
+        assertThrows(IllegalStateException.class, () -> cache.embed("a"));
+        assertEquals(1, cache.embed("a").content().vector()[0]);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void batchesAreNotCached() {
+        Counting model = new Counting(new CountDownLatch(0));
+        QueryEmbeddingCache cache = new QueryEmbeddingCache(model);
+
+        cache.embedAll(List.of(TextSegment.from("a")));
+        cache.embedAll(List.of(TextSegment.from("a")));
+
+        assertEquals(2, model.calls.get());
+    }
+
+    private static final class Counting implements EmbeddingModel {
+
+        private final CountDownLatch release;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        Counting(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            calls.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Response.from(segments.stream().map(segment -> Embedding.from(new float[]{segment.text().length(), 1})).toList());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package ma.gov.pfe.index;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.gov.pfe.ingestion.IngestionPipeline;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Passes appelées directement (sans WatchService) ; un paragraphe par segment, le modèle compte ses encodages
+class IncrementalIndexerTest {
+
+    @TempDir
+    Path dir;
+
+    private final Counting model = new Counting();
+
+    @Test
+    void editReencodesOnlyTheChangedSegment() throws Exception {
+        Path docs = Files.createDirectories(dir.resolve("docs"));
+        Path file = write(docs.resolve("a.txt"), "un", "deux", "trois", "quatre");
+        IncrementalIndexer indexer = indexer(docs, null);
+        assertEquals(4, indexer.indexAll().embedded());
+
+        write(file, "un", "deux modifié", "trois", "quatre");
+        ReindexStats stats = indexer.sync(List.of(file));
+
+        assertEquals(1, stats.embedded());
+        assertEquals(1, stats.removed());
+        assertEquals(5, model.segments.get());
+        List<String> texts = texts(indexer);
+        assertEquals(4, texts.size());
+        assertTrue(texts.contains(paragraph("deux modifié")));
+        assertFalse(texts.contains(paragraph("deux")));
+    }
+
+    @Test
+    void movedParagraphAndRenamedFileKeepTheirVectors() throws Exception {
+        Path docs = Files.createDirectories(dir.resolve("docs"));
+        Path file = write(docs.resolve("a.txt"), "un", "deux", "trois");
+        IncrementalIndexer indexer = indexer(docs, null);
+        indexer.indexAll();
+
+        // Même texte à une autre position : segment réécrit (index), pas réencodé
+        write(file, "trois", "un", "deux");
+        ReindexStats moved = indexer.sync(List.of(file));
+        assertEquals(0, moved.embedded());
+        assertEquals(3, moved.reused());
+
+        // Renommage : suppression + création dans la même passe
+        Path renamed = Files.move(file, docs.resolve("b.txt"));
+        ReindexStats stats = indexer.sync(List.of(file, renamed));
+
+        assertEquals(0, stats.embedded());
+        assertEquals(3, stats.removed());
+        assertEquals(3, model.segments.get());
+        assertEquals(3, texts(indexer).size());
+    }
+
+    @Test
+    void deletedFileLeavesTheIndex() throws Exception {
+        Path docs = Files.createDirectories(dir.resolve("docs"));
+        Path kept = write(docs.resolve("a.txt"), "un", "deux");
+        Path deleted = write(docs.resolve("b.txt"), "trois", "quatre");
+        IncrementalIndexer indexer = indexer(docs, null);
+        indexer.indexAll();
+
+        Files.delete(deleted);
+        ReindexStats stats = indexer.indexAll();
+
+        assertEquals(1, stats.files());
+        assertEquals(2, stats.removed());
+        assertEquals(List.of(paragraph("deux"), paragraph("un")), texts(indexer).stream().sorted().toList());
+        assertEquals(ReindexStats.NONE, indexer.sync(List.of(kept)));
+    }
+
+    @Test
+    void restartEncodesOnlyWhatChangedWhileStopped() throws Exception {
+        Path docs = Files.createDirectories(dir.resolve("docs"));
+        Path cacheFile = dir.resolve("cache.bin");
+        Path file = write(docs.resolve("a.txt"), "un", "deux", "trois");
+        indexer(docs, cacheFile).indexAll();
+
+        write(file, "un", "deux", "trois modifié");
+        write(docs.resolve("b.txt"), "quatre");
+        ReindexStats stats = indexer(docs, cacheFile).indexAll();
+
+        assertEquals(2, stats.embedded());
+        assertEquals(2, stats.reused());
+        assertEquals(5, model.segments.get());
+    }
+
+    private IncrementalIndexer indexer(Path root, Path cacheFile) {
+        return new IncrementalIndexer(root, new IngestionPipeline(model, 500, 50, 32, 1, 2),
+                InMemoryEmbeddingStore::new, Duration.ofMillis(50), cacheFile);
+    }
+
+    // Paragraphes de ~400 caractères en phrases de plus de 50 : un segment chacun, sans recouvrement
+    private static Path write(Path file, String... names) throws Exception {
+        List<String> paragraphs = new ArrayList<>();
+        for (String name : names) {
+            paragraphs.add(paragraph(name));
+        }
+        Files.writeString(file, String.join("\n\n", paragraphs));
+        return file;
+    }
+
+    private static String paragraph(String name) {
+        return ("Le paragraphe " + name + " contient une phrase assez longue pour le test. ").repeat(5).strip();
+    }
+
+    private static List<String> texts(IncrementalIndexer indexer) {
+        return indexer.store().search(EmbeddingSearchRequest.builder()
+                        .queryEmbedding(Embedding.from(new float[]{1, 0, 0, 0, 0, 0, 0, 0}))
+                        .maxResults(100)
+                        .minScore(0.0)
+                        .build())
+                .matches().stream()
+                .map(match -> match.embedded().text())
+                .toList();
+    }
+
+    private static final class Counting implements EmbeddingModel {
+
+        private final AtomicInteger segments = new AtomicInteger();
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            segments.addAndGet(textSegments.size());
+            return Response.from(textSegments.stream()
+                    .map(segment -> {
+                        float[] vector = new float[8];
+                        int hash = segment.text().hashCode();
+                        for (int d = 0; d < vector.length; d++) {
+                            vector[d] = (float) Math.sin(hash + d);
+                        }
+                        return Embedding.from(vector);
+                    })
+                    .toList());
+        }
+
+        @Override
+        public int dimension() {
+            return 8;
+        }
+    }
+}
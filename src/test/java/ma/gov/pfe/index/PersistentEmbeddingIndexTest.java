@@ -0,0 +1,108 @@
+package ma.gov.pfe.index;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.gov.pfe.ingestion.IngestionPipeline;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+// Aller-retour disque des vecteurs (plusieurs blocs d'E/S) et reconstruction sur fichier corrompu
+class PersistentEmbeddingIndexTest {
+
+    @TempDir
+    Path dir;
+
+    private final AtomicInteger embedded = new AtomicInteger();
+
+    @Test
+    void secondLoadReadsTheSameVectorsFromDisk() throws Exception {
+        Path source = document();
+        PersistentEmbeddingIndex index = new PersistentEmbeddingIndex(dir.resolve("index"), pipeline());
+
+        List<EmbeddingMatch<TextSegment>> first = all(index, source);
+        int computed = embedded.get();
+        List<EmbeddingMatch<TextSegment>> second = all(index, source);
+
+        assertEquals(computed, embedded.get(), "aucun embedding recalculé");
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertEquals(first.get(i).embedded().text(), second.get(i).embedded().text());
+            assertArrayEquals(first.get(i).embedding().vector(), second.get(i).embedding().vector());
+        }
+    }
+
+    @Test
+    void truncatedVectorFileIsRebuilt() throws Exception {
+        Path source = document();
+        PersistentEmbeddingIndex index = new PersistentEmbeddingIndex(dir.resolve("index"), pipeline());
+        int segments = all(index, source).size();
+        Path vec = dir.resolve("index").resolve(index.key(source) + ".vec");
+        Files.write(vec, List.of("tronqué"));
+
+        int before = embedded.get();
+        assertEquals(segments, all(index, source).size());
+        assertEquals(before + segments, embedded.get());
+    }
+
+    // ~150 segments x 384 floats : plus d'un bloc de lecture
+    private Path document() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1_500; i++) {
+            text.append("Phrase numéro ").append(i).append(" du document de test. ");
+        }
+        Path source = dir.resolve("doc.txt");
+        Files.writeString(source, text);
+        return source;
+    }
+
+    private IngestionPipeline pipeline() {
+        EmbeddingModel model = new EmbeddingModel() {
+            @Override
+            public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+                embedded.addAndGet(segments.size());
+                List<Embedding> embeddings = new ArrayList<>(segments.size());
+                for (TextSegment segment : segments) {
+                    float[] vector = new float[384];
+                    int hash = segment.text().hashCode();
+                    for (int d = 0; d < vector.length; d++) {
+                        vector[d] = (float) Math.sin(hash + d);
+                    }
+                    embeddings.add(Embedding.from(vector));
+                }
+                return Response.from(embeddings);
+            }
+
+            @Override
+            public int dimension() {
+                return 384;
+            }
+        };
+        return new IngestionPipeline(model, 500, 50, 32, 2, 4);
+    }
+
+    private static List<EmbeddingMatch<TextSegment>> all(PersistentEmbeddingIndex index, Path source) {
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+        index.load(source, store);
+        float[] query = new float[384];
+        query[0] = 1;
+        List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(store.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(Embedding.from(query)).maxResults(10_000).minScore(0.0).build()).matches());
+        matches.sort(Comparator.comparing(match -> match.embedded().metadata().getString("index")));
+        return matches;
+    }
+}
@@ -0,0 +1,110 @@
+package ma.gov.pfe.ingestion;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Texte de ~100 Ko (une trentaine de fenêtres) : la découpe par fenêtres ne perd, ne coupe ni ne
+// grossit aucun segment
+class StreamingIngestionTest {
+
+    private static final int SENTENCES = 2_500;
+
+    @TempDir
+    Path dir;
+
+    private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+    @Test
+    void windowsKeepEverySentenceWhole() throws Exception {
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+
+        IngestionStats stats = new StreamingIngestion(recording(), 500, 50, 16).ingest(document(), store);
+
+        List<TextSegment> segments = segments(store);
+        assertEquals(stats.segments(), segments.size());
+        String all = String.join("\n", segments.stream().map(TextSegment::text).toList());
+        for (int i = 0; i < SENTENCES; i++) {
+            assertTrue(all.contains(sentence(i)), "phrase perdue ou coupée : " + i);
+        }
+        for (int i = 0; i < segments.size(); i++) {
+            TextSegment segment = segments.get(i);
+            assertEquals(String.valueOf(i), segment.metadata().getString("index"));
+            assertEquals("doc.txt", segment.metadata().getString("file_name"));
+            assertTrue(segment.text().length() <= 500, "segment de " + segment.text().length() + " caractères");
+        }
+    }
+
+    @Test
+    void segmentsAreEncodedInChunks() throws Exception {
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+
+        IngestionStats stats = new StreamingIngestion(recording(), 500, 50, 16).ingest(document(), store);
+
+        assertTrue(batchSizes.size() > 1);
+        assertTrue(batchSizes.stream().allMatch(size -> size <= 16), batchSizes.toString());
+        assertEquals(stats.segments(), batchSizes.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void whitespaceOnlyFileGivesNoSegment() throws Exception {
+        Path blank = dir.resolve("vide.txt");
+        Files.writeString(blank, " \n\n   \n");
+        InMemoryEmbeddingStore<TextSegment> store = new InMemoryEmbeddingStore<>();
+
+        IngestionStats stats = new StreamingIngestion(recording(), 500, 50, 16).ingest(blank, store);
+
+        assertEquals(0, stats.segments());
+        assertEquals(List.of(), batchSizes);
+    }
+
+    // Un paragraphe toutes les 7 phrases
+    private Path document() throws Exception {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < SENTENCES; i++) {
+            text.append(sentence(i)).append(i % 7 == 6 ? "\n\n" : " ");
+        }
+        Path source = dir.resolve("doc.txt");
+        Files.writeString(source, text);
+        return source;
+    }
+
+    private static String sentence(int i) {
+        return "Phrase numéro " + i + " du document de test.";
+    }
+
+    private static List<TextSegment> segments(InMemoryEmbeddingStore<TextSegment> store) {
+        return store.search(EmbeddingSearchRequest.builder()
+                        .queryEmbedding(Embedding.from(new float[]{1, 0}))
+                        .maxResults(100_000)
+                        .minScore(0.0)
+                        .build())
+                .matches().stream()
+                .map(match -> match.embedded())
+                .sorted(Comparator.comparingInt(segment -> Integer.parseInt(segment.metadata().getString("index"))))
+                .toList();
+    }
+
+    private EmbeddingModel recording() {
+        return segments -> {
+            batchSizes.add(segments.size());
+            return Response.from(segments.stream()
+                    .map(segment -> Embedding.from(new float[]{segment.text().length(), 1}))
+                    .toList());
+        };
+    }
+}
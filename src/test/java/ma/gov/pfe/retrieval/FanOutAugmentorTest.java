@@ -0,0 +1,105 @@
+package ma.gov.pfe.retrieval;
+
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.rag.AugmentationRequest;
+import dev.langchain4j.rag.AugmentationResult;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.WebSearchContentRetriever;
+import dev.langchain4j.rag.query.Metadata;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// FanOutAugmentor + DeadlineContentRetriever avec un moteur web simulé (StubWebSearchEngine)
+class FanOutAugmentorTest {
+
+    private static final ContentRetriever PDF = query -> List.of(Content.from("Extrait du PDF"));
+
+    @Test
+    void slowWebSearchIsDroppedAtDeadline() throws Exception {
+        StubWebSearchEngine engine = new StubWebSearchEngine(Duration.ofSeconds(5));
+        RetrievalAugmentor augmentor = FanOutAugmentor.create(List.of(
+                new DeadlineContentRetriever("PDF", PDF, Duration.ofMillis(500)),
+                new DeadlineContentRetriever("Web", web(engine), Duration.ofMillis(200))));
+
+        long start = System.nanoTime();
+        List<Content> contents = augment(augmentor).contents();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis < 2_000, "réponse en " + elapsedMillis + " ms");
+        assertEquals(List.of("Extrait du PDF"), texts(contents));
+        assertEquals(1, engine.calls());
+        // L'appel hors délai est interrompu, il ne continue pas en tâche de fond
+        long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        while (engine.interrupted() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, engine.interrupted());
+    }
+
+    @Test
+    void webResultWithinDeadlineIsKept() {
+        StubWebSearchEngine engine = new StubWebSearchEngine(Duration.ofMillis(20));
+        RetrievalAugmentor augmentor = FanOutAugmentor.create(List.of(
+                new DeadlineContentRetriever("PDF", PDF, Duration.ofMillis(500)),
+                new DeadlineContentRetriever("Web", web(engine), Duration.ofSeconds(2))));
+
+        List<String> texts = texts(augment(augmentor).contents());
+
+        assertEquals(2, texts.size());
+        assertTrue(texts.contains("Extrait du PDF"));
+        assertTrue(texts.stream().anyMatch(text -> text.contains("simulé")), texts.toString());
+        assertEquals(0, engine.interrupted());
+    }
+
+    @Test
+    void failingRetrieverIsIgnored() {
+        ContentRetriever failing = query -> {
+            throw new IllegalStateException("panne");
+        };
+        RetrievalAugmentor augmentor = FanOutAugmentor.create(List.of(
+                new DeadlineContentRetriever("PDF", PDF, Duration.ofMillis(500)),
+                new DeadlineContentRetriever("Web", failing, Duration.ofMillis(500))));
+
+        assertEquals(List.of("Extrait du PDF"), texts(augment(augmentor).contents()));
+    }
+
+    @Test
+    void retrieversRunInParallel() {
+        StubWebSearchEngine first = new StubWebSearchEngine(Duration.ofMillis(300));
+        StubWebSearchEngine second = new StubWebSearchEngine(Duration.ofMillis(300));
+        RetrievalAugmentor augmentor = FanOutAugmentor.create(List.of(
+                new DeadlineContentRetriever("Web 1", web(first), Duration.ofSeconds(2)),
+                new DeadlineContentRetriever("Web 2", web(second), Duration.ofSeconds(2))));
+
+        long start = System.nanoTime();
+        augment(augmentor);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis < 550, "réponse en " + elapsedMillis + " ms");
+        assertEquals(1, first.calls());
+        assertEquals(1, second.calls());
+    }
+
+    private static ContentRetriever web(StubWebSearchEngine engine) {
+        return WebSearchContentRetriever.builder()
+                .webSearchEngine(engine)
+                .maxResults(1)
+                .build();
+    }
+
+    private static AugmentationResult augment(RetrievalAugmentor augmentor) {
+        UserMessage question = UserMessage.from("Qu'est-ce que le RAG ?");
+        return augmentor.augment(new AugmentationRequest(question, Metadata.from(question, "test", List.of())));
+    }
+
+    private static List<String> texts(List<Content> contents) {
+        return contents.stream().map(content -> content.textSegment().text()).toList();
+    }
+}
@@ -0,0 +1,133 @@
+package ma.gov.pfe.retrieval;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import ma.gov.pfe.metrics.MeteredEmbeddingStore;
+import ma.gov.pfe.store.Bm25Index;
+import ma.gov.pfe.store.FlatVectorStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+// Recherches appelées avec un embedding de requête déjà calculé : pas de modèle d'embedding
+class HybridContentRetrieverTest {
+
+    private static final int DIMENSION = 8;
+    private static final int DOCUMENTS = 1_000;
+
+    private final Random random = new Random(3);
+    private final List<Embedding> embeddings = new ArrayList<>();
+    private final List<TextSegment> segments = new ArrayList<>();
+
+    @Test
+    void prefilterRanksBm25CandidatesByExactCosine() {
+        Bm25Index index = new Bm25Index();
+        FlatVectorStore flat = new FlatVectorStore(DIMENSION);
+        HybridContentRetriever retriever = retriever(index, new MeteredEmbeddingStore(flat), 5, 20);
+
+        for (int q = 0; q < 20; q++) {
+            String text = "sujet" + q + " sujet" + (q + 7);
+            Embedding query = random();
+            Set<String> candidates = Set.copyOf(index.candidates(text, 20));
+
+            List<EmbeddingMatch<TextSegment>> matches = retriever.search(text, query);
+
+            List<EmbeddingMatch<TextSegment>> expected = exact(query).stream()
+                    .filter(match -> candidates.contains(match.embeddingId()))
+                    .limit(5)
+                    .toList();
+            assertEquals(ids(expected), ids(matches), text);
+            for (int i = 0; i < matches.size(); i++) {
+                assertEquals(expected.get(i).score(), matches.get(i).score(), 1e-5);
+                assertNotNull(matches.get(i).embedding());
+            }
+        }
+    }
+
+    @Test
+    void prefilterFallsBackToDenseSearch() {
+        Bm25Index index = new Bm25Index();
+        FlatVectorStore flat = new FlatVectorStore(DIMENSION);
+        HybridContentRetriever retriever = retriever(index, flat, 5, 20);
+        Embedding query = random();
+
+        // Aucun terme connu : pas de candidat lexical
+        assertEquals(ids(exact(query).subList(0, 5)), ids(retriever.search("question hors corpus", query)));
+        // Moins de candidats que de résultats demandés
+        assertEquals(ids(exact(query).subList(0, 5)), ids(retriever.search("document42", query)));
+    }
+
+    @Test
+    void prefilterOnAnotherStoreIsADenseSearch() {
+        Bm25Index index = new Bm25Index();
+        InMemoryEmbeddingStore<TextSegment> inMemory = new InMemoryEmbeddingStore<>();
+        HybridContentRetriever retriever = retriever(index, inMemory, 5, 20);
+        Embedding query = random();
+
+        List<EmbeddingMatch<TextSegment>> expected = inMemory.search(EmbeddingSearchRequest.builder()
+                .queryEmbedding(query)
+                .maxResults(5)
+                .minScore(0.0)
+                .build()).matches();
+        assertEquals(ids(expected), ids(retriever.search("sujet1", query)));
+    }
+
+    // Comme RagNaif : ajouts à travers index.indexing(store), recherche sur store.
+    // Documents "documentI sujetJ" : chaque sujet est partagé par DOCUMENTS / 50 documents
+    private HybridContentRetriever retriever(Bm25Index index, EmbeddingStore<TextSegment> store,
+                                             int maxResults, int candidates) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            ids.add("d" + i);
+            embeddings.add(random());
+            segments.add(TextSegment.from("document" + i + " sujet" + (i % 50)));
+        }
+        index.indexing(store).addAll(ids, embeddings, segments);
+        return new HybridContentRetriever(index, store, null, HybridContentRetriever.Mode.PREFILTER,
+                maxResults, 0.0, candidates);
+    }
+
+    // Tous les documents par pertinence cosinus décroissante, calculée ici sans passer par un store
+    private List<EmbeddingMatch<TextSegment>> exact(Embedding query) {
+        List<EmbeddingMatch<TextSegment>> all = new ArrayList<>();
+        for (int i = 0; i < embeddings.size(); i++) {
+            double cosine = cosine(query.vector(), embeddings.get(i).vector());
+            all.add(new EmbeddingMatch<>((cosine + 1) / 2, "d" + i, embeddings.get(i), segments.get(i)));
+        }
+        all.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> match) -> match.score()).reversed());
+        return all;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    private static List<String> ids(List<EmbeddingMatch<TextSegment>> matches) {
+        return matches.stream().map(EmbeddingMatch::embeddingId).toList();
+    }
+
+    private Embedding random() {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return Embedding.from(vector);
+    }
+}
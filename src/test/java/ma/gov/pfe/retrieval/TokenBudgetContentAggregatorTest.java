@@ -0,0 +1,122 @@
+package ma.gov.pfe.retrieval;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.query.Query;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Classement laissé dans l'ordre reçu et un token par caractère, pour que les budgets se lisent directement
+class TokenBudgetContentAggregatorTest {
+
+    private static final ContentAggregator IN_ORDER = queryToContents -> queryToContents.values().stream()
+            .flatMap(Collection::stream)
+            .flatMap(List::stream)
+            .toList();
+
+    @Test
+    void overlapOfTheSplitterIsRemoved() {
+        assertEquals("début du texte commun puis la suite",
+                TokenBudgetContentAggregator.joinWithoutOverlap("début du texte commun", "texte commun puis la suite"));
+        // Moins de 10 caractères en commun : simple coïncidence, les deux textes sont gardés entiers
+        assertEquals("fin de la phrase\nphrase suivante",
+                TokenBudgetContentAggregator.joinWithoutOverlap("fin de la phrase", "phrase suivante"));
+        assertEquals("premier\nsecond", TokenBudgetContentAggregator.joinWithoutOverlap("premier", "second"));
+    }
+
+    @Test
+    void neighboursAreMergedAndNearDuplicatesDropped() {
+        String duplicate = "le retriever cherche les segments les plus proches de la question posée";
+        List<Content> packed = aggregator(10_000).aggregate(contents("Question ?", List.of(),
+                segment("rag.pdf", 1, "commence ici. Le segment suivant reprend ce texte."),
+                segment("autre.pdf", 0, duplicate),
+                segment("rag.pdf", 0, "Le document commence ici."),
+                segment("web", -1, duplicate + " ")));
+
+        assertEquals(List.of(
+                "Le document commence ici. Le segment suivant reprend ce texte.",
+                duplicate), texts(packed));
+    }
+
+    @Test
+    void contentIsKeptByRankWithinBudget() {
+        List<Content> packed = aggregator(260).aggregate(contents("Question ?", List.of(),
+                segment("a.pdf", 0, "a".repeat(100)),
+                segment("b.pdf", 0, "b".repeat(100)),
+                segment("c.pdf", 0, "c".repeat(100)),
+                segment("d.pdf", 0, "d".repeat(40))));
+
+        // 260 - 10 (question) = 250 : a et b, puis c ne tient plus mais d (plus court) tient encore
+        assertEquals(List.of("a".repeat(100), "b".repeat(100), "d".repeat(40)), texts(packed));
+    }
+
+    @Test
+    void conversationMemoryCountsAgainstTheBudget() {
+        List<ChatMessage> memory = List.of(UserMessage.from("x".repeat(60)), AiMessage.from("y".repeat(90)));
+        List<Content> packed = aggregator(260).aggregate(contents("Question ?", memory,
+                segment("a.pdf", 0, "a".repeat(80)),
+                segment("b.pdf", 0, "b".repeat(80))));
+
+        // 260 - 10 - 150 = 100
+        assertEquals(List.of("a".repeat(80)), texts(packed));
+    }
+
+    @Test
+    void minimumContextIsReservedWhenMemoryFillsTheBudget() {
+        TokenBudgetContentAggregator aggregator = new TokenBudgetContentAggregator(
+                IN_ORDER, 100, 30, 0.9, String::length, false);
+        List<ChatMessage> memory = List.of(UserMessage.from("x".repeat(200)));
+
+        List<Content> packed = aggregator.aggregate(contents("Question ?", memory,
+                segment("a.pdf", 0, "a".repeat(25)),
+                segment("b.pdf", 0, "b".repeat(25))));
+
+        assertEquals(List.of("a".repeat(25)), texts(packed));
+    }
+
+    @Test
+    void oversizedBestBlockIsTruncatedAtASentence() {
+        String text = "Première phrase assez courte. Deuxième phrase qui dépasse largement le budget restant.";
+        List<Content> packed = aggregator(50).aggregate(contents("Question ?", List.of(),
+                segment("a.pdf", 0, text)));
+
+        assertEquals(List.of("Première phrase assez courte."), texts(packed));
+        assertTrue(packed.get(0).textSegment().text().length() <= 40);
+        assertEquals("a.pdf", packed.get(0).textSegment().metadata().getString("file_name"));
+    }
+
+    private static TokenBudgetContentAggregator aggregator(int maxTokens) {
+        return new TokenBudgetContentAggregator(IN_ORDER, maxTokens, 1, 0.9, String::length, false);
+    }
+
+    private static Map<Query, Collection<List<Content>>> contents(String question, List<ChatMessage> memory,
+                                                                  Content... contents) {
+        Query query = Query.from(question,
+                dev.langchain4j.rag.query.Metadata.from(UserMessage.from(question), "session", memory));
+        return Map.of(query, List.of(List.of(contents)));
+    }
+
+    // index < 0 : sans position dans le document (jamais fusionné)
+    private static Content segment(String source, int index, String text) {
+        Metadata metadata = new Metadata().put(source.endsWith(".pdf") ? "file_name" : "url", source);
+        if (index >= 0) {
+            metadata.put("index", String.valueOf(index));
+        }
+        return Content.from(TextSegment.from(text, metadata));
+    }
+
+    private static List<String> texts(List<Content> contents) {
+        return contents.stream().map(content -> content.textSegment().text()).toList();
+    }
+}
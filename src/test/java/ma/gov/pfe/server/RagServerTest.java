@@ -0,0 +1,175 @@
+package ma.gov.pfe.server;
+
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.service.AiServices;
+import ma.gov.pfe.assistant.SessionAssistant;
+import ma.gov.pfe.assistant.StreamingSessionAssistant;
+import ma.gov.pfe.cache.SemanticCache;
+import ma.gov.pfe.cache.SemanticCacheSessionAssistant;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// RagServer avec StubChatModel : la réponse simulée indique le nombre de messages reçus par le modèle,
+// donc ce que la mémoire de session a conservé
+class RagServerTest {
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private HttpServer http;
+
+    @AfterEach
+    void stop() {
+        if (http != null) {
+            http.stop(0);
+        }
+    }
+
+    @Test
+    void sessionKeepsItsMemory() throws Exception {
+        start(assistant(), 10);
+
+        assertTrue(post("a", "Bonjour").body().contains("(1 messages)"));
+        HttpResponse<String> second = post("a", "Et ensuite ?");
+
+        assertEquals(200, second.statusCode());
+        assertTrue(second.body().contains("(3 messages)"), second.body());
+        assertEquals("a", second.headers().firstValue("X-Session-Id").orElse(null));
+    }
+
+    @Test
+    void anonymousRequestsKeepNoMemory() throws Exception {
+        RagServer server = start(assistant(), 10);
+
+        HttpResponse<String> first = post(null, "Bonjour");
+        HttpResponse<String> second = post(null, "Bonjour");
+
+        assertTrue(first.body().contains("(1 messages)"), first.body());
+        assertTrue(second.body().contains("(1 messages)"), second.body());
+        assertNull(second.headers().firstValue("X-Session-Id").orElse(null));
+        assertEquals(0, server.activeSessions());
+    }
+
+    @Test
+    void leastRecentlyUsedSessionIsEvicted() throws Exception {
+        SessionAssistant assistant = assistant();
+        RagServer server = start(assistant, 2);
+
+        post("a", "Bonjour");
+        post("b", "Bonjour");
+        post("c", "Bonjour");
+
+        assertEquals(2, server.activeSessions());
+        assertNull(assistant.getChatMemory("a"));
+        // La session évincée repart d'une mémoire vide
+        assertTrue(post("a", "Bonjour").body().contains("(1 messages)"));
+    }
+
+    @Test
+    void internalErrorDoesNotLeakDetails() throws Exception {
+        SessionAssistant failing = AiServices.builder(SessionAssistant.class)
+                .chatModel(new StubChatModel(Duration.ZERO) {
+                    @Override
+                    public ChatResponse doChat(ChatRequest chatRequest) {
+                        throw new IllegalStateException("clé secrète invalide");
+                    }
+                })
+                .chatMemoryProvider(RagServer::memory)
+                .build();
+        start(failing, 10);
+
+        HttpResponse<String> response = post("a", "Bonjour");
+
+        assertEquals(500, response.statusCode());
+        assertFalse(response.body().contains("secrète"), response.body());
+    }
+
+    @Test
+    void streamingSharesSessionMemoryAndSemanticCache() throws Exception {
+        ChatMemoryProvider memories = RagServer.memories();
+        SessionAssistant blocking = AiServices.builder(SessionAssistant.class)
+                .chatModel(new StubChatModel(Duration.ZERO))
+                .chatMemoryProvider(memories)
+                .build();
+        StreamingSessionAssistant streaming = AiServices.builder(StreamingSessionAssistant.class)
+                .streamingChatModel(new StubStreamingChatModel(Duration.ZERO, Duration.ZERO))
+                .chatMemoryProvider(memories)
+                .build();
+        SemanticCache cache = new SemanticCache(new HashedEmbeddingModel());
+        http = new RagServer(Map.of("naif", new SemanticCacheSessionAssistant(blocking, memories, cache)),
+                Map.of("naif", streaming), 4, Duration.ofSeconds(2), 10, Duration.ofMinutes(30)).start(0);
+
+        HttpResponse<String> first = post("a", "Bonjour", true);
+
+        assertEquals(200, first.statusCode());
+        assertEquals("chunked", first.headers().firstValue("Transfer-Encoding").orElse(null));
+        assertTrue(first.body().contains("(1 messages)"), first.body());
+        // La réponse en streaming est dans la mémoire de la session, vue aussi en mode bloquant
+        assertTrue(post("a", "Et ensuite ?").body().contains("(3 messages)"));
+        // Même question au premier tour d'une autre session : servie par le cache, sans appel au modèle
+        HttpResponse<String> cached = post("b", "Bonjour", true);
+        assertEquals(first.body(), cached.body());
+        assertEquals(1, cache.hits());
+    }
+
+    private RagServer start(SessionAssistant assistant, int maxSessions) throws Exception {
+        RagServer server = new RagServer(Map.of("naif", assistant), 4, Duration.ofSeconds(2),
+                maxSessions, Duration.ofMinutes(30));
+        http = server.start(0);
+        return server;
+    }
+
+    private static SessionAssistant assistant() {
+        return AiServices.builder(SessionAssistant.class)
+                .chatModel(new StubChatModel(Duration.ZERO))
+                .chatMemoryProvider(RagServer::memory)
+                .build();
+    }
+
+    private HttpResponse<String> post(String sessionId, String question) throws Exception {
+        return post(sessionId, question, false);
+    }
+
+    private HttpResponse<String> post(String sessionId, String question, boolean stream) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(
+                        URI.create("http://localhost:" + http.getAddress().getPort() + "/chat/naif" + (stream ? "?stream=true" : "")))
+                .POST(HttpRequest.BodyPublishers.ofString(question));
+        if (sessionId != null) {
+            request.header("X-Session-Id", sessionId);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    // Un mot haché par question : seules les questions identiques (normalisées) se retrouvent dans le cache
+    private static final class HashedEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> segments) {
+            return Response.from(segments.stream()
+                    .map(segment -> {
+                        float[] vector = new float[64];
+                        vector[Math.floorMod(segment.text().hashCode(), 64)] = 1;
+                        return Embedding.from(vector);
+                    })
+                    .toList());
+        }
+    }
+}
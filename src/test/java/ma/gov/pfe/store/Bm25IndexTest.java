@@ -0,0 +1,98 @@
+package ma.gov.pfe.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Index rempli à travers indexing(), comme dans RagNaif ; les vecteurs ne servent qu'au store délégué
+class Bm25IndexTest {
+
+    private static final Embedding VECTOR = Embedding.from(new float[]{1, 0, 0, 0});
+
+    @Test
+    void rarerTermsWeighMore() {
+        Bm25Index index = new Bm25Index();
+        EmbeddingStore<TextSegment> store = index.indexing(new FlatVectorStore(4));
+        store.addAll(List.of("a", "b", "c"), List.of(VECTOR, VECTOR, VECTOR), List.of(
+                TextSegment.from("chat chien"),
+                TextSegment.from("chat oiseau"),
+                TextSegment.from("chat poisson")));
+
+        List<EmbeddingMatch<TextSegment>> matches = index.search("le chat et l'oiseau", 3);
+
+        assertEquals("b", matches.get(0).embeddingId());
+        assertEquals(3, matches.size());
+        assertTrue(matches.get(0).score() > matches.get(1).score());
+        assertNull(matches.get(0).embedding());
+        assertEquals(List.of("b"), index.candidates("oiseau", 10));
+        assertEquals(List.of(), index.candidates("inconnu", 10));
+    }
+
+    @Test
+    void camelCaseIdentifiersAreSplit() {
+        assertEquals(List.of("embeddingstore", "embedding", "store"), Bm25Index.tokenize("EmbeddingStore"));
+
+        Bm25Index index = new Bm25Index();
+        EmbeddingStore<TextSegment> store = index.indexing(new FlatVectorStore(4));
+        // Sans segment : rien à indexer
+        store.add("x", VECTOR);
+        store.addAll(List.of("y"), List.of(VECTOR),
+                List.of(TextSegment.from("Le InMemoryEmbeddingStore garde tout en mémoire.")));
+
+        assertEquals(List.of("y"), index.candidates("quel store ?", 10));
+    }
+
+    @Test
+    void deletionAndCompactionKeepScoresOfLiveDocuments() {
+        Bm25Index index = new Bm25Index();
+        EmbeddingStore<TextSegment> store = index.indexing(new FlatVectorStore(4));
+        Bm25Index reference = new Bm25Index();
+        EmbeddingStore<TextSegment> referenceStore = reference.indexing(new FlatVectorStore(4));
+        List<String> removed = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            store.addAll(List.of("d" + i), List.of(VECTOR), List.of(document(i)));
+            if (i % 3 == 0) {
+                referenceStore.addAll(List.of("d" + i), List.of(VECTOR), List.of(document(i)));
+            } else {
+                removed.add("d" + i);
+            }
+        }
+
+        // 400 suppressions sur 600 : au-delà du seuil de compactage
+        store.removeAll(removed);
+
+        assertEquals(200, index.size());
+        for (String query : List.of("terme3 terme5", "terme0", "mot6 terme1")) {
+            assertEquals(scores(reference.search(query, 1_000)), scores(index.search(query, 1_000)), query);
+        }
+
+        // Un id supprimé peut revenir après compactage
+        store.addAll(List.of("d1"), List.of(VECTOR), List.of(TextSegment.from("retour du document")));
+        assertEquals(List.of("d1"), index.candidates("retour", 10));
+        assertEquals(201, index.size());
+    }
+
+    // Longueurs et fréquences variables pour des scores BM25 distincts
+    private static TextSegment document(int i) {
+        return TextSegment.from("terme" + (i % 7) + " terme" + (i % 11) + " " + ("mot" + (i % 13) + " ").repeat(1 + i % 4));
+    }
+
+    private static Map<String, Float> scores(List<EmbeddingMatch<TextSegment>> matches) {
+        Map<String, Float> scores = new HashMap<>();
+        for (EmbeddingMatch<TextSegment> match : matches) {
+            scores.put(match.embeddingId(), match.score().floatValue());
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,74 @@
+package ma.gov.pfe.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Lignes mortes (suppression, remplacement d'un id) récupérées par compactage
+class FlatVectorStoreTest {
+
+    @Test
+    void reAddingIdsDoesNotGrowTheStore() {
+        FlatVectorStore store = new FlatVectorStore(4);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            ids.add("s" + i);
+        }
+        for (int round = 0; round < 20; round++) {
+            List<Embedding> embeddings = new ArrayList<>();
+            List<TextSegment> segments = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                embeddings.add(vector(i, round));
+                segments.add(TextSegment.from("segment " + i + " v" + round));
+            }
+            store.addAll(ids, embeddings, segments);
+        }
+
+        assertEquals(500, store.size());
+        assertTrue(store.rows() <= 2 * 500 + 1_024, "lignes : " + store.rows());
+        // Les vecteurs survivants sont bien ceux du dernier ajout, aux bons ids
+        EmbeddingMatch<TextSegment> best = search(store, vector(42, 19)).get(0);
+        assertEquals("s42", best.embeddingId());
+        assertEquals("segment 42 v19", best.embedded().text());
+    }
+
+    @Test
+    void removedRowsAreCompacted() {
+        FlatVectorStore store = new FlatVectorStore(4);
+        List<String> ids = store.addAll(embeddings(3_000));
+        store.removeAll(ids.subList(0, 2_000));
+
+        assertEquals(1_000, store.size());
+        assertEquals(1_000, store.rows());
+        for (EmbeddingMatch<TextSegment> match : search(store, vector(2_500, 0))) {
+            assertTrue(ids.indexOf(match.embeddingId()) >= 2_000, match.embeddingId());
+        }
+        assertEquals(ids.get(2_500), search(store, vector(2_500, 0)).get(0).embeddingId());
+    }
+
+    private static List<EmbeddingMatch<TextSegment>> search(FlatVectorStore store, Embedding query) {
+        return store.search(EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(3).build()).matches();
+    }
+
+    private static List<Embedding> embeddings(int n) {
+        List<Embedding> embeddings = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            embeddings.add(vector(i, 0));
+        }
+        return embeddings;
+    }
+
+    // Vecteurs tous de directions distinctes
+    private static Embedding vector(int i, int round) {
+        double angle = i * 0.001 + round * 1e-5;
+        return Embedding.from(new float[]{(float) Math.cos(angle), (float) Math.sin(angle), round == 0 ? 0 : 0.001f * round, 1});
+    }
+}
@@ -0,0 +1,87 @@
+package ma.gov.pfe.store;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswEmbeddingStoreTest {
+
+    private static final int DIMENSION = 16;
+
+    @TempDir
+    Path dir;
+
+    // Chaque sauvegarde faite pendant des insertions concurrentes se recharge (liens tous valides)
+    // et reste cherchable
+    @Test
+    void saveWhileInsertingProducesLoadableGraphs() throws Exception {
+        HnswEmbeddingStore store = new HnswEmbeddingStore(DIMENSION, 8, 64, 32);
+        int writers = 4;
+        int perWriter = 2_000;
+        List<Integer> savedSizes = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(writers)) {
+            List<Future<?>> inserts = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                int seed = w;
+                inserts.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < perWriter; i++) {
+                        store.add(vector(random), TextSegment.from("w" + seed + "-" + i));
+                    }
+                }));
+            }
+            int round = 0;
+            while (inserts.stream().anyMatch(f -> !f.isDone())) {
+                Path file = dir.resolve("hnsw-" + round++ + ".bin");
+                store.save(file);
+                HnswEmbeddingStore loaded = HnswEmbeddingStore.load(file);
+                savedSizes.add(loaded.size());
+                if (loaded.size() > 0) {
+                    assertFalse(search(loaded, vector(new Random(round))).isEmpty());
+                }
+            }
+            for (Future<?> insert : inserts) {
+                insert.get();
+            }
+        }
+        assertTrue(savedSizes.size() > 1, "sauvegardes : " + savedSizes);
+
+        Path last = dir.resolve("hnsw-final.bin");
+        store.save(last);
+        HnswEmbeddingStore loaded = HnswEmbeddingStore.load(last);
+        assertEquals(writers * perWriter, loaded.size());
+        Embedding query = vector(new Random(99));
+        assertEquals(ids(search(store, query)), ids(search(loaded, query)));
+    }
+
+    private static List<EmbeddingMatch<TextSegment>> search(HnswEmbeddingStore store, Embedding query) {
+        return store.search(EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(5).build()).matches();
+    }
+
+    private static List<String> ids(List<EmbeddingMatch<TextSegment>> matches) {
+        return matches.stream().map(EmbeddingMatch::embeddingId).toList();
+    }
+
+    private static Embedding vector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int d = 0; d < DIMENSION; d++) {
+            vector[d] = (float) random.nextGaussian();
+        }
+        return Embedding.from(vector);
+    }
+}
@@ -0,0 +1,101 @@
+package ma.gov.pfe.store;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.filter.Filter;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Fusion des top-k par shard comparée à un store unique contenant les mêmes vecteurs
+class ShardedEmbeddingStoreTest {
+
+    private static final int DIMENSION = 16;
+
+    @Test
+    void mergedTopKMatchesAFlatStore() {
+        Random random = new Random(7);
+        ShardedEmbeddingStore sharded = new ShardedEmbeddingStore(4, () -> new FlatVectorStore(DIMENSION), "collection");
+        FlatVectorStore flat = new FlatVectorStore(DIMENSION);
+        List<String> ids = new ArrayList<>();
+        List<Embedding> embeddings = new ArrayList<>();
+        List<TextSegment> segments = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            ids.add("s" + i);
+            embeddings.add(random(random));
+            segments.add(segment("segment " + i, "c" + (i % 7)));
+        }
+        sharded.addAll(ids, embeddings, segments);
+        flat.addAll(ids, embeddings, segments);
+
+        for (int q = 0; q < 50; q++) {
+            Embedding query = random(random);
+            for (Filter filter : new Filter[]{null, metadataKey("collection").isEqualTo("c3"),
+                    metadataKey("collection").isIn("c1", "c5")}) {
+                assertEquals(ids(flat.search(request(query, 10, filter)).matches()),
+                        ids(sharded.search(request(query, 10, filter)).matches()));
+            }
+        }
+    }
+
+    @Test
+    void reAddedIdLeavesItsPreviousShard() {
+        ShardedEmbeddingStore store = new ShardedEmbeddingStore(8, () -> new FlatVectorStore(DIMENSION), "collection");
+        Embedding vector = random(new Random(1));
+        // Assez de collections pour que le nouveau shard diffère de l'ancien
+        for (int c = 0; c < 20; c++) {
+            store.addAll(List.of("x"), List.of(vector), List.of(segment("version " + c, "c" + c)));
+        }
+
+        List<EmbeddingMatch<TextSegment>> matches = store.search(request(vector, 10, null)).matches();
+        assertEquals(1, matches.size());
+        assertEquals("version 19", matches.get(0).embedded().text());
+        assertEquals(0, store.search(request(vector, 10, metadataKey("collection").isEqualTo("c0"))).matches().size());
+
+        store.removeAll(List.of("x"));
+        assertEquals(0, store.search(request(vector, 10, null)).matches().size());
+    }
+
+    @Test
+    void numericShardKeysMatchWhateverTheirType() {
+        ShardedEmbeddingStore store = new ShardedEmbeddingStore(8, () -> new FlatVectorStore(DIMENSION), "year");
+        Embedding vector = random(new Random(2));
+        store.addAll(List.of("x"), List.of(vector), List.of(TextSegment.from("texte", new Metadata().put("year", 2024))));
+
+        assertEquals(1, store.search(request(vector, 10, metadataKey("year").isEqualTo(2024L))).matches().size());
+        assertEquals(1, store.search(request(vector, 10, metadataKey("year").isIn(2024.0, 1999))).matches().size());
+    }
+
+    private static TextSegment segment(String text, String collection) {
+        return TextSegment.from(text, new Metadata().put("collection", collection));
+    }
+
+    private static EmbeddingSearchRequest request(Embedding query, int k, Filter filter) {
+        return EmbeddingSearchRequest.builder()
+                .queryEmbedding(query)
+                .maxResults(k)
+                .minScore(0.0)
+                .filter(filter)
+                .build();
+    }
+
+    private static List<String> ids(List<EmbeddingMatch<TextSegment>> matches) {
+        return matches.stream().map(EmbeddingMatch::embeddingId).toList();
+    }
+
+    private static Embedding random(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return Embedding.from(vector);
+    }
+}